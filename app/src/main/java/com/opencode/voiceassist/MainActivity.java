@@ -30,18 +30,26 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.opencode.voiceassist.manager.AudioProcessor;
 import com.opencode.voiceassist.manager.AudioRecorder;
 import com.opencode.voiceassist.manager.AsrEngine;
+import com.opencode.voiceassist.manager.CachingAsrEngine;
+import com.opencode.voiceassist.manager.LocalWhisperAsrEngine;
+import com.opencode.voiceassist.manager.TieredAsrEngine;
 import com.opencode.voiceassist.manager.CameraPermissionManager;
 import com.opencode.voiceassist.manager.CloudAsrManager;
 import com.opencode.voiceassist.manager.DirectProcessor;
 import com.opencode.voiceassist.manager.FunAsrWebSocketManager;
+import com.opencode.voiceassist.manager.KeywordSpotter;
+import com.opencode.voiceassist.manager.KeywordSpottingProcessor;
 import com.opencode.voiceassist.manager.NoiseReductionProcessor;
 import com.opencode.voiceassist.manager.OpenCodeManager;
 import com.opencode.voiceassist.manager.RecordingManager;
 import com.opencode.voiceassist.manager.SettingsManager;
+import com.opencode.voiceassist.manager.StartupPipeline;
+import com.opencode.voiceassist.manager.TranscriptCache;
 import com.opencode.voiceassist.manager.WebViewManager;
 import com.opencode.voiceassist.model.Message;
 import com.opencode.voiceassist.model.TranscriptionResult;
 import com.opencode.voiceassist.ui.MessageAdapter;
+import com.opencode.voiceassist.ui.MessageListController;
 import com.opencode.voiceassist.utils.Constants;
 import com.opencode.voiceassist.utils.UrlUtils;
 import com.opencode.voiceassist.utils.WebViewTextInjector;
@@ -78,6 +86,9 @@ public class MainActivity extends AppCompatActivity {
     private static final int REQUEST_CAMERA = 1005;
     
     private WebView webView;
+    private RecyclerView messageList;
+    private MessageListController messageListController;
+    private boolean nativeViewShown = false;
     
     private View recordButton;
     private TextView tvRecordHint;
@@ -90,6 +101,13 @@ public class MainActivity extends AppCompatActivity {
     private FileManager fileManager;
     private CloudAsrManager cloudAsrManager;
     private FunAsrWebSocketManager funAsrManager;
+    private TranscriptCache transcriptCache;
+    private AsrEngine cloudAsrEngine;
+    private AsrEngine funAsrEngine;
+    private LocalWhisperAsrEngine localAsrEngine;
+    private AsrEngine cloudTieredEngine;
+    private AsrEngine funTieredEngine;
+    private boolean localAsrFirst;
     private WebViewTextInjector webViewInjector;
     
     private WebViewManager webViewManager;
@@ -98,6 +116,16 @@ public class MainActivity extends AppCompatActivity {
     private SettingsManager settingsManager;
     
     private AudioProcessor audioProcessor;
+    private KeywordSpotter keywordSpotter;
+    private boolean voiceCommandsEnabled;
+    private boolean continuousDictationEnabled;
+    private boolean warmCaptureEnabled;
+    private boolean activityResumed;
+    
+    private StartupPipeline startupPipeline;
+    private AsrEngine startupAsrEngine;
+    private boolean hardwareNoiseSuppression;
+    private boolean recordPermissionDenied = false;
 
     private ImageButton btnCamera;
     private Uri cameraPhotoUri;
@@ -126,32 +154,37 @@ public class MainActivity extends AppCompatActivity {
             getSupportActionBar().hide();
         }
         
+        startupPipeline = new StartupPipeline();
         initViews();
-        initManagers();
-        checkPermissions();
+        startupPipeline.trackFirstFrame(getWindow().getDecorView());
         
-        if (webViewManager != null) {
-            webViewManager.setBottomContainer(bottomContainer);
-            webViewManager.configureWebView();
-            webViewManager.loadOpenCodePage();
-        }
+        // Stage 1: start WebView navigation before anything else competes for the main thread
+        webViewManager = new WebViewManager(this, webView, webViewCallback);
+        webViewManager.setBottomContainer(bottomContainer);
+        webViewManager.configureWebView();
+        webViewManager.loadOpenCodePage();
         
-        if (recordingManager != null) {
-            recordingManager.setUiReferences(recordButton, recordProgress);
-            recordingManager.setupRecordButton();
-        }
+        recordingManager = new RecordingManager(this, recordingCallback);
+        recordingManager.setUiReferences(recordButton, recordProgress);
+        recordingManager.setupRecordButton();
+        
+        checkPermissions();
         
         rootView = getWindow().getDecorView().findViewById(android.R.id.content);
         rootView.getViewTreeObserver().addOnGlobalLayoutListener(this::checkKeyboardVisibility);
         updateButtonState(RecordingManager.ButtonState.DEFAULT);
+        // Until the ASR stack is wired the button must not start a recording
+        recordButton.setEnabled(false);
+        webViewManager.setRecording(recordingManager.isRecording());
         
-        if (webViewManager != null && recordingManager != null) {
-            webViewManager.setRecording(recordingManager.isRecording());
-        }
+        // Stage 2: preferences, file storage and ASR engines off the main thread
+        startupPipeline.runInBackground("asr", this::initManagers, this::onManagersReady,
+                () -> updateButtonState(RecordingManager.ButtonState.DISABLED));
     }
     
     private void initViews() {
         webView = findViewById(R.id.webview_opencode);
+        messageList = findViewById(R.id.rv_messages);
         recordButton = findViewById(R.id.btn_record);
         tvRecordHint = findViewById(R.id.tv_record_hint);
         recordButtonContainer = findViewById(R.id.record_button_container);
@@ -160,23 +193,20 @@ public class MainActivity extends AppCompatActivity {
         
         btnCamera = findViewById(R.id.btn_camera);
         btnCamera.setOnClickListener(v -> {
-            if (cameraPermissionManager != null) {
-                boolean recordingInProgress = recordingManager != null && recordingManager.isRecording();
-                cameraPermissionManager.openCamera(recordingInProgress);
-            }
+            boolean recordingInProgress = recordingManager != null && recordingManager.isRecording();
+            getCameraPermissionManager().openCamera(recordingInProgress);
         });
 
         TextView btnMenu = findViewById(R.id.btn_menu);
-        btnMenu.setOnClickListener(v -> {
-            if (settingsManager != null) {
-                settingsManager.showPopupMenu(v);
-            }
-        });
+        btnMenu.setOnClickListener(v -> getSettingsManager().showPopupMenu(v));
     }
     
+    /**
+     * Runs on the startup background thread; only builds objects, UI wiring happens in onManagersReady
+     */
     private void initManagers() {
         fileManager = new FileManager(this);
-        openCodeManager = null;
+        openCodeManager = new OpenCodeManager(this);
         audioRecorder = new AudioRecorder();
         
         android.content.SharedPreferences prefs = getSharedPreferences("settings", MODE_PRIVATE);
@@ -209,34 +239,85 @@ public class MainActivity extends AppCompatActivity {
         android.util.Log.d("MainActivity", "FunASR: " + funAsrHost + ":" + funAsrPort + " mode=" + funAsrMode);
         funAsrManager = new FunAsrWebSocketManager(this, funAsrHost, funAsrPort, funAsrMode);
         
-        webViewManager = new WebViewManager(this, webView, webViewCallback);
-        recordingManager = new RecordingManager(this, recordingCallback);
-        cameraPermissionManager = new CameraPermissionManager(this, cameraCallback);
-        settingsManager = new SettingsManager(this, settingsCallback);
-        
-        String audioProcessorType = getSharedPreferences("settings", MODE_PRIVATE)
-                .getString("audio_processor", Constants.DEFAULT_AUDIO_PROCESSOR);
-        if (Constants.AUDIO_PROCESSOR_NOISE_REDUCTION.equals(audioProcessorType)) {
-            audioProcessor = new NoiseReductionProcessor();
-        } else {
-            audioProcessor = new DirectProcessor();
-        }
-        
-        String asrBackend = getSharedPreferences("settings", MODE_PRIVATE)
-                .getString("asr_backend", Constants.DEFAULT_ASR_BACKEND);
-        AsrEngine currentAsrEngine;
-        if (Constants.ASR_BACKEND_CLOUD_HTTP.equals(asrBackend)) {
-            currentAsrEngine = cloudAsrManager;
-        } else {
-            currentAsrEngine = funAsrManager;
+        transcriptCache = new TranscriptCache(this);
+        cloudAsrEngine = new CachingAsrEngine(cloudAsrManager, transcriptCache, Constants.ASR_BACKEND_CLOUD_HTTP);
+        funAsrEngine = new CachingAsrEngine(funAsrManager, transcriptCache, Constants.ASR_BACKEND_FUNASR_WS);
+        localAsrEngine = new LocalWhisperAsrEngine(this);
+        cloudTieredEngine = new TieredAsrEngine(localAsrEngine, cloudAsrEngine);
+        funTieredEngine = new TieredAsrEngine(localAsrEngine, funAsrEngine);
+        localAsrFirst = prefs.getBoolean(Constants.KEY_LOCAL_ASR_FIRST, Constants.DEFAULT_LOCAL_ASR_FIRST);
+        localAsrEngine.setSpeculativeDecoding(prefs.getBoolean(Constants.KEY_SPECULATIVE_DECODING, Constants.DEFAULT_SPECULATIVE_DECODING));
+        
+        keywordSpotter = new KeywordSpotter(this);
+        voiceCommandsEnabled = prefs.getBoolean(Constants.KEY_VOICE_COMMANDS, Constants.DEFAULT_VOICE_COMMANDS);
+        continuousDictationEnabled = prefs.getBoolean(Constants.KEY_CONTINUOUS_DICTATION, Constants.DEFAULT_CONTINUOUS_DICTATION);
+        warmCaptureEnabled = prefs.getBoolean(Constants.KEY_WARM_CAPTURE, Constants.DEFAULT_WARM_CAPTURE);
+        audioProcessor = createAudioProcessor(prefs.getString("audio_processor", Constants.DEFAULT_AUDIO_PROCESSOR));
+        
+        hardwareNoiseSuppression = hardwareNS;
+        startupAsrEngine = selectAsrEngine(prefs.getString("asr_backend", Constants.DEFAULT_ASR_BACKEND));
+    }
+    
+    private void onManagersReady() {
+        if (isDestroyed()) {
+            startupAsrEngine.release();
+            localAsrEngine.release();
+            fileManager.release();
+            return;
         }
         
         recordingManager.setManagers(audioRecorder, fileManager);
-        recordingManager.setAsrEngine(currentAsrEngine);
+        recordingManager.setAsrEngine(startupAsrEngine);
         recordingManager.setAudioProcessor(audioProcessor);
-        recordingManager.setHardwareNoiseSuppressionEnabled(hardwareNS);
-        
-        settingsManager.setManagers(cloudAsrManager, funAsrManager, recordingManager);
+        recordingManager.setKeywordSpotter(voiceCommandsEnabled ? keywordSpotter : null);
+        recordingManager.setContinuousMode(continuousDictationEnabled);
+        recordingManager.setHardwareNoiseSuppressionEnabled(hardwareNoiseSuppression);
+        audioRecorder.setWarmMode(warmCaptureEnabled);
+        updateWarmCapture();
+        webViewManager.setOpenCodeManager(openCodeManager);
+        if (settingsManager != null) {
+            settingsManager.setManagers(cloudAsrManager, funAsrManager, recordingManager);
+        }
+        
+        if (!recordPermissionDenied) {
+            recordButton.setEnabled(true);
+        }
+        startupPipeline.markRecordReady();
+        reportFullyDrawn();
+        
+        // Stage 3: non-critical warm-up once the main thread has nothing else to do
+        AsrEngine engine = startupAsrEngine;
+        startupPipeline.runWhenIdle(engine::warmUp);
+        // Loads the session store from disk and syncs it; reuses the assistant session if the server has one
+        openCodeManager.setInitializationCallback((success, message) -> mainHandler.post(() -> {
+            if (nativeViewShown) {
+                showAssistantSession();
+            }
+        }));
+        startupPipeline.runWhenIdle(openCodeManager::initializeSession);
+    }
+    
+    private CameraPermissionManager getCameraPermissionManager() {
+        if (cameraPermissionManager == null) {
+            cameraPermissionManager = new CameraPermissionManager(this, cameraCallback);
+        }
+        return cameraPermissionManager;
+    }
+    
+    private SettingsManager getSettingsManager() {
+        if (settingsManager == null) {
+            settingsManager = new SettingsManager(this, settingsCallback);
+            // Wired here too in case the menu is opened after startup has finished
+            settingsManager.setManagers(cloudAsrManager, funAsrManager, recordingManager);
+        }
+        return settingsManager;
+    }
+    
+    private AsrEngine selectAsrEngine(String asrBackend) {
+        if (Constants.ASR_BACKEND_CLOUD_HTTP.equals(asrBackend)) {
+            return localAsrFirst ? cloudTieredEngine : cloudAsrEngine;
+        }
+        return localAsrFirst ? funTieredEngine : funAsrEngine;
     }
     
     private void checkPermissions() {
@@ -321,8 +402,12 @@ public class MainActivity extends AppCompatActivity {
         
         @Override
         public void onTranscriptionComplete(TranscriptionResult result) {
+            if (nativeViewShown && openCodeManager != null) {
+                sendFromNativeView(result.getText());
+                return;
+            }
             if (webViewManager != null) {
-                webViewManager.injectTranscribedText(result.getText());
+                webViewManager.submitTranscribedText(result.getText());
             }
         }
         
@@ -330,6 +415,20 @@ public class MainActivity extends AppCompatActivity {
         public void onTranscriptionError(String error) {
         }
         
+        @Override
+        public void onVoiceCommand(KeywordSpotter.Command command) {
+            if (webViewManager != null) {
+                webViewManager.performVoiceCommand(command);
+            }
+        }
+        
+        @Override
+        public void onDictationText(String text) {
+            if (webViewManager != null) {
+                webViewManager.appendDictatedText(text);
+            }
+        }
+        
         @Override
         public void onOpenCodeInitialized(boolean success, String message) {
         }
@@ -380,27 +479,38 @@ public class MainActivity extends AppCompatActivity {
             if (funAsrManager != null) {
                 funAsrManager.updateSettings(settings.funAsrHost, settings.funAsrPort, settings.funAsrMode);
             }
+            if (openCodeManager != null) {
+                openCodeManager.reloadSettings();
+                // The server may have changed; resync the store against it
+                openCodeManager.initializeSession();
+            }
             
-            AsrEngine currentAsrEngine;
-            if (Constants.ASR_BACKEND_CLOUD_HTTP.equals(settings.asrBackend)) {
-                currentAsrEngine = cloudAsrManager;
-            } else {
-                currentAsrEngine = funAsrManager;
+            boolean enableLocal = settings.localAsrFirst && !localAsrFirst;
+            localAsrFirst = settings.localAsrFirst;
+            if (localAsrEngine != null) {
+                localAsrEngine.setSpeculativeDecoding(settings.speculativeDecoding);
+            }
+            AsrEngine currentAsrEngine = selectAsrEngine(settings.asrBackend);
+            if (enableLocal && localAsrEngine != null) {
+                // Load the model now rather than on the first utterance
+                localAsrEngine.warmUp();
             }
             if (recordingManager != null) {
                 recordingManager.setAsrEngine(currentAsrEngine);
             }
             
-            if (Constants.AUDIO_PROCESSOR_NOISE_REDUCTION.equals(settings.audioProcessor)) {
-                audioProcessor = new NoiseReductionProcessor();
-            } else {
-                audioProcessor = new DirectProcessor();
-            }
+            voiceCommandsEnabled = settings.voiceCommands;
+            continuousDictationEnabled = settings.continuousDictation;
+            audioProcessor = createAudioProcessor(settings.audioProcessor);
             if (recordingManager != null) {
                 recordingManager.setAudioProcessor(audioProcessor);
+                recordingManager.setKeywordSpotter(voiceCommandsEnabled ? keywordSpotter : null);
+                recordingManager.setContinuousMode(settings.continuousDictation);
             }
             
+            warmCaptureEnabled = settings.warmCapture;
             if (audioRecorder != null) {
+                audioRecorder.setWarmMode(settings.warmCapture);
                 audioRecorder.setEnableNoiseSuppression(settings.hardwareNS);
                 android.util.Log.d("MainActivity", "Hardware NS updated: " + settings.hardwareNS);
             }
@@ -421,6 +531,29 @@ public class MainActivity extends AppCompatActivity {
             }
         }
         
+        @Override
+        public void onRunLocalBenchmark() {
+            if (localAsrEngine == null) {
+                return;
+            }
+            Toast.makeText(MainActivity.this, "正在测速...", Toast.LENGTH_SHORT).show();
+            localAsrEngine.benchmark(report -> mainHandler.post(() -> {
+                if (isFinishing() || isDestroyed()) {
+                    return;
+                }
+                new AlertDialog.Builder(MainActivity.this)
+                        .setTitle("本地识别测速")
+                        .setMessage(report)
+                        .setPositiveButton("确定", null)
+                        .show();
+            }));
+        }
+        
+        @Override
+        public void onToggleNativeView() {
+            toggleNativeView();
+        }
+        
         @Override
         public void onUpdateButtonState(RecordingManager.ButtonState state) {
             updateButtonState(state);
@@ -491,7 +624,7 @@ public class MainActivity extends AppCompatActivity {
                 recordButton.setBackgroundResource(R.drawable.bg_record_default);
                 recordProgress.setVisibility(View.GONE);
                 tvRecordHint.setVisibility(View.VISIBLE);
-                tvRecordHint.setText("按住说话");
+                tvRecordHint.setText(continuousDictationEnabled ? "点击开始听写" : "按住说话");
                 tvRecordHint.setTextColor(getResources().getColor(android.R.color.black));
                 recordButton.setEnabled(true);
                 break;
@@ -514,7 +647,8 @@ public class MainActivity extends AppCompatActivity {
                 recordButton.setBackgroundResource(R.drawable.bg_record_processing);
                 recordProgress.setVisibility(View.VISIBLE);
                 tvRecordHint.setVisibility(View.GONE);
-                recordButton.setEnabled(false);
+                // Still accepts presses: the next recording starts while this one is transcribed
+                recordButton.setEnabled(true);
                 break;
                 
             case DISABLED:
@@ -558,7 +692,7 @@ public class MainActivity extends AppCompatActivity {
     private void openFilePickerForWebView(WebChromeClient.FileChooserParams params) {
         android.util.Log.d("MainActivity", "Opening file picker for WebView");
         
-        if (cameraPermissionManager != null && cameraPermissionManager.checkStoragePermission()) {
+        if (getCameraPermissionManager().checkStoragePermission()) {
             Intent intent = params.createIntent();
             if (intent == null) {
                 intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
@@ -577,9 +711,7 @@ public class MainActivity extends AppCompatActivity {
                 }
             }
         } else {
-            if (cameraPermissionManager != null) {
-                cameraPermissionManager.requestStoragePermission();
-            }
+            getCameraPermissionManager().requestStoragePermission();
             if (webViewManager != null) {
                 webViewManager.handleFileChooserResult(null);
             }
@@ -634,6 +766,7 @@ public class MainActivity extends AppCompatActivity {
             }
             
             if (!allGranted) {
+                recordPermissionDenied = true;
                 Toast.makeText(this, "请开启录音/网络权限后使用", Toast.LENGTH_LONG).show();
                 updateButtonState(RecordingManager.ButtonState.DISABLED);
             }
@@ -645,6 +778,32 @@ public class MainActivity extends AppCompatActivity {
         }
     }
     
+    @Override
+    protected void onResume() {
+        super.onResume();
+        activityResumed = true;
+        updateWarmCapture();
+    }
+    
+    @Override
+    protected void onPause() {
+        super.onPause();
+        activityResumed = false;
+        updateWarmCapture();
+    }
+    
+    /**
+     * 预热录音只在前台且已授予录音权限时保持麦克风开启
+     */
+    private void updateWarmCapture() {
+        if (audioRecorder == null) {
+            return;
+        }
+        boolean granted = ContextCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO)
+                == PackageManager.PERMISSION_GRANTED;
+        audioRecorder.onForeground(activityResumed && granted);
+    }
+    
     @Override
     protected void onDestroy() {
         super.onDestroy();
@@ -656,6 +815,93 @@ public class MainActivity extends AppCompatActivity {
         }
         if (fileManager != null) {
             fileManager.deleteTempWavFile();
+            fileManager.release();
+        }
+        if (webViewManager != null) {
+            webViewManager.release();
+        }
+        if (startupPipeline != null) {
+            startupPipeline.release();
+        }
+        if (messageListController != null) {
+            messageListController.release();
+        }
+        if (openCodeManager != null) {
+            openCodeManager.release();
+        }
+        if (keywordSpotter != null) {
+            keywordSpotter.release();
+        }
+        if (localAsrEngine != null) {
+            // No-op if the tiered engine already released it
+            localAsrEngine.release();
+        }
+    }
+    
+    /**
+     * 在 WebView 和原生会话视图之间切换
+     * 原生视图显示语音助手会话（本地存储分页 + 事件流增量刷新），网页加载慢或失败时也能查看回复
+     */
+    private void toggleNativeView() {
+        if (openCodeManager == null) {
+            Toast.makeText(this, "正在初始化，请稍后", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        nativeViewShown = !nativeViewShown;
+        if (nativeViewShown) {
+            if (messageListController == null) {
+                messageListController = new MessageListController(messageList, openCodeManager.getSessionStore());
+            }
+            // Streamed parts reach the store, and from there the list, over the event stream
+            openCodeManager.connectEvents();
+            showAssistantSession();
+        }
+        messageList.setVisibility(nativeViewShown ? View.VISIBLE : View.GONE);
+        webView.setVisibility(nativeViewShown ? View.GONE : View.VISIBLE);
+    }
+    
+    /**
+     * 原生视图下直接发送到语音助手会话；回复经事件流写入本地存储，列表随之增量刷新
+     */
+    private void sendFromNativeView(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            return;
+        }
+        openCodeManager.sendMessage(text, new OpenCodeManager.ResponseCallback() {
+            @Override
+            public void onResponse(String response) {
+            }
+            
+            @Override
+            public void onError(String error) {
+                Toast.makeText(MainActivity.this, error, Toast.LENGTH_LONG).show();
+            }
+        });
+    }
+    
+    private void showAssistantSession() {
+        String sessionId = openCodeManager.getSessionId();
+        if (sessionId == null) {
+            // initializeSession has not finished; its callback shows the session
+            return;
+        }
+        messageListController.showSession(sessionId);
+        openCodeManager.getSessionStore().syncMessages(sessionId, null);
+    }
+    
+    /**
+     * 按设置创建音频处理器；开启语音命令时外面包一层关键词识别
+     */
+    private AudioProcessor createAudioProcessor(String type) {
+        AudioProcessor processor;
+        if (Constants.AUDIO_PROCESSOR_NOISE_REDUCTION.equals(type)) {
+            processor = new NoiseReductionProcessor();
+        } else {
+            processor = new DirectProcessor();
+        }
+        if (voiceCommandsEnabled && keywordSpotter != null) {
+            processor = new KeywordSpottingProcessor(processor, keywordSpotter);
         }
+        return processor;
     }
 }
\ No newline at end of file
@@ -14,4 +14,17 @@ public interface AsrEngine {
     void transcribe(byte[] pcmData, AsrCallback callback);
     void cancel();
     void release();
+    
+    /**
+     * 预热连接（启动空闲时调用），默认无操作
+     */
+    default void warmUp() {
+    }
+    
+    /**
+     * 可同时进行的转录请求数，连续听写据此流水线提交；默认一次一个
+     */
+    default int getMaxConcurrentRequests() {
+        return 1;
+    }
 }
\ No newline at end of file
@@ -11,9 +11,20 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * 录音器（无锁状态机，每次录音一个 CaptureSession）
+ * - startRecording 只把会话放进队列，采集线程依次取出写入；stopRecording 只打标记，都不阻塞调用方
+ * - 一次录音结束后，关闭文件、回写 WAV 头、回调 SessionCallback 都在收尾线程执行，采集线程马上可以开始下一次录音
+ * - 没有待录会话（且未开启预热）时采集线程释放 AudioRecord 并退出，有新会话时再启动
+ * - 预热模式（可选）：应用在前台时保持采集，持续把最近 PRE_ROLL_MS 的音频写入环形缓冲；
+ *   按下时把预录音频接在录音开头，首个音节不会被截掉
+ */
 @SuppressLint("MissingPermission")
 public class AudioRecorder {
 
@@ -24,173 +35,388 @@ public class AudioRecorder {
     private static final int AUDIO_FORMAT = AudioFormat.ENCODING_PCM_16BIT;
     private static final int BUFFER_SIZE = AudioRecord.getMinBufferSize(SAMPLE_RATE, CHANNEL_CONFIG, AUDIO_FORMAT);
 
-    private AudioRecord audioRecord;
-    private ExecutorService executor;
-    private volatile boolean isRecording = false;
-    private volatile boolean isReady = true;
-    private File currentWavFile;
-    
-    private AudioProcessor audioProcessor;
-    
-    private NoiseSuppressor noiseSuppressor;
-    
-    private boolean enableNoiseSuppression = true;
-    
+    private static final int PRE_ROLL_MS = 400;
+    private static final int PRE_ROLL_BYTES = SAMPLE_RATE * 2 * PRE_ROLL_MS / 1000;
+
+    /**
+     * 一次录音收尾完成（收尾线程调用，按录音先后顺序）
+     */
+    public interface SessionCallback {
+        /**
+         * @param wavFile 录音文件；流式录音时为 null
+         * @param audioBytes 写入的 PCM 字节数；采集失败时为 0，文件已删除
+         */
+        void onSessionFinished(File wavFile, long audioBytes);
+
+        /**
+         * 采集线程调用：本次录音的处理器刚 flush 完，下一次录音还没开始写入
+         */
+        default void onCaptureEnded() {
+        }
+    }
+
+    // Capture thread: owns the AudioRecord for as long as there is work, restarted on demand
+    private final ExecutorService executor;
+    // Finalizer: WAV header rewrite and callbacks, in session order, off the capture thread
+    private final ExecutorService finalizer;
+
+    // Session that has been started but not yet stopped; at most one at a time
+    private final AtomicReference<CaptureSession> accepting = new AtomicReference<>();
+    // Started sessions the capture thread has not picked up yet, in order
+    private final ConcurrentLinkedQueue<CaptureSession> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean captureRunning = new AtomicBoolean(false);
+
+    private volatile AudioProcessor audioProcessor;
+
+    private volatile NoiseSuppressor noiseSuppressor;
+
+    private volatile boolean enableNoiseSuppression = true;
+
+    private volatile boolean warmEnabled = false;
+    private volatile boolean foreground = false;
+    private volatile boolean released = false;
+
+    // Only touched by the capture thread
+    private final byte[] preRoll = new byte[PRE_ROLL_BYTES];
+    private int preRollPos = 0;
+    private int preRollFill = 0;
+
+    /**
+     * 一次录音：WAV 文件（可为 null）+ 开始时的音频处理器 + 收尾回调
+     */
+    private class CaptureSession {
+        final File wavFile;
+        final AudioProcessor processor;
+        final SessionCallback callback;
+        volatile boolean stopRequested = false;
+        FileOutputStream fos;
+        long totalAudioLen = 0;
+        boolean failed = false;
+
+        CaptureSession(File wavFile, AudioProcessor processor, SessionCallback callback) {
+            this.wavFile = wavFile;
+            this.processor = processor;
+            this.callback = callback;
+        }
+
+        void open() throws IOException {
+            // No file in streaming mode (continuous dictation): audio only flows to the processor
+            if (wavFile != null) {
+                fos = new FileOutputStream(wavFile);
+                writeWavHeader(fos, 0);
+            }
+        }
+
+        void write(byte[] data, int length) throws IOException {
+            if (length <= 0) {
+                return;
+            }
+            if (fos != null) {
+                fos.write(data, 0, length);
+            }
+            totalAudioLen += length;
+            if (processor != null) {
+                byte[] chunk = new byte[length];
+                System.arraycopy(data, 0, chunk, 0, length);
+                processor.processAudio(chunk);
+            }
+        }
+
+        /**
+         * 采集线程调用：处理器是有状态的单路流，必须在下一次录音写入之前 flush
+         */
+        void endCapture() {
+            if (processor != null && !failed) {
+                processor.flush();
+                if (callback != null) {
+                    callback.onCaptureEnded();
+                }
+            }
+            finalizer.execute(this::finish);
+        }
+
+        private void finish() {
+            try {
+                if (fos != null) {
+                    fos.close();
+                    if (!failed) {
+                        updateWavHeader(wavFile, totalAudioLen);
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to finalize WAV file", e);
+                failed = true;
+            }
+            if (failed && wavFile != null) {
+                wavFile.delete();
+            }
+            Log.d(TAG, "Session finalized: " + totalAudioLen + " bytes" + (failed ? " (failed)" : ""));
+            if (callback != null) {
+                callback.onSessionFinished(wavFile, failed ? 0 : totalAudioLen);
+            }
+        }
+    }
+
     public AudioRecorder() {
         this.executor = Executors.newSingleThreadExecutor();
+        this.finalizer = Executors.newSingleThreadExecutor();
     }
-    
+
     public void setAudioProcessor(AudioProcessor processor) {
         this.audioProcessor = processor;
     }
-    
+
     public void setEnableNoiseSuppression(boolean enable) {
         this.enableNoiseSuppression = enable;
+        NoiseSuppressor suppressor = noiseSuppressor;
+        if (suppressor != null) {
+            // Applies to a running capture immediately
+            suppressor.setEnabled(enable);
+        }
     }
-    
-    @SuppressLint("MissingPermission")
-    public void startRecording(File wavFile) {
-        if (isRecording || !isReady) {
-            Log.w(TAG, "Cannot start recording - isRecording=" + isRecording + ", isReady=" + isReady);
-            return;
+
+    /**
+     * 开启/关闭预热模式；开启后在前台（onForeground(true)）期间保持采集
+     */
+    public void setWarmMode(boolean enabled) {
+        warmEnabled = enabled;
+        ensureCapture();
+    }
+
+    /**
+     * Activity 进入前台/后台时调用，后台时释放麦克风
+     */
+    public void onForeground(boolean inForeground) {
+        foreground = inForeground;
+        ensureCapture();
+    }
+
+    /**
+     * @param wavFile 录音写入的 WAV 文件；为 null 时只把音频交给 AudioProcessor，不落盘
+     * @return 上一次录音还没有 stopRecording 时返回 false；上一次的收尾不影响开始新录音
+     */
+    public boolean startRecording(File wavFile) {
+        return startRecording(wavFile, null);
+    }
+
+    public boolean startRecording(File wavFile, SessionCallback callback) {
+        if (released) {
+            return false;
         }
+        CaptureSession session = new CaptureSession(wavFile, audioProcessor, callback);
+        if (!accepting.compareAndSet(null, session)) {
+            Log.w(TAG, "Cannot start recording - previous session not stopped");
+            return false;
+        }
+        queue.offer(session);
+        ensureCapture();
+        return true;
+    }
 
-        this.currentWavFile = wavFile;
-        this.isRecording = true;
-        this.isReady = false;
+    public void stopRecording() {
+        CaptureSession session = accepting.getAndSet(null);
+        if (session != null) {
+            session.stopRequested = true;
+        }
+    }
 
-        executor.execute(() -> {
-            int retryCount = 0;
-            final int maxRetries = 3;
-            final long retryDelayMs = 100;
+    private boolean needsCapture() {
+        return !released && (!queue.isEmpty() || (warmEnabled && foreground));
+    }
 
-            try {
-                while (retryCount < maxRetries) {
-                    audioRecord = new AudioRecord(
-                        MediaRecorder.AudioSource.VOICE_RECOGNITION,
-                        SAMPLE_RATE,
-                        CHANNEL_CONFIG,
-                        AUDIO_FORMAT,
-                        BUFFER_SIZE
-                    );
-
-                    if (audioRecord.getState() == AudioRecord.STATE_INITIALIZED) {
-                        Log.i(TAG, "AudioRecord initialized successfully on attempt " + (retryCount + 1));
-                        int sessionId = audioRecord.getAudioSessionId();
-                        
-                        if (enableNoiseSuppression && NoiseSuppressor.isAvailable()) {
-                            noiseSuppressor = NoiseSuppressor.create(sessionId);
-                            if (noiseSuppressor != null) {
-                                noiseSuppressor.setEnabled(true);
-                                Log.i(TAG, "NoiseSuppressor enabled, sessionId=" + sessionId);
-                            }
-                        } else {
-                            Log.i(TAG, "NoiseSuppressor not available or disabled (enableNS=" + enableNoiseSuppression + ", available=" + NoiseSuppressor.isAvailable() + ")");
-                        }
-                        
-                        break;
+    private void ensureCapture() {
+        if (needsCapture() && captureRunning.compareAndSet(false, true)) {
+            executor.execute(this::captureLoop);
+        }
+    }
+
+    private void captureLoop() {
+        boolean opened;
+        do {
+            opened = runCapture();
+            captureRunning.set(false);
+            // A session may have been queued after runCapture decided to exit; a failed open
+            // is not retried here, the next startRecording tries again
+        } while (opened && needsCapture() && captureRunning.compareAndSet(false, true));
+        if (!opened) {
+            failQueuedSessions();
+        }
+    }
+
+    /**
+     * @return AudioRecord 打开失败时返回 false
+     */
+    private boolean runCapture() {
+        AudioRecord audioRecord = openAudioRecord();
+        if (audioRecord == null) {
+            failQueuedSessions();
+            return false;
+        }
+        Log.i(TAG, "Capture started");
+
+        CaptureSession current = null;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            audioRecord.startRecording();
+            while (true) {
+                int read = audioRecord.read(buffer, 0, buffer.length);
+
+                if (current == null) {
+                    current = queue.poll();
+                    if (current != null) {
+                        current.open();
+                        writePreRoll(current);
+                        Log.d(TAG, "Session started with " + preRollFill + " bytes pre-roll");
                     }
+                }
 
-                    Log.w(TAG, "AudioRecord initialization failed on attempt " + (retryCount + 1) + ", retrying...");
-                    audioRecord.release();
-                    audioRecord = null;
-                    retryCount++;
-
-                    if (retryCount < maxRetries) {
-                        try {
-                            Thread.sleep(retryDelayMs);
-                        } catch (InterruptedException e) {
-                            Thread.currentThread().interrupt();
-                            break;
-                        }
+                if (current == null) {
+                    if (!needsCapture()) {
+                        break;
                     }
+                    appendPreRoll(buffer, Math.max(read, 0));
+                    continue;
                 }
 
-                if (audioRecord == null || audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
-                    Log.e(TAG, "AudioRecord initialization failed after " + maxRetries + " attempts");
-                    isRecording = false;
-                    isReady = true;
-                    return;
+                current.write(buffer, read);
+                if (current.stopRequested) {
+                    // Cleared first so a failure inside endCapture does not end the session twice
+                    CaptureSession ended = current;
+                    current = null;
+                    preRollFill = 0;
+                    ended.endCapture();
                 }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Capture failed", e);
+            if (current != null) {
+                current.failed = true;
+                accepting.compareAndSet(current, null);
+                current.endCapture();
+            }
+        } finally {
+            closeAudioRecord(audioRecord);
+            preRollFill = 0;
+            Log.i(TAG, "Capture stopped");
+        }
+        return true;
+    }
 
-                audioRecord.startRecording();
-                
-                FileOutputStream fos = new FileOutputStream(wavFile);
-                byte[] buffer = new byte[BUFFER_SIZE];
-                
-                writeWavHeader(fos, 0);
-                
-                int totalAudioLen = 0;
-                
-                while (isRecording) {
-                    int read = audioRecord.read(buffer, 0, buffer.length);
-                    if (read > 0) {
-                        fos.write(buffer, 0, read);
-                        totalAudioLen += read;
-                        
-                        if (audioProcessor != null) {
-                            byte[] chunk = new byte[read];
-                            System.arraycopy(buffer, 0, chunk, 0, read);
-                            audioProcessor.processAudio(chunk);
-                        }
+    private void failQueuedSessions() {
+        CaptureSession session;
+        while ((session = queue.poll()) != null) {
+            session.failed = true;
+            accepting.compareAndSet(session, null);
+            session.endCapture();
+        }
+    }
+
+    private void appendPreRoll(byte[] data, int length) {
+        int offset = 0;
+        if (length > PRE_ROLL_BYTES) {
+            offset = length - PRE_ROLL_BYTES;
+            length = PRE_ROLL_BYTES;
+        }
+        while (length > 0) {
+            int count = Math.min(length, PRE_ROLL_BYTES - preRollPos);
+            System.arraycopy(data, offset, preRoll, preRollPos, count);
+            preRollPos = (preRollPos + count) % PRE_ROLL_BYTES;
+            offset += count;
+            length -= count;
+            preRollFill = Math.min(PRE_ROLL_BYTES, preRollFill + count);
+        }
+    }
+
+    private void writePreRoll(CaptureSession session) throws IOException {
+        if (preRollFill == 0) {
+            return;
+        }
+        byte[] ordered = new byte[preRollFill];
+        int start = (preRollPos - preRollFill + PRE_ROLL_BYTES) % PRE_ROLL_BYTES;
+        int firstPart = Math.min(preRollFill, PRE_ROLL_BYTES - start);
+        System.arraycopy(preRoll, start, ordered, 0, firstPart);
+        System.arraycopy(preRoll, 0, ordered, firstPart, preRollFill - firstPart);
+        session.write(ordered, ordered.length);
+    }
+
+    private AudioRecord openAudioRecord() {
+        final int maxRetries = 3;
+        final long retryDelayMs = 100;
+        for (int retryCount = 0; retryCount < maxRetries; retryCount++) {
+            AudioRecord audioRecord = new AudioRecord(
+                MediaRecorder.AudioSource.VOICE_RECOGNITION,
+                SAMPLE_RATE,
+                CHANNEL_CONFIG,
+                AUDIO_FORMAT,
+                BUFFER_SIZE
+            );
+
+            if (audioRecord.getState() == AudioRecord.STATE_INITIALIZED) {
+                Log.i(TAG, "AudioRecord initialized successfully on attempt " + (retryCount + 1));
+                int sessionId = audioRecord.getAudioSessionId();
+
+                if (enableNoiseSuppression && NoiseSuppressor.isAvailable()) {
+                    noiseSuppressor = NoiseSuppressor.create(sessionId);
+                    if (noiseSuppressor != null) {
+                        noiseSuppressor.setEnabled(true);
+                        Log.i(TAG, "NoiseSuppressor enabled, sessionId=" + sessionId);
                     }
+                } else {
+                    Log.i(TAG, "NoiseSuppressor not available or disabled (enableNS=" + enableNoiseSuppression + ", available=" + NoiseSuppressor.isAvailable() + ")");
                 }
-                
-                fos.close();
-                
-                updateWavHeader(wavFile, totalAudioLen);
-                
-                if (audioProcessor != null) {
-                    audioProcessor.flush();
-                }
-                
-            } catch (Exception e) {
-                e.printStackTrace();
-            } finally {
-                    releaseAudioEffects();
-                    if (audioRecord != null) {
-                        try {
-                            if (audioRecord.getState() == AudioRecord.STATE_INITIALIZED) {
-                                if (audioRecord.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
-                                    audioRecord.stop();
-                                }
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error stopping AudioRecord", e);
-                        } finally {
-                            try {
-                                audioRecord.release();
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error releasing AudioRecord", e);
-                            }
-                            audioRecord = null;
-                        }
-                    }
-                    isReady = true;
-                    Log.d(TAG, "Recording thread completed, isReady set to true");
+                return audioRecord;
+            }
+
+            Log.w(TAG, "AudioRecord initialization failed on attempt " + (retryCount + 1) + ", retrying...");
+            audioRecord.release();
+
+            if (retryCount + 1 < maxRetries) {
+                try {
+                    Thread.sleep(retryDelayMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
                 }
-        });
+            }
+        }
+        Log.e(TAG, "AudioRecord initialization failed after " + maxRetries + " attempts");
+        return null;
     }
-    
-    public void stopRecording() {
-        isRecording = false;
+
+    private void closeAudioRecord(AudioRecord audioRecord) {
+        releaseAudioEffects();
+        try {
+            if (audioRecord.getState() == AudioRecord.STATE_INITIALIZED) {
+                if (audioRecord.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING) {
+                    audioRecord.stop();
+                }
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error stopping AudioRecord", e);
+        } finally {
+            try {
+                audioRecord.release();
+            } catch (Exception e) {
+                Log.e(TAG, "Error releasing AudioRecord", e);
+            }
+        }
     }
-    
+
     private void writeWavHeader(FileOutputStream out, long totalAudioLen) throws IOException {
         long totalDataLen = totalAudioLen + 36;
         long longSampleRate = SAMPLE_RATE;
         int channels = 1;
         long byteRate = 16 * SAMPLE_RATE * channels / 8;
-        
+
         byte[] header = new byte[44];
-        
+
         header[0] = 'R'; header[1] = 'I'; header[2] = 'F'; header[3] = 'F';
         header[4] = (byte) (totalDataLen & 0xff);
         header[5] = (byte) ((totalDataLen >> 8) & 0xff);
         header[6] = (byte) ((totalDataLen >> 16) & 0xff);
         header[7] = (byte) ((totalDataLen >> 24) & 0xff);
         header[8] = 'W'; header[9] = 'A'; header[10] = 'V'; header[11] = 'E';
-        
+
         header[12] = 'f'; header[13] = 'm'; header[14] = 't'; header[15] = ' ';
         header[16] = 16; header[17] = 0; header[18] = 0; header[19] = 0;
         header[20] = 1; header[21] = 0;
@@ -205,16 +431,16 @@ public class AudioRecorder {
         header[31] = (byte) ((byteRate >> 24) & 0xff);
         header[32] = (byte) (2 * 16 / 8); header[33] = 0;
         header[34] = 16; header[35] = 0;
-        
+
         header[36] = 'd'; header[37] = 'a'; header[38] = 't'; header[39] = 'a';
         header[40] = (byte) (totalAudioLen & 0xff);
         header[41] = (byte) ((totalAudioLen >> 8) & 0xff);
         header[42] = (byte) ((totalAudioLen >> 16) & 0xff);
         header[43] = (byte) ((totalAudioLen >> 24) & 0xff);
-        
+
         out.write(header, 0, 44);
     }
-    
+
     private void updateWavHeader(File wavFile, long totalAudioLen) throws IOException {
         RandomAccessFile raf = new RandomAccessFile(wavFile, "rw");
         raf.seek(4);
@@ -223,7 +449,7 @@ public class AudioRecorder {
         raf.writeInt(Integer.reverseBytes((int) totalAudioLen));
         raf.close();
     }
-    
+
     private void releaseAudioEffects() {
         if (noiseSuppressor != null) {
             try {
@@ -235,21 +461,27 @@ public class AudioRecorder {
             noiseSuppressor = null;
         }
     }
-    
+
     public void release() {
+        released = true;
+        warmEnabled = false;
         stopRecording();
-        releaseAudioEffects();
-        if (audioProcessor != null) {
-            audioProcessor.release();
-        }
+        // Queued behind the capture loop, so the last session is flushed and handed to the
+        // finalizer before the processor is released and the finalizer stops taking work
+        executor.execute(() -> {
+            AudioProcessor processor = audioProcessor;
+            if (processor != null) {
+                processor.release();
+            }
+            finalizer.shutdown();
+        });
         executor.shutdown();
     }
-    
-    public boolean isRecording() {
-        return isRecording;
-    }
 
-    public boolean isReady() {
-        return isReady;
+    /**
+     * 是否有已开始、尚未 stopRecording 的录音
+     */
+    public boolean isRecording() {
+        return accepting.get() != null;
     }
-}
\ No newline at end of file
+}
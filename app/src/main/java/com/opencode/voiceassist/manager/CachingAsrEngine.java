@@ -0,0 +1,164 @@
+package com.opencode.voiceassist.manager;
+
+import android.util.Log;
+
+import com.opencode.voiceassist.model.TranscriptionResult;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AsrEngine 装饰器：转录前先查 TranscriptCache，命中时直接返回，不做网络或本地推理
+ */
+public class CachingAsrEngine implements AsrEngine {
+    private static final String TAG = "CachingAsrEngine";
+
+    private static final int WAV_HEADER_SIZE = 44;
+
+    private final AsrEngine delegate;
+    private final TranscriptCache cache;
+    private final String namespace;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AtomicInteger generation = new AtomicInteger();
+
+    public CachingAsrEngine(AsrEngine delegate, TranscriptCache cache, String namespace) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.namespace = namespace;
+    }
+
+    public AsrEngine getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void transcribe(File wavFile, AsrCallback callback) {
+        if (wavFile == null || !wavFile.exists()) {
+            delegate.transcribe(wavFile, callback);
+            return;
+        }
+        int requestGeneration = generation.get();
+        executor.execute(() -> {
+            if (isCancelled(requestGeneration, callback)) {
+                return;
+            }
+            String key;
+            try {
+                key = TranscriptCache.fingerprint(namespace, readPcm(wavFile));
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to fingerprint audio, skipping cache", e);
+                delegate.transcribe(wavFile, callback);
+                return;
+            }
+            if (key == null) {
+                delegate.transcribe(wavFile, callback);
+            } else if (!deliverCached(key, callback)) {
+                delegate.transcribe(wavFile, cachingCallback(key, callback));
+            }
+        });
+    }
+
+    @Override
+    public void transcribe(byte[] pcmData, AsrCallback callback) {
+        if (pcmData == null || pcmData.length == 0) {
+            delegate.transcribe(pcmData, callback);
+            return;
+        }
+        int requestGeneration = generation.get();
+        executor.execute(() -> {
+            if (isCancelled(requestGeneration, callback)) {
+                return;
+            }
+            String key = TranscriptCache.fingerprint(namespace, pcmData);
+            if (key == null) {
+                // Nothing but silence: not worth a cache entry
+                delegate.transcribe(pcmData, callback);
+            } else if (!deliverCached(key, callback)) {
+                delegate.transcribe(pcmData, cachingCallback(key, callback));
+            }
+        });
+    }
+
+    private boolean isCancelled(int requestGeneration, AsrCallback callback) {
+        if (requestGeneration != generation.get()) {
+            callback.onError("转录被取消");
+            return true;
+        }
+        return false;
+    }
+
+    private boolean deliverCached(String key, AsrCallback callback) {
+        long startTime = System.currentTimeMillis();
+        TranscriptionResult cached = cache.get(key);
+        if (cached == null) {
+            return false;
+        }
+        long elapsed = System.currentTimeMillis() - startTime;
+        double audioSeconds = cached.getAudioLengthSeconds();
+        double realtimeFactor = audioSeconds > 0 ? elapsed / 1000.0 / audioSeconds : 0;
+        Log.d(TAG, "Transcript cache hit (" + namespace + "): " + cached.getText());
+        callback.onSuccess(new TranscriptionResult(cached.getText(), audioSeconds, elapsed, realtimeFactor));
+        return true;
+    }
+
+    private AsrCallback cachingCallback(String key, AsrCallback callback) {
+        return new AsrCallback() {
+            @Override
+            public void onSuccess(TranscriptionResult result) {
+                cache.put(key, result);
+                callback.onSuccess(result);
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
+            }
+        };
+    }
+
+    private static byte[] readPcm(File wavFile) throws IOException {
+        long pcmSize = wavFile.length() - WAV_HEADER_SIZE;
+        if (pcmSize <= 0 || pcmSize > Integer.MAX_VALUE) {
+            throw new IOException("Unexpected WAV size: " + wavFile.length());
+        }
+        byte[] pcmData = new byte[(int) pcmSize];
+        try (FileInputStream fis = new FileInputStream(wavFile)) {
+            if (fis.skip(WAV_HEADER_SIZE) != WAV_HEADER_SIZE) {
+                throw new IOException("WAV file too small");
+            }
+            int total = 0;
+            while (total < pcmData.length) {
+                int read = fis.read(pcmData, total, pcmData.length - total);
+                if (read == -1) break;
+                total += read;
+            }
+        }
+        return pcmData;
+    }
+
+    @Override
+    public void cancel() {
+        generation.incrementAndGet();
+        delegate.cancel();
+    }
+
+    @Override
+    public void warmUp() {
+        delegate.warmUp();
+    }
+
+    @Override
+    public int getMaxConcurrentRequests() {
+        return delegate.getMaxConcurrentRequests();
+    }
+
+    @Override
+    public void release() {
+        delegate.release();
+        executor.shutdown();
+    }
+}
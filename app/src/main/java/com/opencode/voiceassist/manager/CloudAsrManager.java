@@ -11,6 +11,8 @@ import org.json.JSONObject;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import okhttp3.Call;
@@ -30,7 +32,10 @@ public class CloudAsrManager implements AsrEngine {
     private int serverPort;
     private final OkHttpClient httpClient;
     
-    private Call currentCall;
+    // Each transcription is an independent HTTP call, so several may be in flight (continuous dictation)
+    private static final int MAX_CONCURRENT_REQUESTS = 3;
+    
+    private final Set<Call> activeCalls = ConcurrentHashMap.newKeySet();
     
     public CloudAsrManager(Context context, String ip, int port) {
         this.context = context;
@@ -92,14 +97,20 @@ public class CloudAsrManager implements AsrEngine {
                 
                 long startTime = System.currentTimeMillis();
                 
-                currentCall = httpClient.newCall(request);
+                Call call = httpClient.newCall(request);
+                activeCalls.add(call);
                 
                 Log.d(TAG, "Executing HTTP request...");
-                Response response = currentCall.execute();
+                Response response;
+                try {
+                    response = call.execute();
+                } finally {
+                    activeCalls.remove(call);
+                }
                 long processingTime = System.currentTimeMillis() - startTime;
                 Log.d(TAG, "Response received in " + processingTime + "ms");
                 
-                if (currentCall.isCanceled()) {
+                if (call.isCanceled()) {
                     Log.d(TAG, "Cloud ASR request was cancelled");
                     return;
                 }
@@ -149,11 +160,35 @@ public class CloudAsrManager implements AsrEngine {
     
     @Override
     public void cancel() {
-        if (currentCall != null && !currentCall.isCanceled()) {
-            Log.d(TAG, "Cancelling current Cloud ASR request");
-            currentCall.cancel();
-            currentCall = null;
+        for (Call call : activeCalls) {
+            Log.d(TAG, "Cancelling Cloud ASR request");
+            call.cancel();
         }
+        activeCalls.clear();
+    }
+    
+    @Override
+    public int getMaxConcurrentRequests() {
+        return MAX_CONCURRENT_REQUESTS;
+    }
+    
+    @Override
+    public void warmUp() {
+        // Open a pooled connection so the first transcription skips DNS/TCP setup
+        String url = "http://" + serverIp + ":" + serverPort + "/";
+        Request request = new Request.Builder().url(url).head().build();
+        httpClient.newCall(request).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Log.d(TAG, "Cloud ASR warm-up failed: " + e.getMessage());
+            }
+            
+            @Override
+            public void onResponse(Call call, Response response) {
+                Log.d(TAG, "Cloud ASR warm-up done: HTTP " + response.code());
+                response.close();
+            }
+        });
     }
     
     @Override
@@ -0,0 +1,217 @@
+package com.opencode.voiceassist.manager;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.opencode.voiceassist.model.TranscriptionResult;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.TreeMap;
+
+/**
+ * 免提连续听写
+ * - 录音一直进行，VadSegmenter 按静音切分成句
+ * - 每句写成 WAV 交给 ASR 引擎，最多同时 getMaxConcurrentRequests() 个请求，其余排队；下一句照常录音
+ * - 结果按句子顺序回调（前一句未返回时，后一句的结果先缓存），识别失败的句子跳过
+ */
+public class ContinuousDictationManager implements VadSegmenter.SegmentListener {
+    private static final String TAG = "ContinuousDictation";
+
+    private static final int SAMPLE_RATE = 16000;
+
+    public interface DictationListener {
+        /**
+         * 主线程调用，按说话顺序
+         */
+        void onUtteranceText(String text);
+
+        void onUtteranceError(String error);
+    }
+
+    private final AudioRecorder audioRecorder;
+    private final File segmentDir;
+    private final DictationListener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private AsrEngine asrEngine;
+    private boolean active = false;
+    // Bumped on start/stop so late results from a previous session are dropped
+    private volatile int session = 0;
+    private int nextSequence = 0;
+    private int nextToDeliver = 0;
+    private int inFlight = 0;
+    private final ArrayDeque<PendingSegment> queue = new ArrayDeque<>();
+    private final TreeMap<Integer, String> completed = new TreeMap<>();
+
+    private static class PendingSegment {
+        final int sequence;
+        final File wavFile;
+
+        PendingSegment(int sequence, File wavFile) {
+            this.sequence = sequence;
+            this.wavFile = wavFile;
+        }
+    }
+
+    public ContinuousDictationManager(Context context, AudioRecorder audioRecorder, DictationListener listener) {
+        this.audioRecorder = audioRecorder;
+        this.listener = listener;
+        this.segmentDir = new File(context.getCacheDir(), "dictation");
+    }
+
+    public void setAsrEngine(AsrEngine asrEngine) {
+        this.asrEngine = asrEngine;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public synchronized void start() {
+        if (active) {
+            return;
+        }
+        if (!segmentDir.exists()) {
+            segmentDir.mkdirs();
+        }
+        session++;
+        nextSequence = 0;
+        nextToDeliver = 0;
+        inFlight = 0;
+        queue.clear();
+        completed.clear();
+        active = true;
+        audioRecorder.setAudioProcessor(new VadSegmenter(this));
+        audioRecorder.startRecording(null);
+        Log.d(TAG, "Continuous dictation started");
+    }
+
+    /**
+     * 停止录音；最后一句和已提交的句子照常识别并回调
+     */
+    public synchronized void stop() {
+        if (!active) {
+            return;
+        }
+        active = false;
+        audioRecorder.stopRecording();
+        Log.d(TAG, "Continuous dictation stopped");
+    }
+
+    /**
+     * 停止并丢弃所有未返回的结果
+     */
+    public synchronized void cancel() {
+        stop();
+        session++;
+        for (PendingSegment pending : queue) {
+            pending.wavFile.delete();
+        }
+        queue.clear();
+        completed.clear();
+        if (asrEngine != null) {
+            asrEngine.cancel();
+        }
+    }
+
+    @Override
+    public void onSegment(byte[] pcm) {
+        synchronized (this) {
+            int sequence = nextSequence++;
+            File wavFile = new File(segmentDir, "segment_" + session + "_" + sequence + ".wav");
+            try {
+                writeWav(wavFile, pcm);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write segment " + sequence, e);
+                completed.put(sequence, null);
+                deliverInOrder(session);
+                return;
+            }
+            Log.d(TAG, "Segment " + sequence + ": " + pcm.length / 2 / (SAMPLE_RATE / 1000) + "ms");
+            queue.addLast(new PendingSegment(sequence, wavFile));
+        }
+        pump();
+    }
+
+    private void pump() {
+        while (true) {
+            PendingSegment pending;
+            int segmentSession;
+            synchronized (this) {
+                int limit = asrEngine != null ? Math.max(1, asrEngine.getMaxConcurrentRequests()) : 1;
+                if (queue.isEmpty() || inFlight >= limit || asrEngine == null) {
+                    return;
+                }
+                pending = queue.removeFirst();
+                segmentSession = session;
+                inFlight++;
+            }
+            transcribe(pending, segmentSession);
+        }
+    }
+
+    private void transcribe(PendingSegment pending, int segmentSession) {
+        asrEngine.transcribe(pending.wavFile, new AsrEngine.AsrCallback() {
+            @Override
+            public void onSuccess(TranscriptionResult result) {
+                finish(pending, segmentSession, result.getText(), null);
+            }
+
+            @Override
+            public void onError(String error) {
+                finish(pending, segmentSession, null, error);
+            }
+        });
+    }
+
+    private void finish(PendingSegment pending, int segmentSession, String text, String error) {
+        pending.wavFile.delete();
+        synchronized (this) {
+            if (segmentSession != session) {
+                return;
+            }
+            inFlight--;
+            completed.put(pending.sequence, text != null ? text.trim() : null);
+            if (error != null) {
+                Log.w(TAG, "Segment " + pending.sequence + " failed: " + error);
+                mainHandler.post(() -> listener.onUtteranceError(error));
+            }
+            deliverInOrder(segmentSession);
+        }
+        pump();
+    }
+
+    private synchronized void deliverInOrder(int segmentSession) {
+        while (completed.containsKey(nextToDeliver)) {
+            String text = completed.remove(nextToDeliver);
+            nextToDeliver++;
+            if (text != null && !text.isEmpty()) {
+                mainHandler.post(() -> {
+                    if (segmentSession == session) {
+                        listener.onUtteranceText(text);
+                    }
+                });
+            }
+        }
+    }
+
+    private static void writeWav(File file, byte[] pcm) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[] {'R', 'I', 'F', 'F'}).putInt(36 + pcm.length)
+                .put(new byte[] {'W', 'A', 'V', 'E', 'f', 'm', 't', ' '})
+                .putInt(16).putShort((short) 1).putShort((short) 1)
+                .putInt(SAMPLE_RATE).putInt(SAMPLE_RATE * 2).putShort((short) 2).putShort((short) 16)
+                .put(new byte[] {'d', 'a', 't', 'a'}).putInt(pcm.length);
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            fos.write(header.array());
+            fos.write(pcm);
+        }
+    }
+}
@@ -8,12 +8,21 @@ import com.opencode.voiceassist.model.TranscriptionResult;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -22,24 +31,135 @@ import okhttp3.WebSocket;
 import okhttp3.WebSocketListener;
 import okio.ByteString;
 
+/**
+ * FunASR WebSocket 客户端
+ * - 小连接池（POOL_SIZE 条长连接），每条连接上可排队 MAX_PIPELINE_DEPTH 个请求
+ * - 每个请求使用唯一的 wav_name / reqid，服务器回包按 wav_name 路由到对应回调；
+ *   没有 wav_name 的回包按该连接上的发送顺序匹配（服务器逐个处理同一连接上的请求）
+ * - 连接在请求之间保持，不再每次识别后断开
+ */
 public class FunAsrWebSocketManager implements AsrEngine {
     private static final String TAG = "FunAsrWebSocketManager";
-    
+
+    private static final int POOL_SIZE = 2;
+    private static final int MAX_PIPELINE_DEPTH = 2;
+    private static final long CONNECT_TIMEOUT_MS = 3000;
+    private static final long REQUEST_TIMEOUT_MS = 30000;
+
     private final Context context;
     private String serverHost;
     private int serverPort;
     private String mode;
     private final OkHttpClient httpClient;
-    
-    private WebSocket webSocket;
-    private AsrCallback currentCallback;
-    private File currentAudioFile;
-    private long startTime;
-    private final AtomicBoolean isConnected = new AtomicBoolean(false);
-    private final AtomicBoolean isProcessing = new AtomicBoolean(false);
-    
-    private ByteArrayOutputStream streamingBuffer;
-    
+
+    private final List<Connection> connections = new ArrayList<>();
+    private final AtomicInteger requestCounter = new AtomicInteger();
+    private final ExecutorService sendExecutor = Executors.newCachedThreadPool();
+    private final ScheduledExecutorService timeoutExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    private static class PendingRequest {
+        final String wavName;
+        final AsrCallback callback;
+        final double audioLengthSeconds;
+        final long startTime = System.currentTimeMillis();
+        final AtomicBoolean done = new AtomicBoolean(false);
+        ScheduledFuture<?> timeout;
+
+        PendingRequest(String wavName, AsrCallback callback, double audioLengthSeconds) {
+            this.wavName = wavName;
+            this.callback = callback;
+            this.audioLengthSeconds = audioLengthSeconds;
+        }
+    }
+
+    /**
+     * 一条 WebSocket 连接及其上按发送顺序排列的未完成请求
+     */
+    private class Connection extends WebSocketListener {
+        final WebSocket webSocket;
+        final CountDownLatch opened = new CountDownLatch(1);
+        final ArrayDeque<PendingRequest> outstanding = new ArrayDeque<>();
+        // Slots handed out by acquireConnection whose request is not on the wire yet
+        int reserved = 0;
+        volatile boolean open = false;
+        volatile boolean closed = false;
+
+        Connection(String url) {
+            Request request = new Request.Builder()
+                    .url(url)
+                    .addHeader("Sec-WebSocket-Protocol", "binary")
+                    .build();
+            webSocket = httpClient.newWebSocket(request, this);
+        }
+
+        boolean awaitOpen() throws InterruptedException {
+            return opened.await(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS) && open;
+        }
+
+        synchronized int load() {
+            return outstanding.size() + reserved;
+        }
+
+        synchronized void unreserve() {
+            reserved--;
+        }
+
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            Log.d(TAG, "WebSocket connection opened");
+            open = true;
+            opened.countDown();
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, String text) {
+            Log.d(TAG, "Received text message: " + text);
+            handleTextMessage(this, text);
+        }
+
+        @Override
+        public void onMessage(WebSocket webSocket, ByteString bytes) {
+            Log.d(TAG, "Received binary message: " + bytes.size() + " bytes");
+        }
+
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+            Log.e(TAG, "WebSocket connection failed", t);
+            if (response != null) {
+                Log.d(TAG, "Response code: " + response.code() + ", message: " + response.message());
+            }
+            shutdown("WebSocket连接失败: " + t.getMessage());
+        }
+
+        @Override
+        public void onClosed(WebSocket webSocket, int code, String reason) {
+            Log.d(TAG, "WebSocket connection closed: " + code + " - " + reason);
+            shutdown("WebSocket连接已关闭");
+        }
+
+        /**
+         * 关闭连接，未完成的请求全部以 error 结束
+         */
+        void shutdown(String error) {
+            open = false;
+            closed = true;
+            opened.countDown();
+            synchronized (connections) {
+                connections.remove(this);
+                connections.notifyAll();
+            }
+            List<PendingRequest> failed;
+            synchronized (this) {
+                failed = new ArrayList<>(outstanding);
+                outstanding.clear();
+            }
+            webSocket.cancel();
+            for (PendingRequest pending : failed) {
+                complete(pending, null, error);
+            }
+        }
+    }
+
     public FunAsrWebSocketManager(Context context, String host, int port, String mode) {
         this.context = context;
         if (host != null && host.contains(":")) {
@@ -51,11 +171,12 @@ public class FunAsrWebSocketManager implements AsrEngine {
         this.mode = mode;
         this.httpClient = new OkHttpClient.Builder()
                 .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(60, TimeUnit.SECONDS)
+                .readTimeout(0, TimeUnit.MILLISECONDS)
                 .writeTimeout(30, TimeUnit.SECONDS)
+                .pingInterval(20, TimeUnit.SECONDS)
                 .build();
     }
-    
+
     public void updateSettings(String host, int port, String mode) {
         if (host != null && host.contains(":")) {
             this.serverHost = host.split(":")[0];
@@ -66,329 +187,273 @@ public class FunAsrWebSocketManager implements AsrEngine {
         this.mode = mode;
         disconnect();
     }
-    
+
     public void disconnect() {
-        if (webSocket != null) {
-            webSocket.close(1000, "Normal closure");
-            webSocket = null;
+        List<Connection> snapshot;
+        synchronized (connections) {
+            snapshot = new ArrayList<>(connections);
+            connections.clear();
         }
-        isConnected.set(false);
-    }
-    
-    private void connectIfNeeded(AsrCallback callback) {
-        if (webSocket != null && isConnected.get()) {
-            return;
+        for (Connection connection : snapshot) {
+            connection.webSocket.close(1000, "Normal closure");
+            connection.shutdown("连接已断开");
         }
-        
-        disconnect();
-        
-        String wsUrl = "ws://" + serverHost + ":" + serverPort;
-        Log.d(TAG, "Connecting to FunASR WebSocket: " + wsUrl);
-        
-        Request request = new Request.Builder()
-                .url(wsUrl)
-                .addHeader("Sec-WebSocket-Protocol", "binary")
-                .build();
-        
-        webSocket = httpClient.newWebSocket(request, new WebSocketListener() {
-            @Override
-            public void onOpen(WebSocket webSocket, Response response) {
-                Log.d(TAG, "WebSocket connection opened");
-                isConnected.set(true);
-            }
-            
-            @Override
-            public void onMessage(WebSocket webSocket, String text) {
-                Log.d(TAG, "Received text message: " + text);
-                handleTextMessage(text);
-            }
-            
-            @Override
-            public void onMessage(WebSocket webSocket, ByteString bytes) {
-                Log.d(TAG, "Received binary message: " + bytes.size() + " bytes");
-            }
-            
-            @Override
-            public void onFailure(WebSocket webSocket, Throwable t, Response response) {
-                Log.e(TAG, "WebSocket connection failed", t);
-                if (response != null) {
-                    Log.d(TAG, "Response code: " + response.code() + ", message: " + response.message());
+        signalCapacity();
+    }
+
+    /**
+     * 选择负载最低的已有连接并占用一个排队位置；已有连接都在忙且池未满时新建连接，
+     * 所有连接都已排满 MAX_PIPELINE_DEPTH 个请求时等待有请求完成
+     */
+    private Connection acquireConnection() throws InterruptedException {
+        synchronized (connections) {
+            while (true) {
+                Connection best = null;
+                for (Connection connection : connections) {
+                    if (!connection.closed && (best == null || connection.load() < best.load())) {
+                        best = connection;
+                    }
                 }
-                isConnected.set(false);
-                if (currentCallback != null && isProcessing.get()) {
-                    currentCallback.onError("WebSocket连接失败: " + t.getMessage());
-                    resetState();
+                if (best == null || (best.load() > 0 && connections.size() < POOL_SIZE)) {
+                    best = openConnection();
                 }
+                synchronized (best) {
+                    if (best.load() < MAX_PIPELINE_DEPTH) {
+                        best.reserved++;
+                        return best;
+                    }
+                }
+                connections.wait();
             }
-            
-            @Override
-            public void onClosed(WebSocket webSocket, int code, String reason) {
-                Log.d(TAG, "WebSocket connection closed: " + code + " - " + reason);
-                isConnected.set(false);
-            }
-        });
-        
-        try {
-            Thread.sleep(500);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
         }
     }
-    
+
+    private Connection openConnection() {
+        synchronized (connections) {
+            String wsUrl = "ws://" + serverHost + ":" + serverPort;
+            Log.d(TAG, "Connecting to FunASR WebSocket: " + wsUrl + " (pool " + (connections.size() + 1) + ")");
+            Connection connection = new Connection(wsUrl);
+            connections.add(connection);
+            return connection;
+        }
+    }
+
+    /**
+     * 有排队位置释放（请求完成或连接关闭）时唤醒等待中的 submit
+     */
+    private void signalCapacity() {
+        synchronized (connections) {
+            connections.notifyAll();
+        }
+    }
+
     @Override
     public void transcribe(File audioFile, AsrCallback callback) {
         if (audioFile == null || !audioFile.exists()) {
             callback.onError("音频文件不存在");
             return;
         }
-        
-        if (isProcessing.get()) {
-            callback.onError("已有转录正在进行");
-            return;
-        }
-        
-        this.currentAudioFile = audioFile;
-        this.currentCallback = callback;
-        this.startTime = System.currentTimeMillis();
-        isProcessing.set(true);
-        
-        new Thread(() -> {
-            try {
-                connectIfNeeded(callback);
-                
-                for (int i = 0; i < 10; i++) {
-                    if (isConnected.get()) break;
-                    Thread.sleep(100);
-                }
-                
-                if (!isConnected.get()) {
-                    if (isProcessing.get()) {
-                        callback.onError("WebSocket连接失败，请检查服务器地址和端口");
-                        resetState();
-                    }
-                    return;
-                }
-                
-                String testMode = "offline";
-                JSONObject initJson = new JSONObject();
-                try {
-                    initJson.put("reqid", "app_" + System.currentTimeMillis());
-                    initJson.put("mode", testMode);
-                    initJson.put("wav_name", audioFile.getName());
-                    initJson.put("is_speaking", true);
-                } catch (JSONException e) {
-                    Log.e(TAG, "Failed to create initial JSON", e);
-                }
-                
-                webSocket.send(initJson.toString());
-                Log.d(TAG, "Sent initial JSON (offline mode): " + initJson.toString());
-                
-                byte[] pcmData = extractPcmFromWav(audioFile);
-                if (pcmData == null || pcmData.length == 0) {
-                    if (isProcessing.get()) {
-                        callback.onError("无法从WAV文件中提取PCM数据");
-                        resetState();
-                    }
-                    return;
-                }
-                
-                webSocket.send(ByteString.of(pcmData));
-                Log.d(TAG, "Sent audio data: " + pcmData.length + " bytes");
-                
-                JSONObject endJson = new JSONObject();
-                try {
-                    endJson.put("is_speaking", false);
-                } catch (JSONException e) {
-                    Log.e(TAG, "Failed to create end JSON", e);
-                }
-                webSocket.send(endJson.toString());
-                Log.d(TAG, "Sent end JSON: " + endJson.toString());
-                
-                int timeoutMs = 30000;
-                long waitStart = System.currentTimeMillis();
-                while (isProcessing.get() && System.currentTimeMillis() - waitStart < timeoutMs) {
-                    Thread.sleep(100);
-                }
-                
-                if (isProcessing.get()) {
-                    callback.onError("转录超时");
-                    resetState();
-                }
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Transcription failed", e);
-                if (isProcessing.get()) {
-                    callback.onError("转录失败: " + e.getMessage());
-                    resetState();
-                }
+        sendExecutor.execute(() -> {
+            byte[] pcmData = extractPcmFromWav(audioFile);
+            if (pcmData == null || pcmData.length == 0) {
+                callback.onError("无法从WAV文件中提取PCM数据");
+                return;
             }
-        }).start();
+            submit(pcmData, audioFile.getName(), callback);
+        });
     }
-    
+
     @Override
     public void transcribe(byte[] pcmData, AsrCallback callback) {
         if (pcmData == null || pcmData.length == 0) {
             callback.onError("音频数据为空");
             return;
         }
-        
-        if (isProcessing.get()) {
-            callback.onError("已有转录正在进行");
+        sendExecutor.execute(() -> submit(pcmData, "streaming.pcm", callback));
+    }
+
+    private void submit(byte[] pcmData, String name, AsrCallback callback) {
+        String wavName = "app_" + requestCounter.incrementAndGet() + "_" + name;
+        PendingRequest pending = new PendingRequest(wavName, callback, pcmData.length / 32000.0);
+
+        Connection connection;
+        try {
+            connection = acquireConnection();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            complete(pending, null, "转录被取消");
+            return;
+        }
+        try {
+            if (!connection.awaitOpen()) {
+                connection.unreserve();
+                complete(pending, null, "WebSocket连接失败，请检查服务器地址和端口");
+                connection.shutdown("WebSocket连接失败");
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            connection.unreserve();
+            signalCapacity();
+            complete(pending, null, "转录被取消");
             return;
         }
-        
-        this.currentCallback = callback;
-        this.startTime = System.currentTimeMillis();
-        isProcessing.set(true);
-        
-        new Thread(() -> {
-            try {
-                connectIfNeeded(callback);
-                
-                for (int i = 0; i < 10; i++) {
-                    if (isConnected.get()) break;
-                    Thread.sleep(100);
-                }
-                
-                if (!isConnected.get()) {
-                    if (isProcessing.get()) {
-                        callback.onError("WebSocket连接失败");
-                        resetState();
-                    }
-                    return;
-                }
-                
-                String testMode = "offline";
-                JSONObject initJson = new JSONObject();
-                try {
-                    initJson.put("reqid", "app_" + System.currentTimeMillis());
-                    initJson.put("mode", testMode);
-                    initJson.put("wav_name", "streaming.pcm");
-                    initJson.put("is_speaking", true);
-                } catch (JSONException e) {
-                    Log.e(TAG, "Failed to create initial JSON", e);
-                }
-                
-                webSocket.send(initJson.toString());
-                Log.d(TAG, "Sent initial JSON for streaming");
-                
-                webSocket.send(ByteString.of(pcmData));
-                Log.d(TAG, "Sent PCM data: " + pcmData.length + " bytes");
-                
-                JSONObject endJson = new JSONObject();
-                try {
-                    endJson.put("is_speaking", false);
-                } catch (JSONException e) {
-                    Log.e(TAG, "Failed to create end JSON", e);
-                }
-                webSocket.send(endJson.toString());
-                Log.d(TAG, "Sent end JSON");
-                
-                int timeoutMs = 30000;
-                long waitStart = System.currentTimeMillis();
-                while (isProcessing.get() && System.currentTimeMillis() - waitStart < timeoutMs) {
-                    Thread.sleep(100);
-                }
-                
-                if (isProcessing.get()) {
-                    callback.onError("转录超时");
-                    resetState();
-                }
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Transcription failed", e);
-                if (isProcessing.get()) {
-                    callback.onError("转录失败: " + e.getMessage());
-                    resetState();
-                }
+
+        JSONObject initJson = new JSONObject();
+        JSONObject endJson = new JSONObject();
+        try {
+            initJson.put("reqid", wavName);
+            initJson.put("mode", "offline");
+            initJson.put("wav_name", wavName);
+            initJson.put("is_speaking", true);
+            endJson.put("is_speaking", false);
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to create request JSON", e);
+        }
+
+        // The three frames of one request must not interleave with another request on the same socket
+        boolean sent = false;
+        synchronized (connection) {
+            connection.reserved--;
+            if (!connection.closed) {
+                connection.outstanding.addLast(pending);
+                connection.webSocket.send(initJson.toString());
+                connection.webSocket.send(ByteString.of(pcmData));
+                connection.webSocket.send(endJson.toString());
+                sent = true;
+            }
+        }
+        // complete() takes the pool lock, so it must run outside the connection lock
+        if (!sent) {
+            complete(pending, null, "WebSocket连接已关闭");
+            return;
+        }
+        Log.d(TAG, "Sent request " + wavName + ": " + pcmData.length + " bytes");
+
+        pending.timeout = timeoutExecutor.schedule(() -> {
+            if (!pending.done.get()) {
+                Log.w(TAG, "Request timed out: " + wavName);
+                // A lost reply would shift order-based routing, so drop the whole connection
+                connection.shutdown("转录超时");
             }
-        }).start();
+        }, REQUEST_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public int getMaxConcurrentRequests() {
+        return POOL_SIZE * MAX_PIPELINE_DEPTH;
     }
-    
+
     @Override
     public void cancel() {
-        if (isProcessing.get()) {
-            Log.d(TAG, "Cancelling current transcription");
-            if (webSocket != null) {
-                webSocket.close(1000, "Transcription cancelled by user");
-                webSocket = null;
-            }
-            isConnected.set(false);
-            
-            if (currentCallback != null) {
-                AsrCallback callback = currentCallback;
-                currentCallback = null;
-                callback.onError("转录被取消");
+        List<Connection> snapshot;
+        synchronized (connections) {
+            snapshot = new ArrayList<>(connections);
+        }
+        for (Connection connection : snapshot) {
+            if (connection.load() > 0) {
+                Log.d(TAG, "Cancelling outstanding transcriptions");
+                connection.webSocket.close(1000, "Transcription cancelled by user");
+                connection.shutdown("转录被取消");
             }
-            
-            resetState();
         }
     }
-    
+
+    @Override
+    public void warmUp() {
+        sendExecutor.execute(() -> {
+            synchronized (connections) {
+                if (!connections.isEmpty()) {
+                    return;
+                }
+            }
+            openConnection();
+        });
+    }
+
     @Override
     public void release() {
-        cancel();
         disconnect();
-        streamingBuffer = null;
+        sendExecutor.shutdown();
+        timeoutExecutor.shutdownNow();
     }
-    
-    private void handleTextMessage(String text) {
-        if (!isProcessing.get() || currentCallback == null) {
-            Log.d(TAG, "Received message but not processing, ignoring: " + text);
-            return;
-        }
-        
+
+    private void handleTextMessage(Connection connection, String text) {
+        String wavName = null;
+        boolean isFinal;
+        String transcribedText;
         try {
             JSONObject json = new JSONObject(text);
-            boolean isFinal = json.optBoolean("is_final", false);
-            String transcribedText = json.optString("text", "");
+            isFinal = json.optBoolean("is_final", false);
+            transcribedText = json.optString("text", "");
             String responseMode = json.optString("mode", "");
-            
-            Log.d(TAG, "Received FunASR response: is_final=" + isFinal + 
+            wavName = json.optString("wav_name", null);
+
+            Log.d(TAG, "Received FunASR response: wav_name=" + wavName + ", is_final=" + isFinal +
                     ", mode=" + responseMode + ", text=" + transcribedText);
-            
-            boolean shouldTreatAsFinal = isFinal || 
-                    (responseMode.equals("offline") && !transcribedText.isEmpty());
-            
-            if (shouldTreatAsFinal) {
-                long processingTime = System.currentTimeMillis() - startTime;
-                
-                double audioLengthSeconds = 1.0;
-                if (currentAudioFile != null && currentAudioFile.length() > 44) {
-                    audioLengthSeconds = (currentAudioFile.length() - 44) / 32000.0;
-                }
-                
-                double realtimeFactor = processingTime / 1000.0 / audioLengthSeconds;
-                
-                String displayText = transcribedText;
-                if (transcribedText == null || transcribedText.trim().isEmpty()) {
-                    displayText = "...";
-                }
-                
-                TranscriptionResult result = new TranscriptionResult(
-                        displayText, audioLengthSeconds, processingTime, realtimeFactor);
-                
-                currentCallback.onSuccess(result);
-                resetState();
-            } else if (!transcribedText.isEmpty()) {
-                Log.d(TAG, "Intermediate result: " + transcribedText);
-            }
+
+            isFinal = isFinal || (responseMode.equals("offline") && !transcribedText.isEmpty());
         } catch (JSONException e) {
             Log.e(TAG, "Failed to parse FunASR JSON response", e);
-            if (!text.trim().isEmpty() && !text.startsWith("{") && !text.startsWith("[")) {
-                long processingTime = System.currentTimeMillis() - startTime;
-                double audioLengthSeconds = 1.0;
-                double realtimeFactor = processingTime / 1000.0 / audioLengthSeconds;
-                
-                TranscriptionResult result = new TranscriptionResult(
-                        text.trim(), audioLengthSeconds, processingTime, realtimeFactor);
-                
-                currentCallback.onSuccess(result);
-                resetState();
+            if (text.trim().isEmpty() || text.startsWith("{") || text.startsWith("[")) {
+                return;
+            }
+            isFinal = true;
+            transcribedText = text.trim();
+        }
+
+        if (!isFinal) {
+            if (!transcribedText.isEmpty()) {
+                Log.d(TAG, "Intermediate result: " + transcribedText);
             }
+            return;
         }
+
+        PendingRequest pending = null;
+        synchronized (connection) {
+            if (wavName != null) {
+                Iterator<PendingRequest> it = connection.outstanding.iterator();
+                while (it.hasNext()) {
+                    PendingRequest candidate = it.next();
+                    if (candidate.wavName.equals(wavName)) {
+                        pending = candidate;
+                        it.remove();
+                        break;
+                    }
+                }
+            }
+            if (pending == null) {
+                // Older servers do not echo wav_name; replies come back in send order
+                pending = connection.outstanding.pollFirst();
+            }
+        }
+        if (pending == null) {
+            Log.d(TAG, "Received message but no request is waiting, ignoring: " + text);
+            return;
+        }
+
+        long processingTime = System.currentTimeMillis() - pending.startTime;
+        double audioLengthSeconds = pending.audioLengthSeconds > 0 ? pending.audioLengthSeconds : 1.0;
+        double realtimeFactor = processingTime / 1000.0 / audioLengthSeconds;
+        String displayText = transcribedText.trim().isEmpty() ? "..." : transcribedText;
+        complete(pending, new TranscriptionResult(displayText, audioLengthSeconds, processingTime, realtimeFactor), null);
     }
-    
+
+    private void complete(PendingRequest pending, TranscriptionResult result, String error) {
+        if (!pending.done.compareAndSet(false, true)) {
+            return;
+        }
+        if (pending.timeout != null) {
+            pending.timeout.cancel(false);
+        }
+        signalCapacity();
+        if (result != null) {
+            pending.callback.onSuccess(result);
+        } else {
+            pending.callback.onError(error);
+        }
+    }
+
     private byte[] extractPcmFromWav(File wavFile) {
         try (FileInputStream fis = new FileInputStream(wavFile)) {
             byte[] header = new byte[44];
@@ -397,17 +462,17 @@ public class FunAsrWebSocketManager implements AsrEngine {
                 Log.e(TAG, "WAV file too small");
                 return null;
             }
-            
+
             if (header[0] != 'R' || header[1] != 'I' || header[2] != 'F' || header[3] != 'F') {
                 Log.e(TAG, "Not a valid WAV file (missing RIFF header)");
             }
-            
+
             long pcmSize = wavFile.length() - 44;
             if (pcmSize > Integer.MAX_VALUE) {
                 Log.e(TAG, "WAV file too large");
                 return null;
             }
-            
+
             byte[] pcmData = new byte[(int) pcmSize];
             int totalRead = 0;
             while (totalRead < pcmData.length) {
@@ -415,7 +480,7 @@ public class FunAsrWebSocketManager implements AsrEngine {
                 if (read == -1) break;
                 totalRead += read;
             }
-            
+
             Log.d(TAG, "Extracted " + totalRead + " bytes of PCM data from WAV file");
             return pcmData;
         } catch (IOException e) {
@@ -423,12 +488,4 @@ public class FunAsrWebSocketManager implements AsrEngine {
             return null;
         }
     }
-    
-    private void resetState() {
-        isProcessing.set(false);
-        currentCallback = null;
-        currentAudioFile = null;
-        disconnect();
-        Log.d(TAG, "State reset and WebSocket disconnected");
-    }
-}
\ No newline at end of file
+}
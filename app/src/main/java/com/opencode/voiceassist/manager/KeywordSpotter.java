@@ -0,0 +1,320 @@
+package com.opencode.voiceassist.manager;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 语音命令关键词识别（模板匹配）
+ * - 固定命令词表：发送 / 取消 / 换行
+ * - 模板来自用户自己的录音：完整 ASR 识别结果恰好是命令词时，把该段语音的 MFCC 特征保存为模板
+ * - 每个命令积累到 MIN_TEMPLATES 个模板后，短语音先做 DTW 匹配，命中则直接执行命令、不再请求 ASR
+ */
+public class KeywordSpotter {
+    private static final String TAG = "KeywordSpotter";
+
+    private static final String TEMPLATE_FILE = "kws_templates.bin";
+    private static final int FILE_VERSION = 1;
+
+    private static final int MAX_TEMPLATES_PER_COMMAND = 5;
+    private static final int MIN_TEMPLATES = 2;
+    // Accept when the best distance is within this factor of the spread between a command's own templates
+    private static final float ACCEPT_FACTOR = 1.3f;
+    // ...and clearly better than the best competing command
+    private static final float MARGIN_RATIO = 0.8f;
+    // Takes whose ASR result has not come back yet; older entries belong to abandoned takes
+    private static final int MAX_PENDING_TAKES = 8;
+
+    public enum Command {
+        SEND, CANCEL, NEW_LINE
+    }
+
+    private static final Map<String, Command> VOCABULARY = new HashMap<>();
+
+    static {
+        VOCABULARY.put("发送", Command.SEND);
+        VOCABULARY.put("提交", Command.SEND);
+        VOCABULARY.put("send", Command.SEND);
+        VOCABULARY.put("取消", Command.CANCEL);
+        VOCABULARY.put("清空", Command.CANCEL);
+        VOCABULARY.put("cancel", Command.CANCEL);
+        VOCABULARY.put("换行", Command.NEW_LINE);
+        VOCABULARY.put("newline", Command.NEW_LINE);
+    }
+
+    private final File templateFile;
+    private final ExecutorService saveExecutor = Executors.newSingleThreadExecutor();
+    private final Map<Command, List<float[][]>> templates = new EnumMap<>(Command.class);
+    private final Map<Command, Float> spreads = new EnumMap<>(Command.class);
+
+    /**
+     * 一次录音的特征与本地匹配结果，保留到该次录音的 ASR 结果决定是否学习
+     */
+    private static class Utterance {
+        final float[][] features;
+        Command match;
+
+        Utterance(float[][] features, Command match) {
+            this.features = features;
+            this.match = match;
+        }
+    }
+
+    // Set by onUtterance on the capture thread and claimed right after for the take that flushed it
+    private Utterance flushed;
+    // Take sequence -> utterance, oldest first
+    private final LinkedHashMap<Integer, Utterance> utterances = new LinkedHashMap<Integer, Utterance>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Utterance> eldest) {
+            return size() > MAX_PENDING_TAKES;
+        }
+    };
+
+    public KeywordSpotter(Context context) {
+        this.templateFile = new File(context.getFilesDir(), TEMPLATE_FILE);
+        for (Command command : Command.values()) {
+            templates.put(command, new ArrayList<>());
+        }
+        load();
+    }
+
+    /**
+     * 文本是否为命令词（忽略大小写、空格和标点）
+     */
+    public static Command parseCommand(String text) {
+        if (text == null) {
+            return null;
+        }
+        String normalized = text.toLowerCase(Locale.ROOT).replaceAll("[\\s\\p{Punct}，。！？、；：]", "");
+        return VOCABULARY.get(normalized);
+    }
+
+    /**
+     * 录音线程在 flush 时调用；features 为已裁剪静音的 MFCC 序列，null 表示语音过长或没有语音
+     */
+    synchronized void onUtterance(float[][] features) {
+        flushed = features != null ? new Utterance(features, match(features)) : null;
+    }
+
+    /**
+     * 录音线程在处理器 flush 之后调用，把刚算出的特征归到 sequence 这次录音
+     */
+    public synchronized void claimUtterance(int sequence) {
+        if (flushed != null) {
+            utterances.put(sequence, flushed);
+            flushed = null;
+        }
+    }
+
+    /**
+     * 取出 sequence 这次录音的匹配结果（只能取一次）
+     */
+    public synchronized Command consumeMatch(int sequence) {
+        Utterance utterance = utterances.get(sequence);
+        if (utterance == null || utterance.match == null) {
+            return null;
+        }
+        utterances.remove(sequence);
+        return utterance.match;
+    }
+
+    /**
+     * 用 sequence 这次录音完整 ASR 的识别结果学习模板
+     * @return 识别结果是命令词时返回对应命令
+     */
+    public synchronized Command learn(int sequence, String transcript) {
+        Command command = parseCommand(transcript);
+        Utterance utterance = utterances.remove(sequence);
+        float[][] features = utterance != null ? utterance.features : null;
+        if (command == null || features == null) {
+            return command;
+        }
+        List<float[][]> list = templates.get(command);
+        if (list.size() >= MAX_TEMPLATES_PER_COMMAND) {
+            list.remove(0);
+        }
+        list.add(features);
+        spreads.remove(command);
+        Log.d(TAG, "Learned template for " + command + " (" + list.size() + " total)");
+        save();
+        return command;
+    }
+
+    public synchronized void clearTemplates() {
+        for (List<float[][]> list : templates.values()) {
+            list.clear();
+        }
+        spreads.clear();
+        flushed = null;
+        utterances.clear();
+        saveExecutor.execute(templateFile::delete);
+    }
+
+    public void release() {
+        saveExecutor.shutdown();
+    }
+
+    private Command match(float[][] features) {
+        long start = System.nanoTime();
+        Command best = null;
+        float bestDistance = Float.MAX_VALUE;
+        float runnerUp = Float.MAX_VALUE;
+        for (Map.Entry<Command, List<float[][]>> entry : templates.entrySet()) {
+            List<float[][]> list = entry.getValue();
+            if (list.size() < MIN_TEMPLATES) {
+                continue;
+            }
+            float distance = Float.MAX_VALUE;
+            for (float[][] template : list) {
+                distance = Math.min(distance, dtw(features, template));
+            }
+            Float spread = spreads.get(entry.getKey());
+            if (spread == null) {
+                spread = spread(list);
+                spreads.put(entry.getKey(), spread);
+            }
+            if (distance > ACCEPT_FACTOR * spread) {
+                continue;
+            }
+            if (distance < bestDistance) {
+                runnerUp = bestDistance;
+                bestDistance = distance;
+                best = entry.getKey();
+            } else if (distance < runnerUp) {
+                runnerUp = distance;
+            }
+        }
+        if (best != null && runnerUp != Float.MAX_VALUE && bestDistance > MARGIN_RATIO * runnerUp) {
+            best = null;
+        }
+        Log.d(TAG, "Match " + best + " distance=" + bestDistance + " in "
+                + (System.nanoTime() - start) / 1000000 + "ms");
+        return best;
+    }
+
+    /**
+     * 同一命令模板之间的平均 DTW 距离，作为该用户、该命令的接受阈值基准
+     */
+    private static float spread(List<float[][]> list) {
+        float total = 0;
+        int pairs = 0;
+        for (int i = 0; i < list.size(); i++) {
+            for (int j = i + 1; j < list.size(); j++) {
+                total += dtw(list.get(i), list.get(j));
+                pairs++;
+            }
+        }
+        return pairs > 0 ? total / pairs : 0;
+    }
+
+    /**
+     * 欧氏距离 DTW，按路径长度归一化；只保留两行代价
+     */
+    static float dtw(float[][] a, float[][] b) {
+        int n = a.length;
+        int m = b.length;
+        float[] previous = new float[m + 1];
+        float[] current = new float[m + 1];
+        Arrays.fill(previous, Float.MAX_VALUE);
+        previous[0] = 0;
+        for (int i = 1; i <= n; i++) {
+            current[0] = Float.MAX_VALUE;
+            for (int j = 1; j <= m; j++) {
+                float cost = distance(a[i - 1], b[j - 1]);
+                float best = Math.min(previous[j - 1], Math.min(previous[j], current[j - 1]));
+                current[j] = best == Float.MAX_VALUE ? Float.MAX_VALUE : best + cost;
+            }
+            float[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[m] / (n + m);
+    }
+
+    private static float distance(float[] x, float[] y) {
+        float sum = 0;
+        for (int k = 0; k < x.length; k++) {
+            float d = x[k] - y[k];
+            sum += d * d;
+        }
+        return (float) Math.sqrt(sum);
+    }
+
+    private void load() {
+        if (!templateFile.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(templateFile)))) {
+            if (in.readInt() != FILE_VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            for (int t = 0; t < count; t++) {
+                Command command = Command.values()[in.readInt()];
+                int frames = in.readInt();
+                int dims = in.readInt();
+                float[][] features = new float[frames][dims];
+                for (int i = 0; i < frames; i++) {
+                    for (int k = 0; k < dims; k++) {
+                        features[i][k] = in.readFloat();
+                    }
+                }
+                templates.get(command).add(features);
+            }
+            Log.d(TAG, "Loaded " + count + " keyword templates");
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Discarding unreadable keyword templates: " + e.getMessage());
+            for (List<float[][]> list : templates.values()) {
+                list.clear();
+            }
+        }
+    }
+
+    private void save() {
+        List<Command> commands = new ArrayList<>();
+        List<float[][]> snapshot = new ArrayList<>();
+        for (Map.Entry<Command, List<float[][]>> entry : templates.entrySet()) {
+            for (float[][] features : entry.getValue()) {
+                commands.add(entry.getKey());
+                snapshot.add(features);
+            }
+        }
+        saveExecutor.execute(() -> {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(templateFile)))) {
+                out.writeInt(FILE_VERSION);
+                out.writeInt(snapshot.size());
+                for (int t = 0; t < snapshot.size(); t++) {
+                    float[][] features = snapshot.get(t);
+                    out.writeInt(commands.get(t).ordinal());
+                    out.writeInt(features.length);
+                    out.writeInt(features.length > 0 ? features[0].length : 0);
+                    for (float[] frame : features) {
+                        for (float value : frame) {
+                            out.writeFloat(value);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to save keyword templates", e);
+            }
+        });
+    }
+}
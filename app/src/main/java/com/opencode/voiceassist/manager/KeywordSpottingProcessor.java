@@ -0,0 +1,263 @@
+package com.opencode.voiceassist.manager;
+
+import java.util.Arrays;
+
+/**
+ * 关键词识别处理器（装饰已有的 AudioProcessor）
+ * - 录音过程中逐帧计算 MFCC（25ms 窗 / 10ms 步长），松开按钮时特征已经就绪
+ * - 超过 MAX_FRAMES 的语音不可能是命令，停止计算
+ * - flush 时裁剪首尾静音并交给 KeywordSpotter 匹配，然后照常转交内部处理器
+ */
+public class KeywordSpottingProcessor implements AudioProcessor {
+    private static final String TAG = "KeywordSpottingProcessor";
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME_LENGTH = 400;
+    private static final int FRAME_SHIFT = 160;
+    private static final int FFT_SIZE = 512;
+    private static final int MEL_BANDS = 24;
+    private static final int CEPSTRA = 12;
+    private static final float PRE_EMPHASIS = 0.97f;
+
+    // 2s of audio; longer recordings are dictation, not commands
+    private static final int MAX_FRAMES = 200;
+    // Voiced span accepted as a command: 0.2s - 1.5s
+    private static final int MIN_VOICED_FRAMES = 20;
+    private static final int MAX_VOICED_FRAMES = 150;
+    // Natural-log energy range a real utterance must span above the quietest frame
+    private static final float MIN_DYNAMIC_RANGE = 3.0f;
+
+    private static final float[] WINDOW = new float[FRAME_LENGTH];
+    private static final float[][] MEL_FILTERS = buildMelFilters();
+    private static final float[][] DCT = buildDct();
+
+    static {
+        for (int i = 0; i < FRAME_LENGTH; i++) {
+            WINDOW[i] = (float) (0.54 - 0.46 * Math.cos(2 * Math.PI * i / (FRAME_LENGTH - 1)));
+        }
+    }
+
+    private final AudioProcessor inner;
+    private final KeywordSpotter spotter;
+
+    private final float[] samples = new float[FRAME_LENGTH];
+    private int sampleCount = 0;
+    private float previousSample = 0;
+    private final float[][] features = new float[MAX_FRAMES][];
+    private final float[] energies = new float[MAX_FRAMES];
+    private int frameCount = 0;
+    private boolean tooLong = false;
+
+    private final float[] real = new float[FFT_SIZE];
+    private final float[] imag = new float[FFT_SIZE];
+
+    public KeywordSpottingProcessor(AudioProcessor inner, KeywordSpotter spotter) {
+        this.inner = inner;
+        this.spotter = spotter;
+    }
+
+    @Override
+    public void setCallback(AudioProcessorCallback callback) {
+        inner.setCallback(callback);
+    }
+
+    @Override
+    public void processAudio(byte[] pcmData) {
+        if (!tooLong) {
+            for (int i = 0; i + 1 < pcmData.length; i += 2) {
+                float sample = (short) ((pcmData[i] & 0xff) | (pcmData[i + 1] << 8)) / 32768f;
+                samples[sampleCount++] = sample - PRE_EMPHASIS * previousSample;
+                previousSample = sample;
+                if (sampleCount == FRAME_LENGTH) {
+                    if (frameCount == MAX_FRAMES) {
+                        tooLong = true;
+                        break;
+                    }
+                    computeFrame();
+                    System.arraycopy(samples, FRAME_SHIFT, samples, 0, FRAME_LENGTH - FRAME_SHIFT);
+                    sampleCount = FRAME_LENGTH - FRAME_SHIFT;
+                }
+            }
+        }
+        inner.processAudio(pcmData);
+    }
+
+    @Override
+    public void flush() {
+        spotter.onUtterance(tooLong ? null : trimSilence());
+        reset();
+        inner.flush();
+    }
+
+    @Override
+    public void release() {
+        inner.release();
+    }
+
+    @Override
+    public String getName() {
+        return inner.getName() + "+KWS";
+    }
+
+    private void reset() {
+        sampleCount = 0;
+        previousSample = 0;
+        frameCount = 0;
+        tooLong = false;
+    }
+
+    private float[][] trimSilence() {
+        if (frameCount < MIN_VOICED_FRAMES) {
+            return null;
+        }
+        float floor = Float.MAX_VALUE;
+        float peak = -Float.MAX_VALUE;
+        for (int i = 0; i < frameCount; i++) {
+            floor = Math.min(floor, energies[i]);
+            peak = Math.max(peak, energies[i]);
+        }
+        if (peak - floor < MIN_DYNAMIC_RANGE) {
+            return null;
+        }
+        float threshold = floor + 0.3f * (peak - floor);
+        int first = 0;
+        while (energies[first] < threshold) first++;
+        int last = frameCount - 1;
+        while (energies[last] < threshold) last--;
+        int length = last - first + 1;
+        if (length < MIN_VOICED_FRAMES || length > MAX_VOICED_FRAMES) {
+            return null;
+        }
+
+        // Cepstral mean normalisation removes the microphone/channel offset
+        float[] mean = new float[CEPSTRA];
+        for (int i = first; i <= last; i++) {
+            for (int k = 0; k < CEPSTRA; k++) {
+                mean[k] += features[i][k];
+            }
+        }
+        float[][] result = new float[length][CEPSTRA];
+        for (int i = 0; i < length; i++) {
+            for (int k = 0; k < CEPSTRA; k++) {
+                result[i][k] = features[first + i][k] - mean[k] / length;
+            }
+        }
+        return result;
+    }
+
+    private void computeFrame() {
+        Arrays.fill(imag, 0);
+        float energy = 0;
+        for (int i = 0; i < FFT_SIZE; i++) {
+            real[i] = i < FRAME_LENGTH ? samples[i] * WINDOW[i] : 0;
+            energy += real[i] * real[i];
+        }
+        fft(real, imag);
+
+        float[] logMel = new float[MEL_BANDS];
+        for (int m = 0; m < MEL_BANDS; m++) {
+            float sum = 0;
+            float[] filter = MEL_FILTERS[m];
+            for (int k = 0; k < filter.length; k++) {
+                if (filter[k] != 0) {
+                    sum += filter[k] * (real[k] * real[k] + imag[k] * imag[k]);
+                }
+            }
+            logMel[m] = (float) Math.log(sum + 1e-10);
+        }
+
+        float[] cepstra = new float[CEPSTRA];
+        for (int c = 0; c < CEPSTRA; c++) {
+            float sum = 0;
+            for (int m = 0; m < MEL_BANDS; m++) {
+                sum += DCT[c][m] * logMel[m];
+            }
+            cepstra[c] = sum;
+        }
+        features[frameCount] = cepstra;
+        energies[frameCount] = (float) Math.log(energy + 1e-10);
+        frameCount++;
+    }
+
+    /**
+     * 原地 radix-2 FFT
+     */
+    private static void fft(float[] re, float[] im) {
+        int n = re.length;
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1) {
+                j ^= bit;
+            }
+            j ^= bit;
+            if (i < j) {
+                float t = re[i]; re[i] = re[j]; re[j] = t;
+                t = im[i]; im[i] = im[j]; im[j] = t;
+            }
+        }
+        for (int len = 2; len <= n; len <<= 1) {
+            double angle = -2 * Math.PI / len;
+            float wRe = (float) Math.cos(angle);
+            float wIm = (float) Math.sin(angle);
+            for (int i = 0; i < n; i += len) {
+                float curRe = 1;
+                float curIm = 0;
+                for (int j = 0; j < len / 2; j++) {
+                    int a = i + j;
+                    int b = a + len / 2;
+                    float vRe = re[b] * curRe - im[b] * curIm;
+                    float vIm = re[b] * curIm + im[b] * curRe;
+                    re[b] = re[a] - vRe;
+                    im[b] = im[a] - vIm;
+                    re[a] += vRe;
+                    im[a] += vIm;
+                    float nextRe = curRe * wRe - curIm * wIm;
+                    curIm = curRe * wIm + curIm * wRe;
+                    curRe = nextRe;
+                }
+            }
+        }
+    }
+
+    private static float[][] buildMelFilters() {
+        int bins = FFT_SIZE / 2 + 1;
+        double maxMel = toMel(SAMPLE_RATE / 2.0);
+        double[] centers = new double[MEL_BANDS + 2];
+        for (int i = 0; i < centers.length; i++) {
+            centers[i] = fromMel(maxMel * i / (MEL_BANDS + 1)) * FFT_SIZE / SAMPLE_RATE;
+        }
+        float[][] filters = new float[MEL_BANDS][bins];
+        for (int m = 0; m < MEL_BANDS; m++) {
+            for (int k = 0; k < bins; k++) {
+                double left = centers[m];
+                double center = centers[m + 1];
+                double right = centers[m + 2];
+                if (k > left && k <= center) {
+                    filters[m][k] = (float) ((k - left) / (center - left));
+                } else if (k > center && k < right) {
+                    filters[m][k] = (float) ((right - k) / (right - center));
+                }
+            }
+        }
+        return filters;
+    }
+
+    private static float[][] buildDct() {
+        // c0 (overall loudness) is skipped; energy is tracked separately for endpointing
+        float[][] dct = new float[CEPSTRA][MEL_BANDS];
+        for (int c = 0; c < CEPSTRA; c++) {
+            for (int m = 0; m < MEL_BANDS; m++) {
+                dct[c][m] = (float) Math.cos(Math.PI * (c + 1) * (m + 0.5) / MEL_BANDS);
+            }
+        }
+        return dct;
+    }
+
+    private static double toMel(double hz) {
+        return 2595 * Math.log10(1 + hz / 700);
+    }
+
+    private static double fromMel(double mel) {
+        return 700 * (Math.pow(10, mel / 2595) - 1);
+    }
+}
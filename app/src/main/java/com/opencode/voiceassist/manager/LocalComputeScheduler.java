@@ -0,0 +1,153 @@
+package com.opencode.voiceassist.manager;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.whispercppdemo.whisper.CpuInfo;
+import com.whispercppdemo.whisper.WhisperCpuConfig;
+
+/**
+ * 端侧识别的温控/电量调度
+ * - 根据系统温控状态、温度余量、省电模式和电量决定压力等级，每次转录前评估（结果缓存几秒）
+ * - 中等压力：线程数降到大核数（2-4），避免全核满载导致持续降频；主模型是 base 时改用 tiny 模型
+ * - 严重压力、低电量未充电，或近期本地实时率明显变差：不跑本地模型，交给服务端
+ * 目标是一整天的识别速度稳定，而不是开头快、后面越来越慢
+ */
+public class LocalComputeScheduler {
+    private static final String TAG = "LocalComputeScheduler";
+
+    public enum Level {
+        NORMAL, MODERATE, SEVERE
+    }
+
+    private static final long EVALUATE_INTERVAL_MS = 5000;
+    // getThermalHeadroom: 1.0 = throttling starts; forecast 10s ahead
+    private static final float HEADROOM_MODERATE = 0.75f;
+    private static final float HEADROOM_SEVERE = 0.95f;
+    private static final int LOW_BATTERY_PERCENT = 20;
+    private static final int CRITICAL_BATTERY_PERCENT = 10;
+    private static final int MIN_THREADS = 2;
+    private static final int MAX_THROTTLED_THREADS = 4;
+    // Local runs slower than real time mean the SoC is already throttled; the network wins
+    private static final double MAX_LOCAL_RTF = 1.0;
+    private static final double RTF_SMOOTHING = 0.3;
+
+    private final Context context;
+    private final PowerManager powerManager;
+
+    private Level level = Level.NORMAL;
+    private long lastEvaluated = 0;
+    private double rtfAverage = -1;
+    private int throttledThreads = -1;
+
+    public LocalComputeScheduler(Context context) {
+        this.context = context.getApplicationContext();
+        this.powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+    }
+
+    /**
+     * 转录前调用：本地模型值得运行时返回 true，并按当前压力设置 whisper 线程上限
+     */
+    public synchronized boolean allowLocal() {
+        Level current = evaluate();
+        if (current == Level.SEVERE) {
+            return false;
+        }
+        if (rtfAverage > MAX_LOCAL_RTF) {
+            Log.d(TAG, "Recent local RTF " + String.format("%.2f", rtfAverage) + ", preferring network");
+            // Decay so local gets retried once the device has cooled down
+            rtfAverage *= 0.9;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 最近一次 allowLocal() 评估出的压力等级
+     */
+    public synchronized Level getLevel() {
+        return level;
+    }
+
+    /**
+     * 本地转录完成后记录实时率（处理耗时 / 音频时长）
+     */
+    public synchronized void recordRun(double realtimeFactor) {
+        if (realtimeFactor <= 0 || Double.isNaN(realtimeFactor)) {
+            return;
+        }
+        rtfAverage = rtfAverage < 0 ? realtimeFactor
+                : rtfAverage + RTF_SMOOTHING * (realtimeFactor - rtfAverage);
+    }
+
+    private Level evaluate() {
+        long now = SystemClock.elapsedRealtime();
+        if (lastEvaluated != 0 && now - lastEvaluated < EVALUATE_INTERVAL_MS) {
+            return level;
+        }
+        lastEvaluated = now;
+
+        Level next = Level.NORMAL;
+        if (powerManager != null) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                int status = powerManager.getCurrentThermalStatus();
+                if (status >= PowerManager.THERMAL_STATUS_SEVERE) {
+                    next = Level.SEVERE;
+                } else if (status >= PowerManager.THERMAL_STATUS_MODERATE) {
+                    next = Level.MODERATE;
+                }
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                float headroom = powerManager.getThermalHeadroom(10);
+                if (!Float.isNaN(headroom)) {
+                    if (headroom >= HEADROOM_SEVERE) {
+                        next = Level.SEVERE;
+                    } else if (headroom >= HEADROOM_MODERATE && next == Level.NORMAL) {
+                        next = Level.MODERATE;
+                    }
+                }
+            }
+            if (powerManager.isPowerSaveMode() && next == Level.NORMAL) {
+                next = Level.MODERATE;
+            }
+        }
+
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        if (battery != null) {
+            int levelRaw = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, 100);
+            boolean plugged = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+            int percent = levelRaw >= 0 && scale > 0 ? levelRaw * 100 / scale : 100;
+            if (!plugged && percent <= CRITICAL_BATTERY_PERCENT) {
+                next = Level.SEVERE;
+            } else if (!plugged && percent <= LOW_BATTERY_PERCENT && next == Level.NORMAL) {
+                next = Level.MODERATE;
+            }
+        }
+
+        if (next != level) {
+            Log.i(TAG, "Compute level " + level + " -> " + next);
+        }
+        level = next;
+        applyThreadCap(next);
+        return next;
+    }
+
+    private void applyThreadCap(Level current) {
+        if (current == Level.NORMAL) {
+            WhisperCpuConfig.setThreadCap(0);
+            return;
+        }
+        if (throttledThreads < 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            // Big cores only: the little cores add heat without shortening the decode much
+            throttledThreads = Math.max(MIN_THREADS, Math.min(MAX_THROTTLED_THREADS, CpuInfo.getHighPerfCpuCount()));
+        }
+        WhisperCpuConfig.setThreadCap(throttledThreads > 0 ? throttledThreads : MIN_THREADS);
+    }
+}
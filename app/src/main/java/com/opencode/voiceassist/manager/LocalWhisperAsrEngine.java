@@ -0,0 +1,411 @@
+package com.opencode.voiceassist.manager;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import com.opencode.voiceassist.model.TranscriptionResult;
+import com.whispercppdemo.whisper.WaveEncoder;
+import com.whispercppdemo.whisper.Whisper;
+import com.whispercppdemo.whisper.WhisperLib;
+import com.whispercppdemo.whisper.WhisperStatePool;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 端侧 whisper 识别引擎
+ * - 模型放在 外部文件目录/whisper/ 下；不存在时尝试从 assets/whisper/ 拷贝（见 assets/whisper/README.txt）
+ * - 首次转录或 warmUp 时在后台加载模型，之后常驻；原生库或模型缺失时 isAvailable() 为 false
+ * - LocalComputeScheduler 按温控/电量限制线程数，压力大时 shouldRunLocally() 为 false；
+ *   中等压力下主模型是 base 时改用单独加载的 tiny 模型识别
+ * - 8 核以上设备且原生库支持解码状态时，用 WhisperStatePool 共享一份模型权重并行解码两段录音；
+ *   否则只有一个执行线程，getMaxConcurrentRequests() 为 1
+ * - 默认用 tiny 模型识别；开启推测解码、放置了 ggml-base.en.bin 且原生库支持时改用 base 模型，
+ *   由 tiny 模型起草、base 模型批量校验，benchmark() 对比两种方式的实时率
+ */
+public class LocalWhisperAsrEngine implements AsrEngine {
+    private static final String TAG = "LocalWhisperAsrEngine";
+
+    public static final String MODEL_NAME = "ggml-tiny.en.bin";
+    // Optional larger model, used only while tiny.en drafts for it
+    public static final String TARGET_MODEL_NAME = "ggml-base.en.bin";
+    private static final int DRAFT_TOKENS = 5;
+    private static final String ASSET_DIR = "whisper";
+
+    private final Context context;
+    private final int poolSize = WhisperStatePool.recommendedSize();
+    // One thread until the state pool reports how many decodes can really run at once
+    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>());
+    private final AtomicInteger generation = new AtomicInteger();
+    private final LocalComputeScheduler scheduler;
+
+    private volatile Whisper whisper;
+    // tiny.en on its own, for MODERATE pressure when the main model is base.en
+    private volatile Whisper lightWhisper;
+    private volatile boolean lightLoadFailed = false;
+    private volatile boolean loadFailed = false;
+    private volatile int parallelism = 1;
+    private volatile boolean speculative = false;
+    private volatile boolean usingTargetModel = false;
+    private volatile float[] lastAudio;
+
+    public interface BenchmarkCallback {
+        void onResult(String report);
+    }
+
+    public LocalWhisperAsrEngine(Context context) {
+        this.context = context.getApplicationContext();
+        this.scheduler = new LocalComputeScheduler(context);
+    }
+
+    /**
+     * 模型已加载，或还没尝试过加载
+     */
+    public boolean isAvailable() {
+        return !loadFailed;
+    }
+
+    /**
+     * 推测解码开关；模型已加载时在执行线程上切换 base/tiny 模型
+     */
+    public void setSpeculativeDecoding(boolean enabled) {
+        speculative = enabled;
+        if (whisper != null && !executor.isShutdown()) {
+            executor.execute(this::applyModel);
+        }
+    }
+
+    /**
+     * 原生库已加载且支持推测解码（WhisperLib.Feature.SPECULATIVE）；推测解码设置项和测速菜单只在此时显示
+     */
+    public static boolean speculativeDecodingSupported() {
+        return WhisperLib.hasFeature(WhisperLib.Feature.SPECULATIVE);
+    }
+
+    /**
+     * 原生库已加载且能给出分段概率（WhisperLib.Feature.FULL_RESULT）；否则识别结果没有置信度可判断
+     */
+    public boolean reportsConfidence() {
+        return WhisperLib.hasFeature(WhisperLib.Feature.FULL_RESULT);
+    }
+
+    /**
+     * 当前温控/电量状态下值得在本地跑模型
+     */
+    public boolean shouldRunLocally() {
+        return scheduler.allowLocal();
+    }
+
+    @Override
+    public void transcribe(File wavFile, AsrCallback callback) {
+        int requestGeneration = generation.get();
+        executor.execute(() -> {
+            float[] audio;
+            try {
+                audio = WaveEncoder.decodeWaveFile(wavFile);
+            } catch (IOException e) {
+                callback.onError("读取录音失败: " + e.getMessage());
+                return;
+            }
+            run(audio, requestGeneration, callback);
+        });
+    }
+
+    @Override
+    public void transcribe(byte[] pcmData, AsrCallback callback) {
+        int requestGeneration = generation.get();
+        executor.execute(() -> {
+            float[] audio = new float[pcmData.length / 2];
+            for (int i = 0; i < audio.length; i++) {
+                short sample = (short) ((pcmData[2 * i] & 0xff) | (pcmData[2 * i + 1] << 8));
+                audio[i] = sample / 32767.0f;
+            }
+            run(audio, requestGeneration, callback);
+        });
+    }
+
+    private void run(float[] audio, int requestGeneration, AsrCallback callback) {
+        if (requestGeneration != generation.get()) {
+            callback.onError("转录被取消");
+            return;
+        }
+        Whisper model = load();
+        if (model == null) {
+            callback.onError("本地模型不可用");
+            return;
+        }
+        lastAudio = audio;
+        if (usingTargetModel && scheduler.getLevel() == LocalComputeScheduler.Level.MODERATE) {
+            // base.en (even with a draft) keeps the big cores busy several times longer than tiny.en
+            Whisper light = loadLight();
+            if (light != null) {
+                model = light;
+            }
+        }
+        TranscriptionResult result = model.transcribe(audio);
+        if (requestGeneration != generation.get()) {
+            callback.onError("转录被取消");
+        } else if (result == null) {
+            callback.onError("本地识别失败");
+        } else {
+            scheduler.recordRun(result.getRealtimeFactor());
+            callback.onSuccess(result);
+        }
+    }
+
+    /**
+     * 执行线程调用；多个执行线程时只加载一次
+     */
+    private synchronized Whisper load() {
+        if (whisper != null || loadFailed) {
+            return whisper;
+        }
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O || !WhisperLib.load(context)) {
+            Log.w(TAG, "Whisper native library unavailable on this device");
+            loadFailed = true;
+            return null;
+        }
+        try {
+            whisper = open();
+        } catch (RuntimeException | UnsatisfiedLinkError e) {
+            Log.e(TAG, "Failed to load whisper model", e);
+        }
+        loadFailed = whisper == null;
+        return whisper;
+    }
+
+    /**
+     * 按推测解码开关加载主模型：能推测解码时是带 tiny 草稿的 base 模型，否则是 tiny 模型
+     */
+    private Whisper open() {
+        File tiny = locateModel(MODEL_NAME);
+        if (tiny == null) {
+            Log.w(TAG, "Whisper model " + MODEL_NAME + " not found");
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        Whisper loaded = speculative ? openTarget(tiny) : null;
+        usingTargetModel = loaded != null;
+        if (loaded == null) {
+            loaded = Whisper.builder().setModelPath(tiny.getAbsolutePath()).build();
+        }
+        // Speculative decodes share the main context, so base.en runs one clip at a time
+        int decodes = !usingTargetModel && poolSize > 1 ? loaded.enableStatePool(poolSize) : 1;
+        if (decodes > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(decodes);
+            executor.setCorePoolSize(decodes);
+        } else {
+            executor.setCorePoolSize(decodes);
+            executor.setMaximumPoolSize(decodes);
+        }
+        parallelism = decodes;
+        Log.i(TAG, "Whisper model " + (usingTargetModel ? TARGET_MODEL_NAME + " drafted by " + MODEL_NAME : MODEL_NAME)
+                + " loaded in " + (System.currentTimeMillis() - start) + "ms, " + decodes + " parallel decodes");
+        return loaded;
+    }
+
+    /**
+     * base 模型挂上 tiny 草稿；原生库不支持、没有 base 模型或挂载失败时返回 null，什么也不留在内存里
+     */
+    private Whisper openTarget(File draft) {
+        File model = speculativeDecodingSupported() ? locateModel(TARGET_MODEL_NAME) : null;
+        if (model == null) {
+            Log.w(TAG, "Speculative decoding unavailable, decoding with " + MODEL_NAME);
+            return null;
+        }
+        Whisper target;
+        try {
+            target = Whisper.builder().setModelPath(model.getAbsolutePath()).build();
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to load " + TARGET_MODEL_NAME + ", decoding with " + MODEL_NAME, e);
+            return null;
+        }
+        if (!target.setDraftModel(draft.getAbsolutePath(), DRAFT_TOKENS)) {
+            Log.w(TAG, "Draft model not attached, decoding with " + MODEL_NAME);
+            target.release();
+            return null;
+        }
+        return target;
+    }
+
+    private boolean speculationSupported() {
+        return speculativeDecodingSupported() && locateModel(TARGET_MODEL_NAME) != null;
+    }
+
+    /**
+     * 执行线程调用：中等压力时第一次需要才加载 tiny 模型，之后常驻
+     */
+    private synchronized Whisper loadLight() {
+        if (lightWhisper != null || lightLoadFailed) {
+            return lightWhisper;
+        }
+        File model = locateModel(MODEL_NAME);
+        if (model == null) {
+            Log.w(TAG, "Whisper model " + MODEL_NAME + " not found, staying on " + TARGET_MODEL_NAME + " under pressure");
+            lightLoadFailed = true;
+            return null;
+        }
+        try {
+            long start = System.currentTimeMillis();
+            lightWhisper = Whisper.builder().setModelPath(model.getAbsolutePath()).build();
+            Log.i(TAG, "Fallback model " + model.getName() + " loaded in " + (System.currentTimeMillis() - start) + "ms");
+        } catch (RuntimeException | UnsatisfiedLinkError e) {
+            Log.e(TAG, "Failed to load fallback whisper model", e);
+            lightLoadFailed = true;
+        }
+        return lightWhisper;
+    }
+
+    /**
+     * 执行线程调用：推测解码开关变化后换主模型，旧模型随即释放
+     */
+    private synchronized void applyModel() {
+        Whisper current = whisper;
+        if (current == null || speculative == usingTargetModel
+                || (speculative && !speculationSupported())) {
+            return;
+        }
+        Whisper next;
+        try {
+            next = open();
+        } catch (RuntimeException | UnsatisfiedLinkError e) {
+            Log.e(TAG, "Failed to switch whisper model", e);
+            return;
+        }
+        if (next == null) {
+            return;
+        }
+        whisper = next;
+        current.release();
+        if (!usingTargetModel && lightWhisper != null) {
+            // The main model is tiny.en again; no need for a second copy
+            lightWhisper.release();
+            lightWhisper = null;
+        }
+    }
+
+    /**
+     * 用最近一次本地识别的录音分别跑普通解码和推测解码，报告实时率
+     */
+    public void benchmark(BenchmarkCallback callback) {
+        if (executor.isShutdown()) {
+            return;
+        }
+        executor.execute(() -> {
+            Whisper model = load();
+            float[] audio = lastAudio;
+            if (model == null) {
+                callback.onResult("本地模型不可用");
+                return;
+            }
+            if (audio == null) {
+                callback.onResult("请先用本地模型识别一段语音");
+                return;
+            }
+            if (!usingTargetModel || !model.hasDraftModel()) {
+                callback.onResult("推测解码不可用：需要开启推测解码，放置 " + TARGET_MODEL_NAME
+                        + " 和 " + MODEL_NAME + "，且原生库支持");
+                return;
+            }
+            TranscriptionResult[] results = model.benchmarkSpeculative(audio);
+            if (results == null) {
+                callback.onResult("测速失败");
+                return;
+            }
+            TranscriptionResult plain = results[0];
+            TranscriptionResult fast = results[1];
+            float acceptance = model.getLastDraftAcceptance();
+            callback.onResult(String.format(Locale.US,
+                    "音频 %.1f 秒\n普通解码：RTF %.2f（%d ms）\n推测解码：RTF %.2f（%d ms），草稿接受率 %s\n加速 %.2fx，输出%s",
+                    plain.getAudioLengthSeconds(),
+                    plain.getRealtimeFactor(), plain.getProcessingTimeMs(),
+                    fast.getRealtimeFactor(), fast.getProcessingTimeMs(),
+                    Float.isNaN(acceptance) ? "未知" : String.format(Locale.US, "%.0f%%", acceptance * 100),
+                    plain.getProcessingTimeMs() / (double) Math.max(1, fast.getProcessingTimeMs()),
+                    plain.getText().equals(fast.getText()) ? "一致" : "不一致"));
+        });
+    }
+
+    private File locateModel(String name) {
+        File dir = new File(context.getExternalFilesDir(null), ASSET_DIR);
+        File model = new File(dir, name);
+        if (model.exists() && model.length() > 0) {
+            return model;
+        }
+        // Deploy from assets once (development builds bundle the model there)
+        dir.mkdirs();
+        File tmp = new File(dir, name + ".tmp");
+        try (InputStream in = context.getAssets().open(ASSET_DIR + "/" + name);
+             FileOutputStream out = new FileOutputStream(tmp)) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            return null;
+        }
+        return tmp.renameTo(model) ? model : null;
+    }
+
+    @Override
+    public void cancel() {
+        generation.incrementAndGet();
+        Whisper model = whisper;
+        if (model != null) {
+            model.cancel();
+        }
+        Whisper light = lightWhisper;
+        if (light != null) {
+            light.cancel();
+        }
+    }
+
+    @Override
+    public int getMaxConcurrentRequests() {
+        return parallelism;
+    }
+
+    @Override
+    public void warmUp() {
+        executor.execute(this::load);
+    }
+
+    @Override
+    public void release() {
+        // Shared by both tiered engines; only the first release does anything
+        if (executor.isShutdown()) {
+            return;
+        }
+        cancel();
+        executor.shutdown();
+        // Decodes may still be unwinding on several threads; free the model once they are done
+        new Thread(() -> {
+            try {
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (this) {
+                if (whisper != null) {
+                    whisper.release();
+                    whisper = null;
+                }
+                if (lightWhisper != null) {
+                    lightWhisper.release();
+                    lightWhisper = null;
+                }
+            }
+        }, "whisper-release").start();
+    }
+}
@@ -0,0 +1,228 @@
+package com.opencode.voiceassist.manager;
+
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * OpenCode 服务器事件流（SSE, GET /event）客户端
+ * - 整个应用共用一条长连接，事件按 type 分发给所有监听者
+ * - 断线后指数退避重连，带 Last-Event-ID 续传
+ */
+public class OpenCodeEventStream {
+    private static final String TAG = "OpenCodeEventStream";
+
+    private static final long MIN_RETRY_MS = 1000;
+    private static final long MAX_RETRY_MS = 30000;
+
+    public interface Listener {
+        void onEvent(String type, JSONObject properties);
+
+        default void onConnectionChanged(boolean connected) {
+        }
+    }
+
+    public interface RequestDecorator {
+        void decorate(Request.Builder builder);
+    }
+
+    private final OkHttpClient client;
+    private final RequestDecorator decorator;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private volatile String url;
+    private volatile boolean running = false;
+    // Bumped on every start/stop so a reader thread left over from a previous start exits
+    private volatile int generation = 0;
+    private volatile Call currentCall;
+    private volatile String lastEventId;
+    private long retryDelayMs = MIN_RETRY_MS;
+    private Thread readerThread;
+
+    public OpenCodeEventStream(OkHttpClient baseClient, RequestDecorator decorator) {
+        // Shares the connection pool with the REST client; SSE must never time out on idle reads
+        this.client = baseClient.newBuilder()
+                .readTimeout(0, TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(true)
+                .build();
+        this.decorator = decorator;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public synchronized void start(String baseUrl) {
+        String newUrl = baseUrl + "/event";
+        if (running && newUrl.equals(url)) {
+            return;
+        }
+        stop();
+        url = newUrl;
+        lastEventId = null;
+        running = true;
+        int readerGeneration = ++generation;
+        readerThread = new Thread(() -> readLoop(readerGeneration), "OpenCodeEventStream");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        generation++;
+        Call call = currentCall;
+        if (call != null) {
+            call.cancel();
+        }
+        if (readerThread != null) {
+            readerThread.interrupt();
+            readerThread = null;
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private boolean isActive(int readerGeneration) {
+        return running && readerGeneration == generation;
+    }
+
+    private void readLoop(int readerGeneration) {
+        while (isActive(readerGeneration)) {
+            Request.Builder builder = new Request.Builder()
+                    .url(url)
+                    .header("Accept", "text/event-stream")
+                    .header("Cache-Control", "no-cache");
+            if (lastEventId != null) {
+                builder.header("Last-Event-ID", lastEventId);
+            }
+            if (decorator != null) {
+                decorator.decorate(builder);
+            }
+
+            Call call = client.newCall(builder.build());
+            currentCall = call;
+            try (Response response = call.execute()) {
+                ResponseBody body = response.body();
+                if (!response.isSuccessful() || body == null) {
+                    throw new IOException("HTTP " + response.code());
+                }
+                Log.d(TAG, "Event stream connected: " + url);
+                retryDelayMs = MIN_RETRY_MS;
+                notifyConnection(true);
+                readEvents(new BufferedReader(new InputStreamReader(body.byteStream(), StandardCharsets.UTF_8)),
+                        readerGeneration);
+            } catch (IOException e) {
+                if (isActive(readerGeneration)) {
+                    Log.w(TAG, "Event stream error: " + e.getMessage());
+                }
+            } finally {
+                currentCall = null;
+            }
+            if (!isActive(readerGeneration)) {
+                break;
+            }
+            notifyConnection(false);
+
+            try {
+                Log.d(TAG, "Reconnecting event stream in " + retryDelayMs + "ms");
+                Thread.sleep(retryDelayMs);
+            } catch (InterruptedException e) {
+                break;
+            }
+            retryDelayMs = Math.min(retryDelayMs * 2, MAX_RETRY_MS);
+        }
+        Log.d(TAG, "Event stream stopped");
+    }
+
+    /**
+     * 按 SSE 规范解析：空行结束一个事件，多行 data 以换行拼接，忽略注释行
+     */
+    private void readEvents(BufferedReader reader, int readerGeneration) throws IOException {
+        StringBuilder data = new StringBuilder();
+        String eventId = null;
+        String line;
+        while (isActive(readerGeneration) && (line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                if (data.length() > 0) {
+                    if (eventId != null) {
+                        lastEventId = eventId;
+                    }
+                    dispatch(data.toString());
+                }
+                data.setLength(0);
+                eventId = null;
+                continue;
+            }
+            if (line.startsWith(":")) {
+                continue;
+            }
+            int colon = line.indexOf(':');
+            String field = colon >= 0 ? line.substring(0, colon) : line;
+            String value = colon >= 0 ? line.substring(colon + 1) : "";
+            if (value.startsWith(" ")) {
+                value = value.substring(1);
+            }
+            switch (field) {
+                case "data":
+                    if (data.length() > 0) {
+                        data.append('\n');
+                    }
+                    data.append(value);
+                    break;
+                case "id":
+                    eventId = value;
+                    break;
+                case "retry":
+                    try {
+                        retryDelayMs = Math.max(MIN_RETRY_MS, Long.parseLong(value.trim()));
+                    } catch (NumberFormatException ignored) {
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void dispatch(String data) {
+        try {
+            JSONObject event = new JSONObject(data);
+            String type = event.optString("type");
+            JSONObject properties = event.optJSONObject("properties");
+            if (properties == null) {
+                properties = new JSONObject();
+            }
+            for (Listener listener : listeners) {
+                listener.onEvent(type, properties);
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Ignoring malformed event: " + data);
+        }
+    }
+
+    private void notifyConnection(boolean connected) {
+        for (Listener listener : listeners) {
+            listener.onConnectionChanged(connected);
+        }
+    }
+}
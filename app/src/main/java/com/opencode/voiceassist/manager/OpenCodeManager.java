@@ -2,8 +2,11 @@ package com.opencode.voiceassist.manager;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
+import com.opencode.voiceassist.model.Session;
 import com.opencode.voiceassist.utils.Constants;
 
 import org.json.JSONArray;
@@ -11,7 +14,11 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import okhttp3.Call;
 import okhttp3.Callback;
@@ -22,53 +29,95 @@ import okhttp3.RequestBody;
 import okhttp3.Response;
 
 public class OpenCodeManager {
-    
+
     private static final String TAG = "OpenCodeManager";
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
-    
+    private static final String SESSION_TITLE = "voice-assistant-session";
+
     private Context context;
     private OkHttpClient client;
+    private OkHttpClient promptClient;
+    private OpenCodeEventStream eventStream;
+    private OpenCodeSessionStore sessionStore;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private String sessionId;
     private String baseUrl;
     private String username;
     private String password;
     private InitializationCallback initCallback;
-    
+
     public interface ResponseCallback {
         void onResponse(String response);
         void onError(String error);
     }
-    
+
+    /**
+     * 流式回复回调，均在主线程调用
+     */
+    public interface StreamCallback {
+        void onDelta(String messageId, String delta, String fullText);
+        void onComplete(String messageId, String fullText);
+        void onError(String error);
+    }
+
+    /**
+     * 直接提交回调，均在主线程调用。accepted 为 true 表示服务器可能已收到提示词，调用方不应再重发
+     */
+    public interface SubmitCallback {
+        void onSubmitted();
+        void onFailed(String error, boolean accepted);
+    }
+
     public interface InitializationCallback {
         void onInitialized(boolean success, String message);
     }
-    
+
     public OpenCodeManager(Context context) {
         this.context = context;
         this.client = new OkHttpClient.Builder()
             .connectTimeout(5, TimeUnit.SECONDS)
             .readTimeout(10, TimeUnit.SECONDS)
             .build();
-        
+        // The prompt POST only returns once generation finishes; progress arrives over the event stream
+        this.promptClient = client.newBuilder()
+            .readTimeout(0, TimeUnit.MILLISECONDS)
+            .build();
+        this.eventStream = new OpenCodeEventStream(client, this::addAuthHeaders);
+
         updateBaseUrl();
+        this.sessionStore = new OpenCodeSessionStore(context, this);
+        eventStream.addListener(sessionStore);
     }
-    
+
     public void setInitializationCallback(InitializationCallback callback) {
         this.initCallback = callback;
     }
-    
+
     public void updateSettings(String ip, int port) {
         SharedPreferences prefs = context.getSharedPreferences("settings", Context.MODE_PRIVATE);
         prefs.edit()
             .putString("opencode_ip", ip)
             .putInt("opencode_port", port)
             .apply();
-        
+
         updateBaseUrl();
+        if (eventStream.isRunning()) {
+            eventStream.start(baseUrl);
+        }
         // Reinitialize session with new settings
         initializeSession();
     }
-    
+
+    /**
+     * 设置保存后重新读取服务器地址和凭据，不创建新会话
+     */
+    public void reloadSettings() {
+        updateBaseUrl();
+        if (eventStream.isRunning()) {
+            eventStream.start(baseUrl);
+        }
+    }
+
     private void updateBaseUrl() {
         SharedPreferences prefs = context.getSharedPreferences("settings", Context.MODE_PRIVATE);
         String ip = prefs.getString("opencode_ip", Constants.DEFAULT_OPENCODE_IP);
@@ -77,37 +126,85 @@ public class OpenCodeManager {
         password = prefs.getString("opencode_password", Constants.DEFAULT_OPENCODE_PASSWORD);
         baseUrl = "http://" + ip + ":" + port;
     }
-    
+
     private void addAuthHeaders(Request.Builder builder) {
         if (username != null && !username.isEmpty() && password != null) {
             String credentials = username + ":" + password;
             String encoded = android.util.Base64.encodeToString(credentials.getBytes(), android.util.Base64.NO_WRAP);
             builder.header("Authorization", "Basic " + encoded);
-            Log.d(TAG, "Added Basic authentication header for user: " + username);
-        } else {
-            Log.d(TAG, "No credentials available, skipping authentication header");
         }
     }
-    
+
+    /**
+     * 连接服务器事件流（一条长连接，所有流式请求共用）
+     */
+    public void connectEvents() {
+        eventStream.start(baseUrl);
+    }
+
+    public OpenCodeEventStream getEventStream() {
+        return eventStream;
+    }
+
+    public OpenCodeSessionStore getSessionStore() {
+        return sessionStore;
+    }
+
+    public void release() {
+        eventStream.stop();
+        sessionStore.release();
+    }
+
+    /**
+     * 认证 GET 请求，供本地存储增量同步使用
+     */
+    void get(String path, Callback callback) {
+        Request.Builder requestBuilder = new Request.Builder()
+            .url(baseUrl + path)
+            .get();
+        addAuthHeaders(requestBuilder);
+        client.newCall(requestBuilder.build()).enqueue(callback);
+    }
+
     public void initializeSession() {
-        // Try to create a new session
-        createSession();
+        // Reuse the assistant session if the server still has it, otherwise create one
+        sessionStore.syncSessions(new OpenCodeSessionStore.SyncCallback() {
+            @Override
+            public void onSynced(boolean changed) {
+                Session existing = sessionStore.findSessionByTitle(SESSION_TITLE);
+                if (existing == null) {
+                    createSession();
+                    return;
+                }
+                sessionId = existing.getId();
+                Log.d(TAG, "Session reused: " + sessionId);
+                sessionStore.syncMessages(sessionId, null);
+                if (initCallback != null) {
+                    initCallback.onInitialized(true, "OpenCode连接成功");
+                }
+            }
+
+            @Override
+            public void onError(String error) {
+                createSession();
+            }
+        });
     }
-    
+
     private void createSession() {
         JSONObject requestBody = new JSONObject();
         try {
-            requestBody.put("name", "voice-assistant-session");
+            requestBody.put("title", SESSION_TITLE);
         } catch (JSONException e) {
             e.printStackTrace();
         }
-        
+
         Request.Builder requestBuilder = new Request.Builder()
-            .url(baseUrl + "/api/sessions")
+            .url(baseUrl + "/session")
             .post(RequestBody.create(requestBody.toString(), JSON));
         addAuthHeaders(requestBuilder);
         Request request = requestBuilder.build();
-        
+
         client.newCall(request).enqueue(new Callback() {
             @Override
             public void onFailure(Call call, IOException e) {
@@ -117,7 +214,7 @@ public class OpenCodeManager {
                     initCallback.onInitialized(false, error);
                 }
             }
-            
+
             @Override
             public void onResponse(Call call, Response response) throws IOException {
                 if (response.isSuccessful()) {
@@ -142,10 +239,11 @@ public class OpenCodeManager {
                         initCallback.onInitialized(false, error);
                     }
                 }
+                response.close();
             }
         });
     }
-    
+
     public void sendMessage(String message, ResponseCallback callback) {
         Log.d(TAG, "Sending message to OpenCode: " + message + ", sessionId: " + sessionId);
         if (sessionId == null) {
@@ -155,54 +253,357 @@ public class OpenCodeManager {
             callback.onError("OpenCode连接失败，请点击右上角齿轮图标配置服务器地址");
             return;
         }
-        
+
+        sendMessageStreaming(sessionId, message, new StreamCallback() {
+            @Override
+            public void onDelta(String messageId, String delta, String fullText) {
+            }
+
+            @Override
+            public void onComplete(String messageId, String fullText) {
+                callback.onResponse(fullText);
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
+            }
+        });
+    }
+
+    /**
+     * 向会话发送提示词，助手回复的文本增量通过事件流实时回调
+     * 事件流断线重连后会拉取一次消息列表补齐期间错过的内容
+     */
+    public void sendMessageStreaming(String targetSessionId, String text, StreamCallback callback) {
+        PromptStream stream = new PromptStream(targetSessionId, callback);
+        eventStream.addListener(stream);
+        connectEvents();
+
         JSONObject requestBody = new JSONObject();
         try {
-            requestBody.put("message", message);
-            requestBody.put("session_id", sessionId);
+            JSONObject part = new JSONObject();
+            part.put("type", "text");
+            part.put("text", text);
+            requestBody.put("parts", new JSONArray().put(part));
         } catch (JSONException e) {
             e.printStackTrace();
         }
-        
+
         Request.Builder requestBuilder = new Request.Builder()
-            .url(baseUrl + "/api/messages")
+            .url(baseUrl + "/session/" + targetSessionId + "/message")
             .post(RequestBody.create(requestBody.toString(), JSON));
         addAuthHeaders(requestBuilder);
-        Request request = requestBuilder.build();
-        
-        client.newCall(request).enqueue(new Callback() {
+
+        promptClient.newCall(requestBuilder.build()).enqueue(new Callback() {
             @Override
             public void onFailure(Call call, IOException e) {
-                callback.onError("网络请求失败: " + e.getMessage() + "\n请检查OpenCode服务器地址和端口配置");
+                stream.fail("网络请求失败: " + e.getMessage() + "\n请检查OpenCode服务器地址和端口配置");
             }
-            
+
             @Override
             public void onResponse(Call call, Response response) throws IOException {
-                Log.d(TAG, "OpenCode response received, code: " + response.code());
-                if (response.isSuccessful()) {
-                    try {
-                        String body = response.body().string();
-                        Log.d(TAG, "OpenCode response body: " + body);
-                        JSONObject json = new JSONObject(body);
-                        String content = json.optString("content", body);
-                        callback.onResponse(content);
-                    } catch (JSONException e) {
-                        Log.d(TAG, "JSON parse error, returning raw body");
-                        callback.onResponse(response.body().string());
+                Log.d(TAG, "OpenCode prompt finished, code: " + response.code());
+                try {
+                    if (!response.isSuccessful()) {
+                        stream.fail("服务器错误: " + response.code());
+                        return;
                     }
+                    JSONObject json = new JSONObject(response.body().string());
+                    JSONObject info = json.optJSONObject("info");
+                    stream.complete(info != null ? info.optString("id") : null,
+                        collectText(json.optJSONArray("parts")));
+                } catch (JSONException e) {
+                    // Reply already streamed; the final body is only a confirmation
+                    stream.complete(null, null);
+                } finally {
+                    response.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * 不经过页面 DOM，直接把提示词提交到 WebView 正在显示的会话，由页面自身的事件流刷新界面
+     * 优先使用立即返回的 prompt_async；旧版服务器不支持时改用阻塞的 /message，
+     * 并以事件流中出现本次 user 消息作为已提交的判定
+     */
+    public void submitPrompt(String targetSessionId, String directory, String text, SubmitCallback callback) {
+        JSONObject requestBody = new JSONObject();
+        try {
+            JSONObject part = new JSONObject();
+            part.put("type", "text");
+            part.put("text", text);
+            requestBody.put("parts", new JSONArray().put(part));
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        String query = directory != null ? "?directory=" + android.net.Uri.encode(directory) : "";
+
+        Request.Builder requestBuilder = new Request.Builder()
+            .url(baseUrl + "/session/" + targetSessionId + "/prompt_async" + query)
+            .post(RequestBody.create(requestBody.toString(), JSON));
+        addAuthHeaders(requestBuilder);
+        long startTime = System.currentTimeMillis();
+
+        client.newCall(requestBuilder.build()).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                // After a read/write timeout the server may already have the prompt; only a failed connect is safe to resend
+                boolean maybeAccepted = !(e instanceof java.net.ConnectException);
+                mainHandler.post(() -> callback.onFailed("网络请求失败: " + e.getMessage(), maybeAccepted));
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                int code = response.code();
+                response.close();
+                if (response.isSuccessful()) {
+                    Log.d(TAG, "Prompt submitted in " + (System.currentTimeMillis() - startTime) + "ms");
+                    mainHandler.post(callback::onSubmitted);
+                } else if (code == 404 || code == 405) {
+                    Log.d(TAG, "prompt_async not supported, falling back to blocking /message");
+                    submitBlocking(targetSessionId, query, requestBody, callback);
                 } else {
-                    String error = "服务器错误: " + response.code();
-                    Log.d(TAG, error);
-                    callback.onError(error);
+                    mainHandler.post(() -> callback.onFailed("服务器错误: " + code, false));
+                }
+            }
+        });
+    }
+
+    private void submitBlocking(String targetSessionId, String query, JSONObject requestBody,
+                                SubmitCallback callback) {
+        AtomicBoolean accepted = new AtomicBoolean(false);
+        OpenCodeEventStream.Listener acceptListener = new OpenCodeEventStream.Listener() {
+            @Override
+            public void onEvent(String type, JSONObject properties) {
+                JSONObject info = properties.optJSONObject("info");
+                if ("message.updated".equals(type) && info != null
+                        && targetSessionId.equals(info.optString("sessionID"))
+                        && "user".equals(info.optString("role"))
+                        && accepted.compareAndSet(false, true)) {
+                    eventStream.removeListener(this);
+                    mainHandler.post(callback::onSubmitted);
+                }
+            }
+        };
+        eventStream.addListener(acceptListener);
+        connectEvents();
+
+        Request.Builder requestBuilder = new Request.Builder()
+            .url(baseUrl + "/session/" + targetSessionId + "/message" + query)
+            .post(RequestBody.create(requestBody.toString(), JSON));
+        addAuthHeaders(requestBuilder);
+
+        promptClient.newCall(requestBuilder.build()).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                eventStream.removeListener(acceptListener);
+                if (!accepted.get()) {
+                    // The request body may have reached the server before the connection dropped
+                    boolean maybeAccepted = !(e instanceof java.net.ConnectException);
+                    mainHandler.post(() -> callback.onFailed("网络请求失败: " + e.getMessage(), maybeAccepted));
+                }
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                eventStream.removeListener(acceptListener);
+                boolean success = response.isSuccessful();
+                int code = response.code();
+                response.close();
+                if (accepted.compareAndSet(false, true)) {
+                    if (success) {
+                        mainHandler.post(callback::onSubmitted);
+                    } else {
+                        mainHandler.post(() -> callback.onFailed("服务器错误: " + code, false));
+                    }
+                }
+            }
+        });
+    }
+
+    private void fetchLatestAssistantText(String targetSessionId, PromptStream stream) {
+        Request.Builder requestBuilder = new Request.Builder()
+            .url(baseUrl + "/session/" + targetSessionId + "/message");
+        addAuthHeaders(requestBuilder);
+        client.newCall(requestBuilder.build()).enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Log.w(TAG, "Resync after reconnect failed: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try {
+                    if (!response.isSuccessful()) {
+                        return;
+                    }
+                    JSONArray messages = new JSONArray(response.body().string());
+                    for (int i = messages.length() - 1; i >= 0; i--) {
+                        JSONObject entry = messages.getJSONObject(i);
+                        JSONObject info = entry.optJSONObject("info");
+                        if (info != null && "assistant".equals(info.optString("role"))) {
+                            stream.resync(info.optString("id"), collectText(entry.optJSONArray("parts")));
+                            return;
+                        }
+                    }
+                } catch (JSONException e) {
+                    Log.w(TAG, "Resync parse error: " + e.getMessage());
+                } finally {
+                    response.close();
                 }
             }
         });
     }
-    
+
+    private static String collectText(JSONArray parts) {
+        if (parts == null) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < parts.length(); i++) {
+            JSONObject part = parts.optJSONObject(i);
+            if (part != null && "text".equals(part.optString("type"))) {
+                text.append(part.optString("text"));
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * 单次提示词的事件过滤与文本拼接：只跟踪目标会话中 role=assistant 的消息
+     */
+    private class PromptStream implements OpenCodeEventStream.Listener {
+        private final String targetSessionId;
+        private final StreamCallback callback;
+        private final AtomicBoolean finished = new AtomicBoolean(false);
+        private final Map<String, String> messageRoles = new HashMap<>();
+        private final Map<String, String> partTexts = new LinkedHashMap<>();
+        private String assistantMessageId;
+        private boolean wasDisconnected = false;
+
+        PromptStream(String targetSessionId, StreamCallback callback) {
+            this.targetSessionId = targetSessionId;
+            this.callback = callback;
+        }
+
+        @Override
+        public synchronized void onEvent(String type, JSONObject properties) {
+            switch (type) {
+                case "message.updated": {
+                    JSONObject info = properties.optJSONObject("info");
+                    if (info != null && targetSessionId.equals(info.optString("sessionID"))) {
+                        messageRoles.put(info.optString("id"), info.optString("role"));
+                    }
+                    break;
+                }
+                case "message.part.updated": {
+                    JSONObject part = properties.optJSONObject("part");
+                    if (part == null || !targetSessionId.equals(part.optString("sessionID"))
+                            || !"text".equals(part.optString("type"))) {
+                        break;
+                    }
+                    String messageId = part.optString("messageID");
+                    if (!"assistant".equals(messageRoles.get(messageId))) {
+                        break;
+                    }
+                    if (!messageId.equals(assistantMessageId)) {
+                        // A new assistant message (e.g. after a tool call) starts a fresh reply text
+                        assistantMessageId = messageId;
+                        partTexts.clear();
+                    }
+                    String partId = part.optString("id");
+                    String previous = partTexts.containsKey(partId) ? partTexts.get(partId) : "";
+                    String current = part.optString("text");
+                    partTexts.put(partId, current);
+                    String delta = properties.has("delta") ? properties.optString("delta")
+                        : current.startsWith(previous) ? current.substring(previous.length()) : current;
+                    String fullText = joinParts();
+                    post(() -> callback.onDelta(messageId, delta, fullText));
+                    break;
+                }
+                case "session.idle":
+                    // Ignore an idle left over from before this prompt started generating
+                    if (assistantMessageId != null && targetSessionId.equals(properties.optString("sessionID"))) {
+                        complete(assistantMessageId, null);
+                    }
+                    break;
+                case "session.error":
+                    if (targetSessionId.equals(properties.optString("sessionID"))) {
+                        JSONObject error = properties.optJSONObject("error");
+                        fail("OpenCode错误: " + (error != null ? error.optString("name") : "unknown"));
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void onConnectionChanged(boolean connected) {
+            if (!connected) {
+                wasDisconnected = true;
+            } else if (wasDisconnected && !finished.get()) {
+                wasDisconnected = false;
+                fetchLatestAssistantText(targetSessionId, this);
+            }
+        }
+
+        synchronized void resync(String messageId, String text) {
+            if (finished.get() || text == null) {
+                return;
+            }
+            assistantMessageId = messageId;
+            partTexts.clear();
+            partTexts.put("resync", text);
+            post(() -> callback.onDelta(messageId, "", text));
+        }
+
+        synchronized void complete(String messageId, String finalText) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            eventStream.removeListener(this);
+            String id = messageId != null ? messageId : assistantMessageId;
+            String text = finalText != null ? finalText : joinParts();
+            post(() -> callback.onComplete(id, text));
+        }
+
+        void fail(String error) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            eventStream.removeListener(this);
+            Log.e(TAG, error);
+            post(() -> callback.onError(error));
+        }
+
+        private String joinParts() {
+            StringBuilder text = new StringBuilder();
+            for (String partText : partTexts.values()) {
+                text.append(partText);
+            }
+            return text.toString();
+        }
+
+        private void post(Runnable runnable) {
+            mainHandler.post(runnable);
+        }
+    }
+
     public String getBaseUrl() {
         return baseUrl;
     }
-    
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
     public boolean isSessionActive() {
         return sessionId != null;
     }
@@ -0,0 +1,694 @@
+package com.opencode.voiceassist.manager;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.opencode.voiceassist.model.Message;
+import com.opencode.voiceassist.model.Session;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Response;
+
+/**
+ * OpenCode 会话/消息本地存储
+ * - 内存索引：会话按 id；消息按会话 id + 时间戳有序存放，容量有上限
+ * - 持久化到 filesDir/opencode_store，启动时直接从磁盘渲染
+ * - 增量同步：事件流在线时实时合并；重连或打开会话时按游标（已同步的最新消息时间）只拉取缺失的尾部
+ */
+public class OpenCodeSessionStore implements OpenCodeEventStream.Listener {
+    private static final String TAG = "OpenCodeSessionStore";
+
+    private static final int MAX_SESSIONS = 50;
+    private static final int MAX_MESSAGES_PER_SESSION = 500;
+    private static final int SYNC_PAGE_SIZE = 20;
+    // Streaming writes are coalesced; the completed message is written right away
+    private static final long LIVE_PERSIST_DELAY_MS = 2000;
+    // Messages still receiving parts; older entries are dropped if their completion never arrives
+    private static final int MAX_LIVE_MESSAGES = 32;
+
+    public interface StoreListener {
+        void onSessionsChanged();
+        void onMessagesChanged(String sessionId);
+    }
+
+    public interface SyncCallback {
+        void onSynced(boolean changed);
+        void onError(String error);
+    }
+
+    private final OpenCodeManager openCodeManager;
+    private final File storeDir;
+    private final File messagesDir;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+    private final CopyOnWriteArrayList<StoreListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Map<String, Session> sessions = new HashMap<>();
+    // sessionId -> (sort key "timestamp|id" -> message)
+    private final Map<String, TreeMap<String, Message>> messagesBySession = new HashMap<>();
+    private final Map<String, String> sortKeysById = new HashMap<>();
+    // sessionId -> newest message time already merged from the server
+    private final Map<String, Long> syncCursors = new HashMap<>();
+    // messageId -> (partId -> text) for messages assembled from live events, oldest first
+    private final LinkedHashMap<String, LinkedHashMap<String, String>> liveParts =
+            new LinkedHashMap<String, LinkedHashMap<String, String>>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, LinkedHashMap<String, String>> eldest) {
+                    return size() > MAX_LIVE_MESSAGES;
+                }
+            };
+    // Sessions with streamed changes not yet written to disk
+    private final Set<String> pendingPersist = new HashSet<>();
+    private final Set<String> loadedSessions = new HashSet<>();
+
+    public OpenCodeSessionStore(Context context, OpenCodeManager openCodeManager) {
+        this.openCodeManager = openCodeManager;
+        this.storeDir = new File(context.getFilesDir(), "opencode_store");
+        this.messagesDir = new File(storeDir, "messages");
+        if (!messagesDir.exists()) {
+            messagesDir.mkdirs();
+        }
+        loadSessions();
+    }
+
+    public void addListener(StoreListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(StoreListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void release() {
+        // Write out whatever is still waiting on the streaming debounce
+        List<String> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(pendingPersist);
+        }
+        for (String sessionId : pending) {
+            persistMessages(sessionId);
+        }
+        diskExecutor.shutdown();
+    }
+
+    // ---- Queries (served from memory/disk, never block on the network) ----
+
+    public synchronized List<Session> getSessions() {
+        List<Session> result = new ArrayList<>(sessions.values());
+        Collections.sort(result, (a, b) -> Long.compare(b.getUpdatedAt(), a.getUpdatedAt()));
+        return result;
+    }
+
+    public synchronized Session getSession(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    public synchronized Session findSessionByTitle(String title) {
+        for (Session session : getSessions()) {
+            if (title.equals(session.getTitle())) {
+                return session;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 返回 beforeTimestamp 之前最多 limit 条消息（按时间升序），用于分页加载更早的历史
+     */
+    public synchronized List<Message> getMessages(String sessionId, long beforeTimestamp, int limit) {
+        TreeMap<String, Message> messages = ensureMessagesLoaded(sessionId);
+        List<Message> result = new ArrayList<>();
+        for (Message message : messages.headMap(sortKey(beforeTimestamp, ""), false).descendingMap().values()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(message);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    public List<Message> getLatestMessages(String sessionId, int limit) {
+        return getMessages(sessionId, Long.MAX_VALUE, limit);
+    }
+
+    // ---- Incremental sync ----
+
+    public void syncSessions(SyncCallback callback) {
+        openCodeManager.get("/session", new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                deliverError(callback, "同步会话失败: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try {
+                    if (!response.isSuccessful()) {
+                        deliverError(callback, "同步会话失败: " + response.code());
+                        return;
+                    }
+                    JSONArray array = new JSONArray(response.body().string());
+                    boolean changed = false;
+                    Set<String> serverIds = new HashSet<>();
+                    for (int i = 0; i < array.length(); i++) {
+                        JSONObject info = array.getJSONObject(i);
+                        serverIds.add(info.optString("id"));
+                        changed |= mergeSession(info);
+                    }
+                    // The list is complete, so anything cached but missing was deleted (or belongs to another server)
+                    changed |= pruneSessions(serverIds);
+                    if (changed) {
+                        trimSessions();
+                        persistSessions();
+                        notifySessionsChanged();
+                    }
+                    deliverSynced(callback, changed);
+                } catch (JSONException e) {
+                    deliverError(callback, "会话数据解析失败: " + e.getMessage());
+                } finally {
+                    response.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * 只拉取游标之后的新消息：先取最近一页，若与本地没有重叠再扩大一页，直到覆盖游标或取完
+     */
+    public void syncMessages(String sessionId, SyncCallback callback) {
+        syncMessages(sessionId, SYNC_PAGE_SIZE, callback);
+    }
+
+    private void syncMessages(String sessionId, int limit, SyncCallback callback) {
+        long cursor;
+        synchronized (this) {
+            ensureMessagesLoaded(sessionId);
+            Long stored = syncCursors.get(sessionId);
+            cursor = stored != null ? stored : 0;
+        }
+        openCodeManager.get("/session/" + sessionId + "/message?limit=" + limit, new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                deliverError(callback, "同步消息失败: " + e.getMessage());
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try {
+                    if (!response.isSuccessful()) {
+                        deliverError(callback, "同步消息失败: " + response.code());
+                        return;
+                    }
+                    JSONArray array = new JSONArray(response.body().string());
+                    long oldestFetched = Long.MAX_VALUE;
+                    boolean changed = false;
+                    for (int i = 0; i < array.length(); i++) {
+                        JSONObject entry = array.getJSONObject(i);
+                        JSONObject info = entry.optJSONObject("info");
+                        if (info == null) {
+                            continue;
+                        }
+                        long created = messageTime(info);
+                        oldestFetched = Math.min(oldestFetched, created);
+                        if (created >= cursor) {
+                            changed |= mergeMessage(info, collectText(entry.optJSONArray("parts")));
+                        }
+                    }
+
+                    boolean gap = cursor > 0 && oldestFetched > cursor && array.length() >= limit;
+                    if (gap && limit < MAX_MESSAGES_PER_SESSION) {
+                        Log.d(TAG, "Sync window did not reach cursor, widening to " + limit * 2);
+                        syncMessages(sessionId, Math.min(limit * 2, MAX_MESSAGES_PER_SESSION), callback);
+                        return;
+                    }
+                    if (changed) {
+                        persistMessages(sessionId);
+                        notifyMessagesChanged(sessionId);
+                    }
+                    deliverSynced(callback, changed);
+                } catch (JSONException e) {
+                    deliverError(callback, "消息数据解析失败: " + e.getMessage());
+                } finally {
+                    response.close();
+                }
+            }
+        });
+    }
+
+    // ---- Live updates from the event stream ----
+
+    @Override
+    public void onEvent(String type, JSONObject properties) {
+        try {
+            switch (type) {
+                case "session.created":
+                case "session.updated": {
+                    JSONObject info = properties.optJSONObject("info");
+                    if (info != null && mergeSession(info)) {
+                        trimSessions();
+                        persistSessions();
+                        notifySessionsChanged();
+                    }
+                    break;
+                }
+                case "session.deleted": {
+                    JSONObject info = properties.optJSONObject("info");
+                    if (info != null) {
+                        removeSession(info.optString("id"));
+                    }
+                    break;
+                }
+                case "message.updated": {
+                    JSONObject info = properties.optJSONObject("info");
+                    if (info != null) {
+                        String messageId = info.optString("id");
+                        String sessionId = info.optString("sessionID");
+                        JSONObject time = info.optJSONObject("time");
+                        boolean completed = time != null && time.has("completed");
+                        String text;
+                        boolean streamed;
+                        synchronized (this) {
+                            text = joinLiveParts(messageId);
+                            streamed = pendingPersist.contains(sessionId);
+                            if (completed) {
+                                liveParts.remove(messageId);
+                            }
+                        }
+                        boolean changed = mergeMessage(info, text);
+                        if (changed || (completed && streamed)) {
+                            persistMessages(sessionId);
+                        }
+                        if (changed) {
+                            notifyMessagesChanged(sessionId);
+                        }
+                    }
+                    break;
+                }
+                case "message.part.updated": {
+                    JSONObject part = properties.optJSONObject("part");
+                    if (part != null && "text".equals(part.optString("type"))) {
+                        updateLivePart(part);
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Failed to apply event " + type + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void onConnectionChanged(boolean connected) {
+        if (connected) {
+            // Catch up on whatever happened while the stream was down
+            syncSessions(null);
+            List<String> loaded;
+            synchronized (this) {
+                loaded = new ArrayList<>(loadedSessions);
+            }
+            for (String sessionId : loaded) {
+                syncMessages(sessionId, null);
+            }
+        }
+    }
+
+    private void updateLivePart(JSONObject part) throws JSONException {
+        String sessionId = part.optString("sessionID");
+        String messageId = part.optString("messageID");
+        Message updated;
+        synchronized (this) {
+            LinkedHashMap<String, String> parts = liveParts.get(messageId);
+            if (parts == null) {
+                parts = new LinkedHashMap<>();
+                liveParts.put(messageId, parts);
+            }
+            parts.put(part.optString("id"), part.optString("text"));
+            String key = sortKeysById.get(messageId);
+            TreeMap<String, Message> messages = messagesBySession.get(sessionId);
+            Message existing = key != null && messages != null ? messages.get(key) : null;
+            if (existing == null) {
+                // message.updated has not arrived yet; the text is applied when it does
+                return;
+            }
+            updated = new Message(messageId, sessionId, joinLiveParts(messageId),
+                    existing.getType(), existing.getTimestamp());
+            messages.put(key, updated);
+        }
+        schedulePersist(sessionId);
+        notifyMessagesChanged(sessionId);
+    }
+
+    /**
+     * Writes a streaming session at most once per LIVE_PERSIST_DELAY_MS instead of once per part
+     */
+    private void schedulePersist(String sessionId) {
+        synchronized (this) {
+            if (!pendingPersist.add(sessionId)) {
+                return;
+            }
+        }
+        mainHandler.postDelayed(() -> {
+            synchronized (this) {
+                if (!pendingPersist.contains(sessionId) || diskExecutor.isShutdown()) {
+                    return;
+                }
+            }
+            persistMessages(sessionId);
+        }, LIVE_PERSIST_DELAY_MS);
+    }
+
+    private String joinLiveParts(String messageId) {
+        LinkedHashMap<String, String> parts = liveParts.get(messageId);
+        if (parts == null) {
+            return null;
+        }
+        StringBuilder text = new StringBuilder();
+        for (String partText : parts.values()) {
+            text.append(partText);
+        }
+        return text.toString();
+    }
+
+    // ---- Merge helpers ----
+
+    private synchronized boolean mergeSession(JSONObject info) throws JSONException {
+        String id = info.getString("id");
+        JSONObject time = info.optJSONObject("time");
+        long created = time != null ? time.optLong("created") : 0;
+        long updated = time != null ? time.optLong("updated", created) : created;
+        Session existing = sessions.get(id);
+        if (existing != null && existing.getUpdatedAt() >= updated
+                && info.optString("title").equals(existing.getTitle())) {
+            return false;
+        }
+        sessions.put(id, new Session(id, info.optString("title"), info.optString("directory", null), created, updated));
+        return true;
+    }
+
+    private synchronized boolean mergeMessage(JSONObject info, String text) throws JSONException {
+        String id = info.getString("id");
+        String sessionId = info.getString("sessionID");
+        long timestamp = messageTime(info);
+        int type = info.has("error") ? Message.TYPE_ERROR
+                : "user".equals(info.optString("role")) ? Message.TYPE_USER : Message.TYPE_ASSISTANT;
+
+        TreeMap<String, Message> messages = ensureMessagesLoaded(sessionId);
+        String key = sortKey(timestamp, id);
+        String oldKey = sortKeysById.get(id);
+        Message existing = oldKey != null ? messages.get(oldKey) : null;
+        String content = text != null ? text : existing != null ? existing.getContent() : "";
+        if (existing != null && existing.getType() == type && content.equals(existing.getContent())
+                && key.equals(oldKey)) {
+            return false;
+        }
+        if (oldKey != null) {
+            messages.remove(oldKey);
+        }
+        messages.put(key, new Message(id, sessionId, content, type, timestamp));
+        sortKeysById.put(id, key);
+
+        Long cursor = syncCursors.get(sessionId);
+        if (cursor == null || timestamp > cursor) {
+            syncCursors.put(sessionId, timestamp);
+        }
+        while (messages.size() > MAX_MESSAGES_PER_SESSION) {
+            Message evicted = messages.pollFirstEntry().getValue();
+            sortKeysById.remove(evicted.getId());
+            liveParts.remove(evicted.getId());
+        }
+        return true;
+    }
+
+    private synchronized void trimSessions() {
+        if (sessions.size() <= MAX_SESSIONS) {
+            return;
+        }
+        List<Session> ordered = getSessions();
+        for (int i = MAX_SESSIONS; i < ordered.size(); i++) {
+            String id = ordered.get(i).getId();
+            sessions.remove(id);
+            dropMessages(id);
+        }
+    }
+
+    private synchronized boolean pruneSessions(Set<String> keep) {
+        List<String> stale = new ArrayList<>();
+        for (String id : sessions.keySet()) {
+            if (!keep.contains(id)) {
+                stale.add(id);
+            }
+        }
+        for (String id : stale) {
+            sessions.remove(id);
+            dropMessages(id);
+        }
+        return !stale.isEmpty();
+    }
+
+    private void removeSession(String sessionId) {
+        synchronized (this) {
+            if (sessions.remove(sessionId) == null) {
+                return;
+            }
+            dropMessages(sessionId);
+        }
+        persistSessions();
+        notifySessionsChanged();
+    }
+
+    private synchronized void dropMessages(String sessionId) {
+        TreeMap<String, Message> messages = messagesBySession.remove(sessionId);
+        if (messages != null) {
+            for (Message message : messages.values()) {
+                sortKeysById.remove(message.getId());
+                liveParts.remove(message.getId());
+            }
+        }
+        syncCursors.remove(sessionId);
+        loadedSessions.remove(sessionId);
+        File file = new File(messagesDir, sessionId + ".json");
+        diskExecutor.execute(file::delete);
+    }
+
+    private static String sortKey(long timestamp, String id) {
+        return String.format("%016d|%s", timestamp, id);
+    }
+
+    private static long messageTime(JSONObject info) {
+        JSONObject time = info.optJSONObject("time");
+        return time != null ? time.optLong("created") : 0;
+    }
+
+    private static String collectText(JSONArray parts) {
+        if (parts == null) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < parts.length(); i++) {
+            JSONObject part = parts.optJSONObject(i);
+            if (part != null && "text".equals(part.optString("type"))) {
+                text.append(part.optString("text"));
+            }
+        }
+        return text.toString();
+    }
+
+    // ---- Persistence ----
+
+    private synchronized TreeMap<String, Message> ensureMessagesLoaded(String sessionId) {
+        TreeMap<String, Message> messages = messagesBySession.get(sessionId);
+        if (messages == null) {
+            messages = new TreeMap<>();
+            messagesBySession.put(sessionId, messages);
+        }
+        if (loadedSessions.add(sessionId)) {
+            readMessages(sessionId, messages);
+        }
+        return messages;
+    }
+
+    private void loadSessions() {
+        String content = readString(new File(storeDir, "sessions.json"));
+        if (content == null) {
+            return;
+        }
+        try {
+            JSONArray array = new JSONObject(content).getJSONArray("sessions");
+            synchronized (this) {
+                for (int i = 0; i < array.length(); i++) {
+                    JSONObject json = array.getJSONObject(i);
+                    sessions.put(json.getString("id"), new Session(json.getString("id"),
+                            json.optString("title"), json.optString("directory", null),
+                            json.optLong("created"), json.optLong("updated")));
+                }
+            }
+            Log.d(TAG, "Loaded " + array.length() + " cached sessions");
+        } catch (JSONException e) {
+            Log.w(TAG, "Discarding unreadable session cache", e);
+        }
+    }
+
+    private void readMessages(String sessionId, TreeMap<String, Message> into) {
+        String content = readString(new File(messagesDir, sessionId + ".json"));
+        if (content == null) {
+            return;
+        }
+        try {
+            JSONObject json = new JSONObject(content);
+            JSONArray array = json.getJSONArray("messages");
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject item = array.getJSONObject(i);
+                Message message = new Message(item.getString("id"), sessionId,
+                        item.optString("content"), item.optInt("type"), item.optLong("time"));
+                String key = sortKey(message.getTimestamp(), message.getId());
+                into.put(key, message);
+                sortKeysById.put(message.getId(), key);
+            }
+            syncCursors.put(sessionId, json.optLong("cursor"));
+        } catch (JSONException e) {
+            Log.w(TAG, "Discarding unreadable message cache for " + sessionId, e);
+        }
+    }
+
+    private void persistSessions() {
+        JSONObject json = new JSONObject();
+        try {
+            JSONArray array = new JSONArray();
+            for (Session session : getSessions()) {
+                JSONObject item = new JSONObject();
+                item.put("id", session.getId());
+                item.put("title", session.getTitle());
+                item.put("directory", session.getDirectory());
+                item.put("created", session.getCreatedAt());
+                item.put("updated", session.getUpdatedAt());
+                array.put(item);
+            }
+            json.put("sessions", array);
+        } catch (JSONException e) {
+            Log.w(TAG, "Failed to serialize sessions", e);
+            return;
+        }
+        File file = new File(storeDir, "sessions.json");
+        diskExecutor.execute(() -> writeString(file, json.toString()));
+    }
+
+    private void persistMessages(String sessionId) {
+        JSONObject json = new JSONObject();
+        synchronized (this) {
+            pendingPersist.remove(sessionId);
+            TreeMap<String, Message> messages = messagesBySession.get(sessionId);
+            if (messages == null) {
+                return;
+            }
+            try {
+                JSONArray array = new JSONArray();
+                for (Message message : messages.values()) {
+                    JSONObject item = new JSONObject();
+                    item.put("id", message.getId());
+                    item.put("content", message.getContent());
+                    item.put("type", message.getType());
+                    item.put("time", message.getTimestamp());
+                    array.put(item);
+                }
+                json.put("messages", array);
+                Long cursor = syncCursors.get(sessionId);
+                json.put("cursor", cursor != null ? cursor : 0);
+            } catch (JSONException e) {
+                Log.w(TAG, "Failed to serialize messages", e);
+                return;
+            }
+        }
+        File file = new File(messagesDir, sessionId + ".json");
+        diskExecutor.execute(() -> writeString(file, json.toString()));
+    }
+
+    private static String readString(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        byte[] data = new byte[(int) file.length()];
+        try (FileInputStream fis = new FileInputStream(file)) {
+            int total = 0;
+            while (total < data.length) {
+                int read = fis.read(data, total, data.length - total);
+                if (read == -1) break;
+                total += read;
+            }
+            return new String(data, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeString(File file, String content) {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp)) {
+            fos.write(content.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write " + file.getName(), e);
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
+    }
+
+    // ---- Notification ----
+
+    private void notifySessionsChanged() {
+        mainHandler.post(() -> {
+            for (StoreListener listener : listeners) {
+                listener.onSessionsChanged();
+            }
+        });
+    }
+
+    private void notifyMessagesChanged(String sessionId) {
+        mainHandler.post(() -> {
+            for (StoreListener listener : listeners) {
+                listener.onMessagesChanged(sessionId);
+            }
+        });
+    }
+
+    private void deliverSynced(SyncCallback callback, boolean changed) {
+        if (callback != null) {
+            mainHandler.post(() -> callback.onSynced(changed));
+        }
+    }
+
+    private void deliverError(SyncCallback callback, String error) {
+        Log.w(TAG, error);
+        if (callback != null) {
+            mainHandler.post(() -> callback.onError(error));
+        }
+    }
+}
@@ -13,8 +13,17 @@ import com.opencode.voiceassist.utils.Constants;
 import com.opencode.voiceassist.utils.FileManager;
 
 import java.io.File;
+import java.util.HashSet;
 import java.util.Locale;
+import java.util.Set;
+import java.util.TreeMap;
 
+/**
+ * 录音按钮交互与识别流程
+ * - 每次按住说话是一个独立的录音（take），有自己的 WAV 文件；松开后收尾和识别都在后台进行，
+ *   不等上一次完成即可再次按下
+ * - 识别结果按按下的先后顺序交付
+ */
 public class RecordingManager implements AudioProcessorCallback {
     private static final String TAG = "RecordingManager";
     
@@ -27,6 +36,9 @@ public class RecordingManager implements AudioProcessorCallback {
     
     private AsrEngine currentAsrEngine;
     private AudioProcessor audioProcessor;
+    private KeywordSpotter keywordSpotter;
+    private ContinuousDictationManager dictationManager;
+    private boolean continuousMode = false;
     
     private boolean isRecording = false;
     private boolean isCancelled = false;
@@ -36,6 +48,14 @@ public class RecordingManager implements AudioProcessorCallback {
     
     private boolean hardwareNoiseSuppressionEnabled = true;
     
+    // Take bookkeeping, main thread only
+    private int nextTakeSequence = 0;
+    private int nextTakeToDeliver = 0;
+    private int currentTake = -1;
+    private int pendingTakes = 0;
+    private final Set<Integer> cancelledTakes = new HashSet<>();
+    private final TreeMap<Integer, Runnable> finishedTakes = new TreeMap<>();
+    
     private View recordButton;
     private View recordProgress;
     
@@ -43,6 +63,8 @@ public class RecordingManager implements AudioProcessorCallback {
         void onRecordingStateChanged(ButtonState state);
         void onTranscriptionComplete(TranscriptionResult result);
         void onTranscriptionError(String error);
+        void onVoiceCommand(KeywordSpotter.Command command);
+        void onDictationText(String text);
         void onOpenCodeInitialized(boolean success, String message);
     }
     
@@ -59,10 +81,27 @@ public class RecordingManager implements AudioProcessorCallback {
     public void setManagers(AudioRecorder audioRecorder, FileManager fileManager) {
         this.audioRecorder = audioRecorder;
         this.fileManager = fileManager;
+        this.dictationManager = new ContinuousDictationManager(activity, audioRecorder, dictationListener);
+        dictationManager.setAsrEngine(currentAsrEngine);
     }
     
     public void setAsrEngine(AsrEngine asrEngine) {
         this.currentAsrEngine = asrEngine;
+        if (dictationManager != null) {
+            dictationManager.setAsrEngine(asrEngine);
+        }
+    }
+    
+    /**
+     * 连续听写模式：点击录音按钮开始/停止，按静音自动分句识别，而不是按住说话
+     */
+    public void setContinuousMode(boolean enabled) {
+        if (!enabled && dictationManager != null && dictationManager.isActive()) {
+            dictationManager.stop();
+            isRecording = false;
+            updateButtonState(ButtonState.DEFAULT);
+        }
+        this.continuousMode = enabled;
     }
     
     public void setAudioProcessor(AudioProcessor processor) {
@@ -72,6 +111,13 @@ public class RecordingManager implements AudioProcessorCallback {
         }
     }
     
+    /**
+     * 设置后短语音先做本地命令匹配，ASR 结果为命令词时也按命令执行；传 null 关闭语音命令
+     */
+    public void setKeywordSpotter(KeywordSpotter keywordSpotter) {
+        this.keywordSpotter = keywordSpotter;
+    }
+    
     public void setHardwareNoiseSuppressionEnabled(boolean enabled) {
         this.hardwareNoiseSuppressionEnabled = enabled;
     }
@@ -102,10 +148,15 @@ public class RecordingManager implements AudioProcessorCallback {
         }
         
         recordButton.setOnTouchListener((v, event) -> {
+            if (continuousMode) {
+                if (event.getAction() == MotionEvent.ACTION_UP) {
+                    toggleContinuousDictation();
+                }
+                return true;
+            }
             switch (event.getAction()) {
                 case MotionEvent.ACTION_DOWN:
                     startY = event.getY();
-                    cancelOngoingTasks();
                     startRecording();
                     return true;
                     
@@ -139,29 +190,84 @@ public class RecordingManager implements AudioProcessorCallback {
         });
     }
     
-    private void startRecording() {
-        Log.d(TAG, "startRecording() called");
-        
+    private void toggleContinuousDictation() {
+        if (dictationManager == null) {
+            return;
+        }
+        if (dictationManager.isActive()) {
+            dictationManager.stop();
+            isRecording = false;
+            updateButtonState(ButtonState.DEFAULT);
+            return;
+        }
+        if (audioRecorder.isRecording()) {
+            Log.w(TAG, "Recorder still busy, cannot start continuous dictation");
+            return;
+        }
         cancelOngoingTasks();
-        
         isRecording = true;
-        isCancelled = false;
+        dictationManager.start();
         updateButtonState(ButtonState.RECORDING);
+        mainHandler.post(() -> Toast.makeText(activity, "连续听写中，再次点击停止", Toast.LENGTH_SHORT).show());
+    }
+    
+    private final ContinuousDictationManager.DictationListener dictationListener =
+            new ContinuousDictationManager.DictationListener() {
+        @Override
+        public void onUtteranceText(String text) {
+            Log.d(TAG, "Dictated: " + text);
+            KeywordSpotter.Command command = keywordSpotter != null ? KeywordSpotter.parseCommand(text) : null;
+            if (callback == null) {
+                return;
+            }
+            if (command != null) {
+                callback.onVoiceCommand(command);
+            } else {
+                callback.onDictationText(text);
+            }
+        }
         
-        File wavFile = fileManager.getTempWavFile();
-        Log.d(TAG, "WAV file path: " + wavFile.getAbsolutePath());
-        
-        if (wavFile.exists()) {
-            Log.d(TAG, "Deleting previous WAV file");
-            wavFile.delete();
+        @Override
+        public void onUtteranceError(String error) {
+            Log.w(TAG, "Dictation segment failed: " + error);
         }
+    };
+    
+    private void startRecording() {
+        Log.d(TAG, "startRecording() called");
         
         if (audioProcessor != null) {
             audioRecorder.setAudioProcessor(audioProcessor);
         }
         
-        audioRecorder.startRecording(wavFile);
-        Log.d(TAG, "AudioRecorder started");
+        File wavFile = fileManager.createSessionWavFile();
+        int sequence = nextTakeSequence;
+        KeywordSpotter spotter = keywordSpotter;
+        boolean started = audioRecorder.startRecording(wavFile, new AudioRecorder.SessionCallback() {
+            @Override
+            public void onCaptureEnded() {
+                if (spotter != null) {
+                    spotter.claimUtterance(sequence);
+                }
+            }
+            
+            @Override
+            public void onSessionFinished(File file, long audioBytes) {
+                mainHandler.post(() -> onTakeCaptured(sequence, file, audioBytes));
+            }
+        });
+        if (!started) {
+            Log.w(TAG, "AudioRecorder refused to start");
+            return;
+        }
+        Log.d(TAG, "AudioRecorder started, take " + sequence + ": " + wavFile.getName());
+        
+        nextTakeSequence++;
+        currentTake = sequence;
+        pendingTakes++;
+        isRecording = true;
+        isCancelled = false;
+        updateButtonState(ButtonState.RECORDING);
     }
     
     public void stopRecording() {
@@ -176,105 +282,133 @@ public class RecordingManager implements AudioProcessorCallback {
         isRecording = false;
         isUserStoppedRecording = false;
         
+        // Finalization and transcription continue in the background; the button is free immediately
+        audioRecorder.stopRecording();
+        
         if (isCancelled) {
             Log.d(TAG, "Recording was cancelled");
-            audioRecorder.stopRecording();
-            fileManager.deleteTempWavFile();
-            mainHandler.post(() -> Toast.makeText(activity, "已取消录音", Toast.LENGTH_SHORT).show());
-            updateButtonState(ButtonState.DEFAULT);
-            return;
+            cancelledTakes.add(currentTake);
+            Toast.makeText(activity, "已取消录音", Toast.LENGTH_SHORT).show();
         }
-        
-        updateButtonState(ButtonState.PROCESSING);
-        Log.d(TAG, "Stopping audio recorder...");
-        audioRecorder.stopRecording();
-        
-        // Wait for recorder to finish writing file
-        int waitCount = 0;
-        while (!audioRecorder.isReady() && waitCount < 50) {
-            try {
-                Thread.sleep(100);
-                waitCount++;
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            }
+        settleButtonState();
+    }
+    
+    /**
+     * 主线程调用：一次录音的 WAV 已收尾
+     */
+    private void onTakeCaptured(int sequence, File wavFile, long audioBytes) {
+        if (cancelledTakes.remove(sequence)) {
+            wavFile.delete();
+            completeTake(sequence, null);
+            return;
         }
-        Log.d(TAG, "AudioRecorder stopped after " + waitCount + " waits");
-        
-        releaseRecordingResources();
         
-        File wavFile = fileManager.getTempWavFile();
-        Log.d(TAG, "Checking WAV file: " + wavFile.getAbsolutePath());
-        Log.d(TAG, "File exists: " + wavFile.exists() + ", size: " + (wavFile.exists() ? wavFile.length() : 0) + " bytes");
-        
-        if (!wavFile.exists() || wavFile.length() == 0) {
+        Log.d(TAG, "Take " + sequence + " captured: " + wavFile.getName() + ", " + wavFile.length() + " bytes");
+        if (audioBytes == 0 || !wavFile.exists() || wavFile.length() == 0) {
             Log.e(TAG, "WAV file is empty or doesn't exist");
-            mainHandler.post(() -> Toast.makeText(activity, "录音失败，请重试", Toast.LENGTH_SHORT).show());
-            updateButtonState(ButtonState.DEFAULT);
+            wavFile.delete();
+            completeTake(sequence, () -> Toast.makeText(activity, "录音失败，请重试", Toast.LENGTH_SHORT).show());
             return;
         }
         
         if (wavFile.length() < 44) {
             Log.e(TAG, "WAV file too small for header: " + wavFile.length() + " bytes");
-            mainHandler.post(() -> Toast.makeText(activity, "录音文件格式错误", Toast.LENGTH_SHORT).show());
-            updateButtonState(ButtonState.DEFAULT);
+            wavFile.delete();
+            completeTake(sequence, () -> Toast.makeText(activity, "录音文件格式错误", Toast.LENGTH_SHORT).show());
+            return;
+        }
+        
+        KeywordSpotter.Command command = keywordSpotter != null ? keywordSpotter.consumeMatch(sequence) : null;
+        if (command != null) {
+            Log.d(TAG, "Voice command matched locally, skipping ASR: " + command);
+            wavFile.delete();
+            completeTake(sequence, () -> {
+                if (callback != null) {
+                    callback.onVoiceCommand(command);
+                }
+            });
             return;
         }
         
         Log.d(TAG, "WAV file looks good, starting transcription...");
         
-        startTranscription(wavFile);
+        startTranscription(sequence, wavFile);
     }
     
-    private void startTranscription(File wavFile) {
+    private void startTranscription(int sequence, File wavFile) {
         if (currentAsrEngine == null) {
             Log.e(TAG, "No ASR engine configured");
-            mainHandler.post(() -> {
-                Toast.makeText(activity, "未配置ASR引擎", Toast.LENGTH_SHORT).show();
-                updateButtonState(ButtonState.DEFAULT);
-            });
-            fileManager.deleteTempWavFile();
+            wavFile.delete();
+            completeTake(sequence, () -> Toast.makeText(activity, "未配置ASR引擎", Toast.LENGTH_SHORT).show());
             return;
         }
         
         currentAsrEngine.transcribe(wavFile, new AsrEngine.AsrCallback() {
             @Override
             public void onSuccess(TranscriptionResult result) {
-                File savedFile = fileManager.saveRecordingCopy(hardwareNoiseSuppressionEnabled);
+                File savedFile = fileManager.saveRecordingCopy(wavFile, hardwareNoiseSuppressionEnabled);
                 if (savedFile != null) {
                     Log.d(TAG, "Recording saved to: " + savedFile.getAbsolutePath());
                     mainHandler.post(() -> Toast.makeText(activity, "录音已保存: " + savedFile.getName(), Toast.LENGTH_SHORT).show());
                 }
-                fileManager.deleteTempWavFile();
+                wavFile.delete();
                 Log.d(TAG, "ASR result: " + result.getText());
-                mainHandler.post(() -> processTranscribedText(result));
+                mainHandler.post(() -> completeTake(sequence, () -> processTranscribedText(sequence, result)));
             }
             
             @Override
             public void onError(String error) {
-                File savedFile = fileManager.saveRecordingCopy(hardwareNoiseSuppressionEnabled);
+                File savedFile = fileManager.saveRecordingCopy(wavFile, hardwareNoiseSuppressionEnabled);
                 if (savedFile != null) {
                     Log.d(TAG, "Recording saved to: " + savedFile.getAbsolutePath());
                 }
-                fileManager.deleteTempWavFile();
+                wavFile.delete();
                 Log.e(TAG, "ASR error: " + error);
-                mainHandler.post(() -> {
+                mainHandler.post(() -> completeTake(sequence, () -> {
                     Toast.makeText(activity, "语音识别失败: " + error, Toast.LENGTH_SHORT).show();
-                    updateButtonState(ButtonState.DEFAULT);
                     if (callback != null) {
                         callback.onTranscriptionError(error);
                     }
-                });
+                }));
             }
         });
     }
     
-    private void processTranscribedText(TranscriptionResult result) {
+    /**
+     * 主线程调用：记录一次录音的最终结果，并按按下顺序交付所有已就绪的结果
+     */
+    private void completeTake(int sequence, Runnable delivery) {
+        finishedTakes.put(sequence, delivery);
+        while (finishedTakes.containsKey(nextTakeToDeliver)) {
+            Runnable ready = finishedTakes.remove(nextTakeToDeliver);
+            nextTakeToDeliver++;
+            pendingTakes--;
+            if (ready != null) {
+                ready.run();
+            }
+        }
+        settleButtonState();
+    }
+    
+    private void settleButtonState() {
+        if (isRecording) {
+            return;
+        }
+        updateButtonState(pendingTakes > 0 ? ButtonState.PROCESSING : ButtonState.DEFAULT);
+    }
+    
+    private void processTranscribedText(int sequence, TranscriptionResult result) {
         String text = result.getText();
         Log.d(TAG, "Processing transcribed text: " + text);
         
-        updateButtonState(ButtonState.DEFAULT);
+        KeywordSpotter.Command command = keywordSpotter != null ? keywordSpotter.learn(sequence, text) : null;
+        if (command != null) {
+            Log.d(TAG, "Transcript is a voice command: " + command);
+            if (callback != null) {
+                callback.onVoiceCommand(command);
+            }
+            return;
+        }
         
         if (callback != null) {
             callback.onTranscriptionComplete(result);
@@ -320,27 +454,10 @@ public class RecordingManager implements AudioProcessorCallback {
         });
     }
     
-    private void releaseRecordingResources() {
-        Log.d(TAG, "Releasing recording resources...");
-
-        if (audioRecorder != null) {
-            int waitCount = 0;
-            while (audioRecorder.isRecording() && waitCount < 50) {
-                try {
-                    Thread.sleep(10);
-                    waitCount++;
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
-            }
-            Log.d(TAG, "AudioRecorder released after " + waitCount + " waits");
-        }
-
-        Log.d(TAG, "Recording resources released");
-    }
-
     public void release() {
+        if (dictationManager != null) {
+            dictationManager.cancel();
+        }
         if (audioRecorder != null) {
             audioRecorder.release();
         }
@@ -35,6 +35,8 @@ public class SettingsManager {
         void onSettingsSaved(SettingsData settings);
         void onShowReloginDialog();
         void onRefreshPage();
+        void onRunLocalBenchmark();
+        void onToggleNativeView();
         void onUpdateButtonState(RecordingManager.ButtonState state);
         void onShowToast(String message, int duration);
     }
@@ -45,6 +47,12 @@ public class SettingsManager {
         public String opencodeUsername;
         public String opencodePassword;
         public boolean autoSend;
+        public boolean directSubmit;
+        public boolean voiceCommands;
+        public boolean continuousDictation;
+        public boolean warmCapture;
+        public boolean localAsrFirst;
+        public boolean speculativeDecoding;
         public String asrBackend;
         public String cloudAsrUrl;
         public String funAsrUrl;
@@ -74,6 +82,9 @@ public class SettingsManager {
     public void showPopupMenu(View anchorView) {
         PopupMenu popupMenu = new PopupMenu(activity, anchorView);
         popupMenu.getMenuInflater().inflate(R.menu.menu_main, popupMenu.getMenu());
+        // Nothing to compare until the loaded library can speculate
+        popupMenu.getMenu().findItem(R.id.menu_local_benchmark)
+                .setVisible(LocalWhisperAsrEngine.speculativeDecodingSupported());
         
         popupMenu.setOnMenuItemClickListener(item -> {
             int itemId = item.getItemId();
@@ -91,6 +102,16 @@ public class SettingsManager {
                 Log.d(TAG, "Manual re-login requested");
                 showReloginDialog();
                 return true;
+            } else if (itemId == R.id.menu_native_view) {
+                if (callback != null) {
+                    callback.onToggleNativeView();
+                }
+                return true;
+            } else if (itemId == R.id.menu_local_benchmark) {
+                if (callback != null) {
+                    callback.onRunLocalBenchmark();
+                }
+                return true;
             }
             return false;
         });
@@ -135,6 +156,12 @@ public class SettingsManager {
             RadioButton rbFunasrMode2pass = view.findViewById(R.id.rb_funasr_mode_2pass);
 
             android.widget.CheckBox cbAutoSend = view.findViewById(R.id.cb_auto_send);
+            android.widget.CheckBox cbDirectSubmit = view.findViewById(R.id.cb_direct_submit);
+            android.widget.CheckBox cbVoiceCommands = view.findViewById(R.id.cb_voice_commands);
+            android.widget.CheckBox cbContinuousDictation = view.findViewById(R.id.cb_continuous_dictation);
+            android.widget.CheckBox cbWarmCapture = view.findViewById(R.id.cb_warm_capture);
+            android.widget.CheckBox cbLocalAsrFirst = view.findViewById(R.id.cb_local_asr_first);
+            android.widget.CheckBox cbSpeculativeDecoding = view.findViewById(R.id.cb_speculative_decoding);
             
             RadioGroup rgAudioProcessor = view.findViewById(R.id.rg_audio_processor);
             RadioButton rbProcessorDirect = view.findViewById(R.id.rb_processor_direct);
@@ -148,6 +175,12 @@ public class SettingsManager {
             String savedUsername = prefs.getString("opencode_username", Constants.DEFAULT_OPENCODE_USERNAME);
             String savedPassword = prefs.getString("opencode_password", Constants.DEFAULT_OPENCODE_PASSWORD);
             boolean autoSendEnabled = prefs.getBoolean(Constants.KEY_AUTO_SEND, Constants.DEFAULT_AUTO_SEND);
+            boolean directSubmitEnabled = prefs.getBoolean(Constants.KEY_DIRECT_SUBMIT, Constants.DEFAULT_DIRECT_SUBMIT);
+            boolean voiceCommandsEnabled = prefs.getBoolean(Constants.KEY_VOICE_COMMANDS, Constants.DEFAULT_VOICE_COMMANDS);
+            boolean continuousDictationEnabled = prefs.getBoolean(Constants.KEY_CONTINUOUS_DICTATION, Constants.DEFAULT_CONTINUOUS_DICTATION);
+            boolean warmCaptureEnabled = prefs.getBoolean(Constants.KEY_WARM_CAPTURE, Constants.DEFAULT_WARM_CAPTURE);
+            boolean localAsrFirstEnabled = prefs.getBoolean(Constants.KEY_LOCAL_ASR_FIRST, Constants.DEFAULT_LOCAL_ASR_FIRST);
+            boolean speculativeDecodingEnabled = prefs.getBoolean(Constants.KEY_SPECULATIVE_DECODING, Constants.DEFAULT_SPECULATIVE_DECODING);
             
             String asrBackend = prefs.getString("asr_backend", Constants.DEFAULT_ASR_BACKEND);
             String cloudAsrUrl = prefs.getString("cloud_asr_url", Constants.DEFAULT_CLOUD_ASR_URL);
@@ -190,6 +223,16 @@ public class SettingsManager {
             }
             
             cbAutoSend.setChecked(autoSendEnabled);
+            cbDirectSubmit.setChecked(directSubmitEnabled);
+            cbVoiceCommands.setChecked(voiceCommandsEnabled);
+            cbContinuousDictation.setChecked(continuousDictationEnabled);
+            cbWarmCapture.setChecked(warmCaptureEnabled);
+            cbLocalAsrFirst.setChecked(localAsrFirstEnabled);
+            cbSpeculativeDecoding.setChecked(speculativeDecodingEnabled);
+            // Hidden until the loaded library can speculate; the saved value stays as it was
+            int speculativeVisibility = LocalWhisperAsrEngine.speculativeDecodingSupported() ? View.VISIBLE : View.GONE;
+            cbSpeculativeDecoding.setVisibility(speculativeVisibility);
+            view.findViewById(R.id.tv_speculative_decoding_hint).setVisibility(speculativeVisibility);
             
             if (Constants.AUDIO_PROCESSOR_NOISE_REDUCTION.equals(audioProcessor)) {
                 rbProcessorNoiseReduction.setChecked(true);
@@ -270,6 +313,12 @@ boolean newHardwareNS = cbNoiseSuppression.isChecked();
                      settings.opencodeUsername = username;
                      settings.opencodePassword = password;
                      settings.autoSend = autoSendOn;
+                     settings.directSubmit = cbDirectSubmit.isChecked();
+                     settings.voiceCommands = cbVoiceCommands.isChecked();
+                     settings.continuousDictation = cbContinuousDictation.isChecked();
+                     settings.warmCapture = cbWarmCapture.isChecked();
+                     settings.localAsrFirst = cbLocalAsrFirst.isChecked();
+                     settings.speculativeDecoding = cbSpeculativeDecoding.isChecked();
                      settings.asrBackend = newAsrBackend;
                     settings.cloudAsrUrl = newCloudAsrUrl;
                     settings.funAsrUrl = newFunAsrUrl;
@@ -308,6 +357,12 @@ settings.funAsrMode = newFunAsrMode;
         editor.putString("funasr_mode", settings.funAsrMode);
         editor.putString("audio_processor", settings.audioProcessor);
         editor.putBoolean(Constants.KEY_AUTO_SEND, settings.autoSend);
+        editor.putBoolean(Constants.KEY_DIRECT_SUBMIT, settings.directSubmit);
+        editor.putBoolean(Constants.KEY_VOICE_COMMANDS, settings.voiceCommands);
+        editor.putBoolean(Constants.KEY_CONTINUOUS_DICTATION, settings.continuousDictation);
+        editor.putBoolean(Constants.KEY_WARM_CAPTURE, settings.warmCapture);
+        editor.putBoolean(Constants.KEY_LOCAL_ASR_FIRST, settings.localAsrFirst);
+        editor.putBoolean(Constants.KEY_SPECULATIVE_DECODING, settings.speculativeDecoding);
         editor.putBoolean(Constants.KEY_HARDWARE_NS, settings.hardwareNS);
         editor.apply();
         
@@ -0,0 +1,87 @@
+package com.opencode.voiceassist.manager;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 分阶段启动编排
+ * 1. 主线程：视图 + WebView 导航（最先发起网络请求）
+ * 2. 后台线程：读取设置、构建 ASR 引擎和文件管理，完成后回到主线程接入录音按钮
+ * 3. 主线程空闲时：预热 ASR 连接等非关键工作
+ * 并记录 time-to-first-frame 与 time-to-record-ready（从进程启动算起）
+ */
+public class StartupPipeline {
+    private static final String TAG = "StartupPipeline";
+
+    public interface BackgroundTask {
+        void run() throws Exception;
+    }
+
+    private final long processStartUptime = Process.getStartUptimeMillis();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "StartupPipeline");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public void trackFirstFrame(View view) {
+        view.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                view.getViewTreeObserver().removeOnPreDrawListener(this);
+                Log.i(TAG, "time-to-first-frame: " + elapsed() + "ms");
+                return true;
+            }
+        });
+    }
+
+    /**
+     * 在后台线程执行 task，成功后在主线程执行 onReady；失败时在主线程执行 onError
+     */
+    public void runInBackground(String stage, BackgroundTask task, Runnable onReady, Runnable onError) {
+        executor.execute(() -> {
+            long start = SystemClock.uptimeMillis();
+            try {
+                task.run();
+                Log.d(TAG, "Stage '" + stage + "' finished in " + (SystemClock.uptimeMillis() - start) + "ms");
+                mainHandler.post(onReady);
+            } catch (Exception e) {
+                Log.e(TAG, "Stage '" + stage + "' failed", e);
+                if (onError != null) {
+                    mainHandler.post(onError);
+                }
+            }
+        });
+    }
+
+    /**
+     * 在主线程消息队列空闲时执行
+     */
+    public void runWhenIdle(Runnable task) {
+        Looper.getMainLooper().getQueue().addIdleHandler(() -> {
+            task.run();
+            return false;
+        });
+    }
+
+    public void markRecordReady() {
+        Log.i(TAG, "time-to-record-ready: " + elapsed() + "ms");
+    }
+
+    public void release() {
+        executor.shutdown();
+    }
+
+    private long elapsed() {
+        return SystemClock.uptimeMillis() - processStartUptime;
+    }
+}
@@ -0,0 +1,130 @@
+package com.opencode.voiceassist.manager;
+
+import android.util.Log;
+
+import com.opencode.voiceassist.model.TranscriptionResult;
+
+import java.io.File;
+
+/**
+ * 分级识别：短语音先用端侧小模型识别，置信度达标直接返回；否则（或本地不可用）再交给服务端引擎
+ * - 置信度：按时长加权的平均 token 对数概率、最大无语音概率；没有概率信息视为不达标
+ * - 超过 MAX_LOCAL_SECONDS 的录音直接走服务端，端侧小模型对长句既慢又不准
+ * - 设备过热、电量低或本地实时率变差时也直接走服务端
+ * - 原生库给不出分段概率时本地结果永远不达标，端侧这一级直接跳过，避免每段录音都白等一次本地识别
+ */
+public class TieredAsrEngine implements AsrEngine {
+    private static final String TAG = "TieredAsrEngine";
+
+    private static final int WAV_HEADER_SIZE = 44;
+    private static final int BYTES_PER_SECOND = 16000 * 2;
+
+    private static final double MAX_LOCAL_SECONDS = 8.0;
+    // whisper.cpp's own fallback threshold is -1.0; accepting locally needs a clear margin
+    private static final double MIN_AVG_LOG_PROB = -0.5;
+    private static final double MAX_NO_SPEECH_PROB = 0.6;
+
+    private final LocalWhisperAsrEngine local;
+    private final AsrEngine remote;
+
+    public TieredAsrEngine(LocalWhisperAsrEngine local, AsrEngine remote) {
+        this.local = local;
+        this.remote = remote;
+    }
+
+    public AsrEngine getRemote() {
+        return remote;
+    }
+
+    @Override
+    public void transcribe(File wavFile, AsrCallback callback) {
+        double seconds = wavFile != null ? (wavFile.length() - WAV_HEADER_SIZE) / (double) BYTES_PER_SECOND : 0;
+        if (!shouldTryLocal(seconds)) {
+            remote.transcribe(wavFile, callback);
+            return;
+        }
+        local.transcribe(wavFile, escalatingCallback(callback, () -> remote.transcribe(wavFile, callback)));
+    }
+
+    @Override
+    public void transcribe(byte[] pcmData, AsrCallback callback) {
+        double seconds = pcmData != null ? pcmData.length / (double) BYTES_PER_SECOND : 0;
+        if (!shouldTryLocal(seconds)) {
+            remote.transcribe(pcmData, callback);
+            return;
+        }
+        local.transcribe(pcmData, escalatingCallback(callback, () -> remote.transcribe(pcmData, callback)));
+    }
+
+    private boolean shouldTryLocal(double seconds) {
+        return seconds > 0 && seconds <= MAX_LOCAL_SECONDS && localTierUsable();
+    }
+
+    private boolean localTierUsable() {
+        return local.isAvailable() && local.reportsConfidence() && local.shouldRunLocally();
+    }
+
+    private AsrCallback escalatingCallback(AsrCallback callback, Runnable escalate) {
+        return new AsrCallback() {
+            @Override
+            public void onSuccess(TranscriptionResult result) {
+                if (isConfident(result)) {
+                    Log.d(TAG, "Accepted local result in " + result.getProcessingTimeMs() + "ms: " + result.getText());
+                    callback.onSuccess(result);
+                } else {
+                    Log.d(TAG, "Local result not confident (logp=" + result.getAverageLogProb()
+                            + ", nsp=" + result.getMaxNoSpeechProb() + "), escalating");
+                    escalate.run();
+                }
+            }
+
+            @Override
+            public void onError(String error) {
+                if ("转录被取消".equals(error)) {
+                    callback.onError(error);
+                    return;
+                }
+                Log.d(TAG, "Local transcription failed (" + error + "), escalating");
+                escalate.run();
+            }
+        };
+    }
+
+    private static boolean isConfident(TranscriptionResult result) {
+        if (result.getText() == null || result.getText().trim().isEmpty()) {
+            return false;
+        }
+        double logProb = result.getAverageLogProb();
+        double noSpeech = result.getMaxNoSpeechProb();
+        // NaN (no probabilities from an older native library) fails both comparisons
+        return logProb >= MIN_AVG_LOG_PROB && noSpeech <= MAX_NO_SPEECH_PROB;
+    }
+
+    @Override
+    public void cancel() {
+        local.cancel();
+        remote.cancel();
+    }
+
+    @Override
+    public void warmUp() {
+        remote.warmUp();
+        local.warmUp();
+    }
+
+    @Override
+    public int getMaxConcurrentRequests() {
+        int remoteLimit = remote.getMaxConcurrentRequests();
+        if (!localTierUsable()) {
+            return remoteLimit;
+        }
+        // Short clips go to the local state pool first; either tier may be the one that takes them
+        return Math.max(local.getMaxConcurrentRequests(), remoteLimit);
+    }
+
+    @Override
+    public void release() {
+        local.release();
+        remote.release();
+    }
+}
@@ -0,0 +1,191 @@
+package com.opencode.voiceassist.manager;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.opencode.voiceassist.model.TranscriptionResult;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 转录结果缓存（按音频内容寻址）
+ * - 键：去除首尾静音后的 PCM 的 SHA-256（加引擎命名空间）
+ * - 内存层：固定容量 LRU
+ * - 磁盘层：cacheDir/transcripts/*.json，超出容量时按最近访问时间淘汰
+ */
+public class TranscriptCache {
+    private static final String TAG = "TranscriptCache";
+
+    private static final int MEMORY_CAPACITY = 64;
+    private static final int DISK_CAPACITY = 500;
+
+    // 20ms frames at 16kHz, 16-bit mono
+    private static final int FRAME_BYTES = 640;
+    private static final int SILENCE_RMS_THRESHOLD = 300;
+
+    private final File diskDir;
+    private final Map<String, TranscriptionResult> memoryCache =
+            new LinkedHashMap<String, TranscriptionResult>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, TranscriptionResult> eldest) {
+                    return size() > MEMORY_CAPACITY;
+                }
+            };
+
+    public TranscriptCache(Context context) {
+        this.diskDir = new File(context.getCacheDir(), "transcripts");
+        if (!diskDir.exists()) {
+            diskDir.mkdirs();
+        }
+    }
+
+    /**
+     * 计算 PCM 指纹：先裁掉首尾静音帧，使同一段语音在录音起止略有差异时仍能命中
+     *
+     * @return null 表示整段都是静音，不应缓存（否则所有静音录音共用同一个键）
+     */
+    public static String fingerprint(String namespace, byte[] pcmData) {
+        int start = 0;
+        int end = pcmData.length - (pcmData.length % 2);
+        while (start + FRAME_BYTES <= end && isSilentFrame(pcmData, start, start + FRAME_BYTES)) {
+            start += FRAME_BYTES;
+        }
+        while (end - FRAME_BYTES >= start && isSilentFrame(pcmData, end - FRAME_BYTES, end)) {
+            end -= FRAME_BYTES;
+        }
+        if (start >= end) {
+            return null;
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(namespace.getBytes(StandardCharsets.UTF_8));
+            digest.update(pcmData, start, end - start);
+            byte[] hash = digest.digest();
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static boolean isSilentFrame(byte[] pcm, int from, int to) {
+        long sumSquares = 0;
+        int samples = 0;
+        for (int i = from; i + 1 < to; i += 2) {
+            int sample = (short) ((pcm[i] & 0xFF) | (pcm[i + 1] << 8));
+            sumSquares += (long) sample * sample;
+            samples++;
+        }
+        return samples == 0 || Math.sqrt((double) sumSquares / samples) < SILENCE_RMS_THRESHOLD;
+    }
+
+    public TranscriptionResult get(String key) {
+        synchronized (memoryCache) {
+            TranscriptionResult cached = memoryCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        File file = new File(diskDir, key + ".json");
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            TranscriptionResult result = readEntry(file);
+            file.setLastModified(System.currentTimeMillis());
+            synchronized (memoryCache) {
+                memoryCache.put(key, result);
+            }
+            return result;
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Dropping unreadable cache entry: " + file.getName(), e);
+            file.delete();
+            return null;
+        }
+    }
+
+    public void put(String key, TranscriptionResult result) {
+        if (result == null || result.getText() == null) {
+            return;
+        }
+        synchronized (memoryCache) {
+            memoryCache.put(key, result);
+        }
+        try {
+            writeEntry(new File(diskDir, key + ".json"), result);
+            trimDisk();
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Failed to persist cache entry", e);
+        }
+    }
+
+    public void clear() {
+        synchronized (memoryCache) {
+            memoryCache.clear();
+        }
+        File[] files = diskDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private TranscriptionResult readEntry(File file) throws IOException, JSONException {
+        byte[] data = new byte[(int) file.length()];
+        try (FileInputStream fis = new FileInputStream(file)) {
+            int total = 0;
+            while (total < data.length) {
+                int read = fis.read(data, total, data.length - total);
+                if (read == -1) break;
+                total += read;
+            }
+        }
+        JSONObject json = new JSONObject(new String(data, StandardCharsets.UTF_8));
+        return new TranscriptionResult(
+                json.getString("text"),
+                json.optDouble("audioLengthSeconds", 0),
+                json.optLong("processingTimeMs", 0),
+                json.optDouble("realtimeFactor", 0));
+    }
+
+    private void writeEntry(File file, TranscriptionResult result) throws IOException, JSONException {
+        JSONObject json = new JSONObject();
+        json.put("text", result.getText());
+        json.put("audioLengthSeconds", result.getAudioLengthSeconds());
+        json.put("processingTimeMs", result.getProcessingTimeMs());
+        json.put("realtimeFactor", result.getRealtimeFactor());
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            fos.write(json.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void trimDisk() {
+        File[] files = diskDir.listFiles();
+        if (files == null || files.length <= DISK_CAPACITY) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < files.length - DISK_CAPACITY; i++) {
+            files[i].delete();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.opencode.voiceassist.manager;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+
+/**
+ * 基于能量的语音活动检测，把连续录音切分成一句一句
+ * - 30ms 一帧，噪声底噪自适应跟踪；能量超过底噪一定倍数视为语音
+ * - 语音开始前保留 300ms 预录，静音持续 700ms 视为一句结束
+ * - 单句超过 15s 强制切分，避免长句迟迟不能送去识别
+ */
+public class VadSegmenter implements AudioProcessor {
+    private static final String TAG = "VadSegmenter";
+
+    private static final int SAMPLE_RATE = 16000;
+    private static final int FRAME_BYTES = SAMPLE_RATE * 30 / 1000 * 2;
+    private static final int PRE_ROLL_FRAMES = 10;
+    private static final int HANGOVER_FRAMES = 23;
+    private static final int MIN_SPEECH_FRAMES = 10;
+    private static final int MAX_SEGMENT_FRAMES = 500;
+
+    // Speech when frame energy exceeds the tracked noise floor by this factor
+    private static final double SPEECH_RATIO = 4.0;
+    private static final double MIN_NOISE_FLOOR = 1e4;
+
+    public interface SegmentListener {
+        /**
+         * 录音线程调用，pcm 为 16kHz 16bit 单声道
+         */
+        void onSegment(byte[] pcm);
+    }
+
+    private final SegmentListener listener;
+    private AudioProcessorCallback callback;
+
+    private final byte[] frame = new byte[FRAME_BYTES];
+    private int frameFill = 0;
+    private final ArrayDeque<byte[]> preRoll = new ArrayDeque<>();
+    private final ByteArrayOutputStream segment = new ByteArrayOutputStream();
+    private boolean inSpeech = false;
+    private int speechFrames = 0;
+    private int silentFrames = 0;
+    private int segmentFrames = 0;
+    private double noiseFloor = -1;
+
+    public VadSegmenter(SegmentListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void setCallback(AudioProcessorCallback callback) {
+        this.callback = callback;
+    }
+
+    @Override
+    public void processAudio(byte[] pcmData) {
+        int offset = 0;
+        while (offset < pcmData.length) {
+            int count = Math.min(FRAME_BYTES - frameFill, pcmData.length - offset);
+            System.arraycopy(pcmData, offset, frame, frameFill, count);
+            frameFill += count;
+            offset += count;
+            if (frameFill == FRAME_BYTES) {
+                processFrame(frame.clone());
+                frameFill = 0;
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (inSpeech) {
+            emitSegment();
+        }
+        preRoll.clear();
+        frameFill = 0;
+        if (callback != null) {
+            callback.onRecordingComplete();
+        }
+    }
+
+    @Override
+    public void release() {
+        callback = null;
+    }
+
+    @Override
+    public String getName() {
+        return "VadSegmenter";
+    }
+
+    private void processFrame(byte[] data) {
+        double energy = energy(data);
+        if (noiseFloor < 0) {
+            noiseFloor = Math.max(energy, MIN_NOISE_FLOOR);
+        }
+        boolean speech = energy > noiseFloor * SPEECH_RATIO;
+        if (!speech) {
+            // Track the floor slowly upward and quickly downward
+            double rate = energy < noiseFloor ? 0.1 : 0.01;
+            noiseFloor = Math.max(MIN_NOISE_FLOOR, noiseFloor + rate * (energy - noiseFloor));
+        }
+
+        if (!inSpeech) {
+            preRoll.addLast(data);
+            if (preRoll.size() > PRE_ROLL_FRAMES) {
+                preRoll.removeFirst();
+            }
+            if (speech) {
+                inSpeech = true;
+                speechFrames = 1;
+                silentFrames = 0;
+                segmentFrames = preRoll.size();
+                segment.reset();
+                for (byte[] buffered : preRoll) {
+                    segment.write(buffered, 0, buffered.length);
+                }
+                preRoll.clear();
+            }
+            return;
+        }
+
+        segment.write(data, 0, data.length);
+        segmentFrames++;
+        if (speech) {
+            speechFrames++;
+            silentFrames = 0;
+        } else {
+            silentFrames++;
+        }
+        if (silentFrames >= HANGOVER_FRAMES || segmentFrames >= MAX_SEGMENT_FRAMES) {
+            emitSegment();
+        }
+    }
+
+    private void emitSegment() {
+        inSpeech = false;
+        if (speechFrames >= MIN_SPEECH_FRAMES) {
+            listener.onSegment(segment.toByteArray());
+        }
+        segment.reset();
+        speechFrames = 0;
+        silentFrames = 0;
+        segmentFrames = 0;
+    }
+
+    private static double energy(byte[] data) {
+        double sum = 0;
+        for (int i = 0; i + 1 < data.length; i += 2) {
+            int sample = (short) ((data[i] & 0xff) | (data[i + 1] << 8));
+            sum += (double) sample * sample;
+        }
+        return sum / (data.length / 2);
+    }
+}
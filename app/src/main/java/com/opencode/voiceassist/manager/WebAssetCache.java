@@ -0,0 +1,373 @@
+package com.opencode.voiceassist.manager;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.CookieManager;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import com.opencode.voiceassist.utils.Constants;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * OpenCode Web UI 静态资源本地缓存（在 shouldInterceptRequest 中使用）
+ * - 只缓存同源 GET 的 JS/CSS/字体/图片，HTML 和 API 请求始终走网络
+ * - 文件名带内容哈希的资源视为不可变，直接从磁盘返回
+ * - 其他资源先返回磁盘副本，再在后台用 ETag/Last-Modified 重新验证（stale-while-revalidate）
+ * - 服务器地址或应用版本变化时整体清空
+ */
+public class WebAssetCache {
+    private static final String TAG = "WebAssetCache";
+
+    private static final long MAX_CACHE_BYTES = 50L * 1024 * 1024;
+    private static final String VERSION_FILE = "cache_version";
+
+    private static final Pattern STATIC_ASSET = Pattern.compile(
+            ".*\\.(js|mjs|css|woff2?|ttf|otf|svg|png|jpe?g|gif|webp|ico|wasm)$", Pattern.CASE_INSENSITIVE);
+    // Vite/Rollup content hash: exactly 8 base64url chars after the last '-' of the file name,
+    // e.g. index-B3x9kQ2a.js. Requiring a digit or capital keeps words like
+    // inter-variable.woff2 or foo-fallback.js from being treated as immutable.
+    private static final Pattern HASHED_ASSET = Pattern.compile(
+            ".*/[^/]*-(?=[A-Za-z0-9_-]{0,7}[A-Z0-9])[A-Za-z0-9_-]{8}\\.[a-z0-9]+$");
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final File cacheDir;
+    private final OkHttpClient client;
+    private final ExecutorService revalidateExecutor = Executors.newSingleThreadExecutor();
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+
+    private volatile String origin;
+    private volatile boolean forceRevalidate = false;
+
+    public WebAssetCache(Context context) {
+        this.context = context.getApplicationContext();
+        this.prefs = context.getSharedPreferences("settings", Context.MODE_PRIVATE);
+        this.cacheDir = new File(context.getCacheDir(), "webassets");
+        if (!cacheDir.exists()) {
+            cacheDir.mkdirs();
+        }
+        this.client = new OkHttpClient.Builder()
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 设置当前服务器地址，与缓存记录的版本（地址 + 应用版本号）不一致时清空缓存
+     */
+    public void setOrigin(String baseUrl) {
+        Uri uri = Uri.parse(baseUrl);
+        String newOrigin = uri.getScheme() + "://" + uri.getAuthority();
+        String version = newOrigin + "|" + getAppVersionCode();
+        File versionFile = new File(cacheDir, VERSION_FILE);
+        if (!version.equals(readString(versionFile))) {
+            Log.d(TAG, "Cache version changed to " + version + ", purging");
+            clear();
+            writeString(versionFile, version);
+        }
+        origin = newOrigin;
+    }
+
+    /**
+     * 下一次页面加载期间，非哈希资源命中时同步重新验证（用户主动刷新时使用）
+     */
+    public void requireRevalidation() {
+        forceRevalidate = true;
+    }
+
+    public void onPageFinished() {
+        forceRevalidate = false;
+    }
+
+    public void clear() {
+        File[] files = cacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    public void release() {
+        revalidateExecutor.shutdown();
+    }
+
+    /**
+     * 在后台线程（WebView IO 线程）调用。返回 null 表示交给 WebView 正常加载
+     */
+    public WebResourceResponse intercept(WebResourceRequest request) {
+        Uri url = request.getUrl();
+        if (!isCacheable(request)) {
+            return null;
+        }
+
+        String urlString = url.toString();
+        String key = hashKey(urlString);
+        File bodyFile = new File(cacheDir, key + ".body");
+        File metaFile = new File(cacheDir, key + ".meta");
+        JSONObject meta = readMeta(metaFile);
+
+        if (meta != null && bodyFile.exists()) {
+            boolean immutable = HASHED_ASSET.matcher(url.getPath()).matches();
+            if (!immutable) {
+                if (forceRevalidate) {
+                    meta = fetch(urlString, bodyFile, metaFile, meta);
+                } else if (revalidating.add(key)) {
+                    JSONObject staleMeta = meta;
+                    revalidateExecutor.execute(() -> {
+                        try {
+                            fetch(urlString, bodyFile, metaFile, staleMeta);
+                        } finally {
+                            revalidating.remove(key);
+                        }
+                    });
+                }
+            }
+            if (meta != null) {
+                bodyFile.setLastModified(System.currentTimeMillis());
+                return toResponse(meta, bodyFile);
+            }
+            return null;
+        }
+
+        meta = fetch(urlString, bodyFile, metaFile, null);
+        return meta != null ? toResponse(meta, bodyFile) : null;
+    }
+
+    private boolean isCacheable(WebResourceRequest request) {
+        Uri url = request.getUrl();
+        String currentOrigin = origin;
+        if (currentOrigin == null || !"GET".equalsIgnoreCase(request.getMethod()) || request.isForMainFrame()) {
+            return false;
+        }
+        if (!currentOrigin.equals(url.getScheme() + "://" + url.getAuthority())) {
+            return false;
+        }
+        String path = url.getPath();
+        return path != null && url.getQuery() == null && STATIC_ASSET.matcher(path).matches();
+    }
+
+    /**
+     * 从网络获取（带条件请求头时为重新验证）。成功返回最新的元数据，失败返回原元数据
+     */
+    private JSONObject fetch(String url, File bodyFile, File metaFile, JSONObject cachedMeta) {
+        Request.Builder builder = new Request.Builder().url(url);
+        addAuthHeaders(builder);
+        String cookies = CookieManager.getInstance().getCookie(url);
+        if (cookies != null) {
+            builder.header("Cookie", cookies);
+        }
+        if (cachedMeta != null) {
+            String etag = cachedMeta.optString("etag", null);
+            String lastModified = cachedMeta.optString("lastModified", null);
+            if (etag != null) {
+                builder.header("If-None-Match", etag);
+            }
+            if (lastModified != null) {
+                builder.header("If-Modified-Since", lastModified);
+            }
+        }
+
+        try (Response response = client.newCall(builder.build()).execute()) {
+            List<String> setCookies = response.headers("Set-Cookie");
+            for (String cookie : setCookies) {
+                CookieManager.getInstance().setCookie(url, cookie);
+            }
+
+            if (response.code() == 304 && cachedMeta != null) {
+                Log.d(TAG, "Not modified: " + url);
+                return cachedMeta;
+            }
+            ResponseBody body = response.body();
+            String cacheControl = response.header("Cache-Control", "");
+            if (response.code() != 200 || body == null || cacheControl.contains("no-store")) {
+                Log.d(TAG, "Not caching " + url + " (HTTP " + response.code() + ")");
+                return cachedMeta;
+            }
+
+            // WebView may request the same asset from several IO threads at once
+            File tempFile = new File(cacheDir, bodyFile.getName() + "." + Thread.currentThread().getId() + ".tmp");
+            try (InputStream in = body.byteStream(); OutputStream out = new FileOutputStream(tempFile)) {
+                byte[] buffer = new byte[16384];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+            }
+
+            JSONObject meta = new JSONObject();
+            MediaType contentType = body.contentType();
+            meta.put("mimeType", contentType != null
+                    ? contentType.type() + "/" + contentType.subtype() : guessMimeType(url));
+            if (contentType != null && contentType.charset() != null) {
+                meta.put("encoding", contentType.charset().name());
+            }
+            meta.put("etag", response.header("ETag"));
+            meta.put("lastModified", response.header("Last-Modified"));
+
+            if (!tempFile.renameTo(bodyFile)) {
+                tempFile.delete();
+                throw new IOException("Failed to commit cache entry for " + url);
+            }
+            writeString(metaFile, meta.toString());
+            Log.d(TAG, (cachedMeta != null ? "Updated: " : "Cached: ") + url + " (" + bodyFile.length() + " bytes)");
+            trim();
+            return meta;
+        } catch (IOException | JSONException e) {
+            Log.w(TAG, "Fetch failed for " + url + ": " + e.getMessage());
+            return cachedMeta;
+        }
+    }
+
+    private void addAuthHeaders(Request.Builder builder) {
+        String username = prefs.getString("opencode_username", Constants.DEFAULT_OPENCODE_USERNAME);
+        String password = prefs.getString("opencode_password", Constants.DEFAULT_OPENCODE_PASSWORD);
+        if (username != null && !username.isEmpty() && password != null) {
+            String credentials = username + ":" + password;
+            String encoded = android.util.Base64.encodeToString(credentials.getBytes(), android.util.Base64.NO_WRAP);
+            builder.header("Authorization", "Basic " + encoded);
+        }
+    }
+
+    private WebResourceResponse toResponse(JSONObject meta, File bodyFile) {
+        try {
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Cache-Control", "no-cache");
+            return new WebResourceResponse(meta.optString("mimeType", "application/octet-stream"),
+                    meta.optString("encoding", null), 200, "OK", headers, new FileInputStream(bodyFile));
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to open cached body", e);
+            return null;
+        }
+    }
+
+    private void trim() {
+        File[] bodies = cacheDir.listFiles((dir, name) -> name.endsWith(".body"));
+        if (bodies == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : bodies) {
+            total += file.length();
+        }
+        if (total <= MAX_CACHE_BYTES) {
+            return;
+        }
+        // Least recently served first
+        Arrays.sort(bodies, Comparator.comparingLong(File::lastModified));
+        for (File body : bodies) {
+            if (total <= MAX_CACHE_BYTES) {
+                break;
+            }
+            total -= body.length();
+            String key = body.getName().substring(0, body.getName().length() - ".body".length());
+            body.delete();
+            new File(cacheDir, key + ".meta").delete();
+        }
+    }
+
+    private static String guessMimeType(String url) {
+        String lower = url.toLowerCase();
+        if (lower.endsWith(".js") || lower.endsWith(".mjs")) return "application/javascript";
+        if (lower.endsWith(".css")) return "text/css";
+        if (lower.endsWith(".svg")) return "image/svg+xml";
+        if (lower.endsWith(".woff2")) return "font/woff2";
+        if (lower.endsWith(".woff")) return "font/woff";
+        if (lower.endsWith(".wasm")) return "application/wasm";
+        return "application/octet-stream";
+    }
+
+    private static String hashKey(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    private long getAppVersionCode() {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).versionCode;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
+
+    private static JSONObject readMeta(File metaFile) {
+        String content = readString(metaFile);
+        if (content == null) {
+            return null;
+        }
+        try {
+            return new JSONObject(content);
+        } catch (JSONException e) {
+            metaFile.delete();
+            return null;
+        }
+    }
+
+    private static String readString(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        byte[] data = new byte[(int) file.length()];
+        try (FileInputStream fis = new FileInputStream(file)) {
+            int total = 0;
+            while (total < data.length) {
+                int read = fis.read(data, total, data.length - total);
+                if (read == -1) break;
+                total += read;
+            }
+            return new String(data, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void writeString(File file, String content) {
+        try (FileOutputStream fos = new FileOutputStream(file)) {
+            fos.write(content.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write " + file.getName(), e);
+        }
+    }
+}
@@ -14,6 +14,7 @@ import android.webkit.ValueCallback;
 import android.webkit.WebChromeClient;
 import android.webkit.WebResourceError;
 import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
@@ -23,10 +24,17 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 
 import com.opencode.voiceassist.utils.Constants;
+import com.opencode.voiceassist.utils.ImageAttachmentProcessor;
+import com.opencode.voiceassist.utils.LocalAttachmentServer;
+import com.opencode.voiceassist.utils.OpenCodeRoute;
 import com.opencode.voiceassist.utils.UrlUtils;
+import com.opencode.voiceassist.utils.VoiceAssistJsBridge;
 import com.opencode.voiceassist.utils.WebViewTextInjector;
 
+import org.json.JSONArray;
+
 import java.io.File;
+import java.util.ArrayDeque;
 import java.util.Map;
 
 import android.database.Cursor;
@@ -39,7 +47,14 @@ public class WebViewManager {
     private final Handler mainHandler;
     private WebView webView;
     private WebViewTextInjector webViewInjector;
+    private LocalAttachmentServer attachmentServer;
+    private ImageAttachmentProcessor imageProcessor;
+    private WebAssetCache assetCache;
+    private OpenCodeManager openCodeManager;
     private WebViewCallback callback;
+    // Dictated segments go in one at a time so a retried insert cannot land after a later one
+    private final ArrayDeque<String> pendingDictation = new ArrayDeque<>();
+    private boolean dictationInFlight = false;
     
     // File upload related fields
     private ValueCallback<Uri[]> filePathCallback;
@@ -90,89 +105,14 @@ public class WebViewManager {
     }
     
     /**
-     * Add image attachment directly via JavaScript call to OpenCode frontend
-     * This bypasses the file chooser dialog security restriction
+     * Add image attachment via the JS bridge: the page fetches the binary from
+     * LocalAttachmentServer instead of receiving Base64 through evaluateJavascript
      */
     private void addImageAttachmentFromUri(Uri imageUri) {
         Log.d(TAG, "addImageAttachmentFromUri: " + imageUri);
-        
-        new Thread(() -> {
-            try {
-                // Read image data
-                byte[] imageData;
-                if ("file".equals(imageUri.getScheme())) {
-                    java.io.File file = new java.io.File(imageUri.getPath());
-                    try (java.io.FileInputStream fis = new java.io.FileInputStream(file)) {
-                        java.io.ByteArrayOutputStream buffer = new java.io.ByteArrayOutputStream();
-                        int nRead;
-                        byte[] data = new byte[1024];
-                        while ((nRead = fis.read(data, 0, data.length)) != -1) {
-                            buffer.write(data, 0, nRead);
-                        }
-                        imageData = buffer.toByteArray();
-                    }
-                } else {
-                    try (java.io.InputStream inputStream = activity.getContentResolver().openInputStream(imageUri)) {
-                        if (inputStream == null) {
-                            Log.e(TAG, "Could not open input stream for URI: " + imageUri);
-                            return;
-                        }
-                        java.io.ByteArrayOutputStream buffer = new java.io.ByteArrayOutputStream();
-                        int nRead;
-                        byte[] data = new byte[1024];
-                        while ((nRead = inputStream.read(data, 0, data.length)) != -1) {
-                            buffer.write(data, 0, nRead);
-                        }
-                        imageData = buffer.toByteArray();
-                    }
-                }
-                
-                // Convert to Base64
-                String base64Data = android.util.Base64.encodeToString(imageData, android.util.Base64.NO_WRAP);
-                
-                // Get filename and mimeType
-                String filename = getFileNameFromUri(imageUri);
-                String mimeType = activity.getContentResolver().getType(imageUri);
-                if (mimeType == null) {
-                    mimeType = "image/jpeg";
-                }
-                if (filename == null) {
-                    filename = "photo_" + System.currentTimeMillis() + "." + mimeType.replace("image/", "");
-                }
-                
-                Log.d(TAG, "Image converted to Base64, length: " + base64Data.length());
-                
-                // Call JavaScript function to add attachment
-                String jsFilename = escapeForJavaScript(filename);
-                String jsMimeType = escapeForJavaScript(mimeType);
-                
-                String js = "if (window.addImageAttachmentFromAndroid) {" +
-                    "  window.addImageAttachmentFromAndroid('" + base64Data + "', '" + jsFilename + "', '" + jsMimeType + "');" +
-                    "} else {" +
-                    "  console.log('[OpenCode] addImageAttachmentFromAndroid not available');" +
-                    "}";
-                
-                mainHandler.post(() -> {
-                    webView.evaluateJavascript(js, result -> {
-                        Log.d(TAG, "addImageAttachmentFromAndroid result: " + result);
-                        // Reset pending state
-                        isCameraUploadPending = false;
-                        cameraUploadUri = null;
-                        
-                        // Show success toast
-                        mainHandler.post(() -> {
-                            Toast.makeText(activity, "照片已添加到输入框", Toast.LENGTH_SHORT).show();
-                        });
-                    });
-                });
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Error adding image attachment", e);
-                mainHandler.post(() -> {
-                    Toast.makeText(activity, "添加照片失败: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                });
-            }
-        }).start();
+        injectImageFromUri(imageUri);
+        isCameraUploadPending = false;
+        cameraUploadUri = null;
     }
     
     public void configureWebView() {
@@ -191,6 +131,10 @@ public class WebViewManager {
         settings.setSupportZoom(true);
         settings.setMediaPlaybackRequiresUserGesture(false);
         
+        attachmentServer = new LocalAttachmentServer(activity);
+        imageProcessor = new ImageAttachmentProcessor(activity);
+        assetCache = new WebAssetCache(activity);
+        
         // Configure WebViewClient for authentication
         webView.setWebViewClient(new WebViewClient() {
             @Override
@@ -205,6 +149,19 @@ public class WebViewManager {
                 handler.proceed(username, password);
             }
             
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                WebResourceResponse attachment = attachmentServer.intercept(request);
+                if (attachment != null) {
+                    return attachment;
+                }
+                WebResourceResponse cached = assetCache.intercept(request);
+                if (cached != null) {
+                    return cached;
+                }
+                return super.shouldInterceptRequest(view, request);
+            }
+            
             @Override
             public void onPageStarted(WebView view, String url, android.graphics.Bitmap favicon) {
                 Log.d(TAG, "Page started loading: " + url);
@@ -215,6 +172,7 @@ public class WebViewManager {
             public void onPageFinished(WebView view, String url) {
                 Log.d(TAG, "Page finished loading: " + url);
                 super.onPageFinished(view, url);
+                assetCache.onPageFinished();
                 
                 // Inject input detection script after page loads
                 injectInputDetectionScript();
@@ -476,13 +434,22 @@ public class WebViewManager {
         Log.d(TAG, "Retrieved IP: " + ip + ", Retrieved port: " + port);
         String url = "http://" + ip + ":" + port;
         
+        assetCache.setOrigin(url);
+        
         if (bypassCache) {
+            // Only an explicit refresh revalidates cached assets and resets page storage;
+            // a normal cold start paints from the local asset cache
+            assetCache.requireRevalidation();
             url = url + "?t=" + System.currentTimeMillis();
         }
         Log.d(TAG, "Loading URL: " + url);
         
         webView.loadUrl(url);
         
+        if (!bypassCache) {
+            return;
+        }
+        
         // Clear localStorage and sessionStorage after page loads
         mainHandler.postDelayed(() -> {
             webView.evaluateJavascript(
@@ -507,7 +474,7 @@ public class WebViewManager {
         Log.d(TAG, "Injecting input detection script using WebViewTextInjector");
         
         if (webViewInjector != null) {
-            // Inject helper functions using the new injector
+            // Install the versioned JS API once per page load
             webViewInjector.injectHelperFunctions();
             
             // Inject focus/blur listener for input field
@@ -569,9 +536,50 @@ public class WebViewManager {
         });
     }
     
+    public void setOpenCodeManager(OpenCodeManager openCodeManager) {
+        this.openCodeManager = openCodeManager;
+    }
+    
+    /**
+     * Deliver a transcript: in direct-submit mode post it through OpenCodeManager to the session the
+     * page is showing (the web UI refreshes from its own event stream); otherwise, or when the page is
+     * not on a session or the request fails before reaching the server, fall back to DOM injection
+     */
+    public void submitTranscribedText(String text) {
+        android.content.SharedPreferences prefs = activity.getSharedPreferences("settings", Activity.MODE_PRIVATE);
+        boolean autoSend = prefs.getBoolean(Constants.KEY_AUTO_SEND, Constants.DEFAULT_AUTO_SEND);
+        boolean directSubmit = prefs.getBoolean(Constants.KEY_DIRECT_SUBMIT, Constants.DEFAULT_DIRECT_SUBMIT);
+        OpenCodeRoute route = OpenCodeRoute.parse(webView.getUrl());
+        
+        if (!autoSend || !directSubmit || openCodeManager == null || route == null) {
+            injectTranscribedText(text);
+            return;
+        }
+        
+        Log.d(TAG, "Submitting transcript directly to session " + route.sessionId);
+        openCodeManager.submitPrompt(route.sessionId, route.directory, text, new OpenCodeManager.SubmitCallback() {
+            @Override
+            public void onSubmitted() {
+                Log.i(TAG, "Transcript submitted via API");
+            }
+            
+            @Override
+            public void onFailed(String error, boolean accepted) {
+                if (accepted) {
+                    // Re-sending could post the prompt twice
+                    Log.w(TAG, "Direct submit status unknown: " + error);
+                    Toast.makeText(activity, "提交状态未知: " + error, Toast.LENGTH_LONG).show();
+                    return;
+                }
+                Log.w(TAG, "Direct submit failed, falling back to injection: " + error);
+                injectTranscribedText(text);
+            }
+        });
+    }
+    
     /**
      * Inject transcribed text into OpenCode web page input field
-     * Uses WebViewTextInjector for robust injection with retry logic
+     * Uses WebViewTextInjector for batched injection with retry logic
      */
     public void injectTranscribedText(String text) {
         Log.d(TAG, "Injecting transcribed text: " + text);
@@ -586,29 +594,16 @@ public class WebViewManager {
         final boolean autoSend = activity.getSharedPreferences("settings", Activity.MODE_PRIVATE)
                 .getBoolean(Constants.KEY_AUTO_SEND, Constants.DEFAULT_AUTO_SEND);
         
-        // Use the new injector with retry and error handling
+        // Inject and send in a single command batch (one evaluateJavascript round-trip)
         // If auto-send is enabled, don't set focus to avoid keyboard popup
-        webViewInjector.injectText(text, !autoSend, new WebViewTextInjector.InjectionCallback() {
+        webViewInjector.injectText(text, !autoSend, autoSend, new WebViewTextInjector.InjectionCallback() {
             @Override
             public void onSuccess(String injectedText) {
                 mainHandler.post(() -> {
-                    Log.i(TAG, "Text injection successful");
-                    
                     if (autoSend) {
-                        // Auto-send enabled, trigger send after a short delay
-                        mainHandler.postDelayed(() -> {
-                            webViewInjector.triggerSend(success -> {
-                                if (success) {
-                                    Log.i(TAG, "Message sent automatically");
-                                } else {
-                                    Log.w(TAG, "Auto-send failed");
-                                }
-                                // Notify MainActivity to update button state
-                                // This should be handled by MainActivity via callback
-                            });
-                        }, 100); // Small delay to ensure text is properly set
+                        Log.i(TAG, "Text injected and sent in one batch");
                     } else {
-                        // Auto-send disabled, just show toast
+                        Log.i(TAG, "Text injection successful");
                         Toast.makeText(activity, "文本已注入", Toast.LENGTH_SHORT).show();
                     }
                 });
@@ -629,6 +624,99 @@ public class WebViewManager {
         });
     }
     
+    /**
+     * 连续听写：把一句识别结果追加到输入框末尾（不发送、不弹键盘）
+     * 按到达顺序逐句写入，上一句完成（含重试）后才写下一句；英文等句子之间由页面补空格
+     */
+    public void appendDictatedText(String text) {
+        if (webViewInjector == null) {
+            Log.e(TAG, "WebViewInjector not initialized");
+            return;
+        }
+        mainHandler.post(() -> {
+            pendingDictation.add(text);
+            if (!dictationInFlight) {
+                appendNextDictation();
+            }
+        });
+    }
+    
+    private void appendNextDictation() {
+        String text = pendingDictation.poll();
+        if (text == null) {
+            dictationInFlight = false;
+            return;
+        }
+        dictationInFlight = true;
+        JSONArray commands = new JSONArray();
+        commands.put(VoiceAssistJsBridge.insertCommand(text, true));
+        webViewInjector.runCommands(commands, new WebViewTextInjector.InjectionCallback() {
+            @Override
+            public void onSuccess(String injectedText) {
+                Log.d(TAG, "Dictated text appended");
+                mainHandler.post(() -> appendNextDictation());
+            }
+            
+            @Override
+            public void onFailure(String error) {
+                mainHandler.post(() -> {
+                    Toast.makeText(activity, "注入失败: " + error, Toast.LENGTH_SHORT).show();
+                    appendNextDictation();
+                });
+            }
+            
+            @Override
+            public void onRetry(int attempt, int maxRetries) {
+                Log.d(TAG, "Dictation append retrying: " + attempt + "/" + maxRetries);
+            }
+        });
+    }
+    
+    /**
+     * 执行语音命令：发送 / 清空输入框 / 插入换行
+     */
+    public void performVoiceCommand(KeywordSpotter.Command command) {
+        Log.d(TAG, "Performing voice command: " + command);
+        
+        if (webViewInjector == null) {
+            Log.e(TAG, "WebViewInjector not initialized");
+            return;
+        }
+        
+        if (command == KeywordSpotter.Command.SEND) {
+            webViewInjector.triggerSend(success -> mainHandler.post(() -> {
+                if (!success) {
+                    Toast.makeText(activity, "发送失败", Toast.LENGTH_SHORT).show();
+                }
+            }));
+            return;
+        }
+        
+        JSONArray commands = new JSONArray();
+        if (command == KeywordSpotter.Command.CANCEL) {
+            commands.put(VoiceAssistJsBridge.command(VoiceAssistJsBridge.OP_CLEAR));
+        } else {
+            commands.put(VoiceAssistJsBridge.command(VoiceAssistJsBridge.OP_INSERT, "\n", true));
+        }
+        webViewInjector.runCommands(commands, new WebViewTextInjector.InjectionCallback() {
+            @Override
+            public void onSuccess(String text) {
+                mainHandler.post(() -> Toast.makeText(activity,
+                        command == KeywordSpotter.Command.CANCEL ? "已清空输入" : "已换行", Toast.LENGTH_SHORT).show());
+            }
+            
+            @Override
+            public void onFailure(String error) {
+                Log.e(TAG, "Voice command failed: " + error);
+            }
+            
+            @Override
+            public void onRetry(int attempt, int maxRetries) {
+                Log.d(TAG, "Voice command retrying: " + attempt + "/" + maxRetries);
+            }
+        });
+    }
+    
     public void handleFileChooserResult(Uri[] results) {
         Log.d(TAG, "handleFileChooserResult called, filePathCallback: " + 
             (filePathCallback != null ? "not null" : "NULL") + ", results: " + 
@@ -655,6 +743,9 @@ public class WebViewManager {
         
         // Clear cache
         webView.clearCache(true);
+        if (assetCache != null) {
+            assetCache.clear();
+        }
         webView.clearHistory();
         webView.clearFormData();
         
@@ -724,459 +815,6 @@ public class WebViewManager {
         }
     }
     
-    public void injectProcessAttachmentFunction(String jsFilename, String jsMimeType, Runnable onComplete) {
-        // Simplified function - just the core logic
-        String funcJs = "window.AndroidAttachmentReceiver.processAttachment=function(){" +
-            "try{var d=this.getFullData();" +
-            "var u='data:'+this.mimeType+';base64,'+d;" +
-            "var a=u.split(',');" +
-            "var m=a[0].match(/:(.*?);/)[1];" +
-            "var b=atob(a[1]);" +
-            "var n=b.length;" +
-            "var x=new Uint8Array(n);" +
-            "while(n--){x[n]=b.charCodeAt(n);}" +
-            "var blob=new Blob([x],{type:m});" +
-            "var file=new File([blob],this.filename,{type:this.mimeType});" +
-            "var dt=new DataTransfer();" +
-            "dt.items.add(file);" +
-            "var input=document.querySelector('[data-component=prompt-input]');" +
-            "if(input){input.focus();input.dispatchEvent(new ClipboardEvent('paste',{clipboardData:dt,bubbles:true}));}" +
-            "if(window.AndroidVoiceAssist){window.AndroidVoiceAssist.onAttachmentReady(true,this.filename,'ok');}" +
-            "return true;}catch(e){" +
-            "if(window.AndroidVoiceAssist){window.AndroidVoiceAssist.onAttachmentReady(false,this.filename,e.message);}" +
-            "return false;}};'done'";
-        
-        webView.evaluateJavascript(funcJs, result -> {
-            Log.d(TAG, "Function injection result: " + result);
-            if (onComplete != null) {
-                onComplete.run();
-            }
-        });
-    }
-    
-    public void sendBase64Chunks(String base64Data, String filename, String mimeType) {
-        if (base64Data == null || base64Data.isEmpty()) {
-            Log.e(TAG, "Base64 data is empty");
-            return;
-        }
-        
-        // Chunk size: 30000 characters (leaving room for JavaScript overhead)
-        final int CHUNK_SIZE = 30000;
-        final int totalLength = base64Data.length();
-        final int totalChunks = (int) Math.ceil((double) totalLength / CHUNK_SIZE);
-        
-        Log.d(TAG, "Sending " + totalChunks + " chunks, total size: " + totalLength);
-        
-        // Send chunks sequentially using recursion to avoid overwhelming WebView
-        sendChunkRecursive(base64Data, filename, mimeType, 0, CHUNK_SIZE, totalChunks);
-    }
-    
-    /**
-     * Recursively send chunks with delay to avoid overwhelming WebView
-     */
-    private void sendChunkRecursive(String base64Data, String filename, String mimeType, 
-                                    int chunkIndex, int chunkSize, int totalChunks) {
-        if (chunkIndex >= totalChunks) {
-            // All chunks sent, trigger processing
-            Log.d(TAG, "All chunks sent, triggering processing");
-            triggerChunkedProcessing(filename);
-            return;
-        }
-        
-        int start = chunkIndex * chunkSize;
-        int end = Math.min(start + chunkSize, base64Data.length());
-        String chunk = base64Data.substring(start, end);
-        
-        // Escape the chunk for JavaScript
-        String escapedChunk = chunk.replace("\\", "\\\\")
-                                   .replace("'", "\\'")
-                                   .replace("\"", "\\\"");
-        
-        String chunkJs = "(function() {" +
-            "  try {" +
-            "    if (window.AndroidAttachmentReceiver) {" +
-            "      var received = window.AndroidAttachmentReceiver.addChunk('" + escapedChunk + "');" +
-            "      return 'chunk-added:' + received;" +
-            "    } else {" +
-            "      return 'receiver-not-found';" +
-            "    }" +
-            "  } catch(e) {" +
-            "    return 'error: ' + e.message;" +
-            "  }" +
-            "})();";
-        
-        webView.evaluateJavascript(chunkJs, result -> {
-            Log.d(TAG, "Chunk " + (chunkIndex + 1) + "/" + totalChunks + " result: " + result);
-            
-            // Small delay before next chunk to allow WebView to process
-            mainHandler.postDelayed(() -> {
-                sendChunkRecursive(base64Data, filename, mimeType, chunkIndex + 1, chunkSize, totalChunks);
-            }, 10); // 10ms delay between chunks
-        });
-    }
-    
-    /**
-     * Trigger processing of all received chunks
-     */
-    private void triggerChunkedProcessing(String filename) {
-        String processJs = "(function() {" +
-            "  try {" +
-            "    if (window.AndroidAttachmentReceiver) {" +
-            "      if (window.AndroidAttachmentReceiver.isComplete()) {" +
-            "        var result = window.AndroidAttachmentReceiver.processAttachment();" +
-            "        return 'processing-result:' + result;" +
-            "      } else {" +
-            "        return 'incomplete-data';" +
-            "      }" +
-            "    } else {" +
-            "      return 'receiver-not-found';" +
-            "    }" +
-            "  } catch(e) {" +
-            "    console.error('[OpenCode] Processing error: ' + e.message);" +
-            "    return 'error: ' + e.message;" +
-            "  }" +
-            "})();";
-        
-        webView.evaluateJavascript(processJs, result -> {
-            Log.d(TAG, "Processing result: " + result);
-        });
-    }
-    
-    public String buildImageInjectionJs(String base64Data, String filename, String mimeType) {
-        // Escape strings for JavaScript string literals
-        String jsFilename = escapeForJavaScript(filename);
-        String jsMimeType = escapeForJavaScript(mimeType);
-        String jsBase64 = escapeForJavaScript(base64Data);
-        
-        // Debug: Log JavaScript code information
-        Log.d(TAG, "buildImageInjectionJs called");
-        Log.d(TAG, "Filename: " + filename + " -> js: " + 
-            (jsFilename.length() > 50 ? jsFilename.substring(0, 50) + "..." : jsFilename));
-        Log.d(TAG, "MIME type: " + mimeType + " -> js: " + jsMimeType);
-        Log.d(TAG, "Base64 length: " + base64Data.length() + 
-            " -> js length: " + jsBase64.length());
-        if (jsBase64.length() > 0) {
-            int previewLength = Math.min(100, jsBase64.length());
-            Log.d(TAG, "Base64 preview (first " + previewLength + " chars): " + 
-                jsBase64.substring(0, previewLength));
-            if (jsBase64.length() > 100) {
-                Log.d(TAG, "Base64 preview (last 100 chars): " + 
-                    jsBase64.substring(jsBase64.length() - 100));
-            }
-        }
-        
-        return "(function() {" +
-            "  console.log('[OpenCode] Starting image injection for: ' + '" + jsFilename + "');" +
-            "  const result = { success: false, error: null, step: 'start' };" +
-            "  " +
-            "  try {" +
-            "    // Step 1: Check if page is loaded" +
-            "    if (!document.body || document.body.children.length === 0) {" +
-            "      result.error = 'Document not fully loaded';" +
-            "      result.step = 'document-check';" +
-            "      console.error('[OpenCode] ' + result.error);" +
-            "      return JSON.stringify(result);" +
-            "    }" +
-            "    " +
-            "    // Step 2: Create Data URL" +
-            "    result.step = 'creating-data-url';" +
-            "    const dataUrl = 'data:' + '" + jsMimeType + ";base64,' + '" + jsBase64 + "';" +
-            "    console.log('[OpenCode] Data URL created');" +
-            "    " +
-            "    // Step 3: Convert Data URL to Blob" +
-            "    result.step = 'converting-to-blob';" +
-            "    function dataURLtoBlob(dataurl) {" +
-            "      const arr = dataurl.split(',');" +
-            "      const mime = arr[0].match(/:(.*?);/)[1];" +
-            "      const bstr = atob(arr[1]);" +
-            "      let n = bstr.length;" +
-            "      const u8arr = new Uint8Array(n);" +
-            "      while (n--) {" +
-            "        u8arr[n] = bstr.charCodeAt(n);" +
-            "      }" +
-            "      return new Blob([u8arr], { type: mime });" +
-            "    }" +
-            "    " +
-            "    const blob = dataURLtoBlob(dataUrl);" +
-            "    console.log('[OpenCode] Blob created, size: ' + blob.size + ' bytes');" +
-            "    " +
-            "    // Step 4: Create File object" +
-            "    result.step = 'creating-file-object';" +
-            "    const file = new File([blob], '" + jsFilename + "', { type: '" + jsMimeType + "' });" +
-            "    console.log('[OpenCode] File created: ' + file.name);" +
-            "    " +
-            "    // Step 5: Create DataTransfer" +
-            "    result.step = 'creating-datatransfer';" +
-            "    const dataTransfer = new DataTransfer();" +
-            "    dataTransfer.items.add(file);" +
-            "    console.log('[OpenCode] DataTransfer created with file');" +
-            "    " +
-            "    // Step 6: Create paste event" +
-            "    result.step = 'creating-paste-event';" +
-            "    const pasteEvent = new ClipboardEvent('paste', {" +
-            "      clipboardData: dataTransfer," +
-            "      bubbles: true," +
-            "      cancelable: true" +
-            "    });" +
-            "    console.log('[OpenCode] Paste event created');" +
-            "    " +
-            "    // Step 7: Find OpenCode input field with more comprehensive selectors" +
-            "    result.step = 'finding-input-field';" +
-            "    let promptInput = document.querySelector('[data-component=\"prompt-input\"]');" +
-            "    if (!promptInput) {" +
-            "      // Try OpenCode-specific selectors" +
-            "      const openCodeSelectors = [" +
-            "        '.prompt-input textarea'," +
-            "        '.prompt-input [contenteditable=\"true\"]'," +
-            "        '[data-testid=\"prompt-input\"]'," +
-            "        '[data-id=\"prompt-box\"]'," +
-            "        '.chat-input-box textarea'," +
-            "        '.chat-input textarea'," +
-            "        '.text-input textarea'," +
-            "        '.input-box textarea'," +
-            "        '.input-form textarea'," +
-            "        '.message-input textarea'," +
-            "        '.prompt-form textarea'," +
-            "        '.chat-prompt textarea'," +
-            "        '.prompt-textarea'," +
-            "        '.input-textarea'," +
-            "        '.chat textarea'," +
-            "        '.prompt-box [contenteditable=\"true\"]'," +
-            "        '.chat-input-box [contenteditable=\"true\"]'," +
-            "        '.input-box [contenteditable=\"true\"]'," +
-            "        'textarea[id*=\"prompt\"]'," +
-            "        'textarea[name*=\"prompt\"]'," +
-            "        'textarea[id*=\"input\"]'," +
-            "        'textarea[name*=\"input\"]'," +
-            "        'div[role=\"textbox\"]'," +
-            "        'div[contenteditable=\"true\"]'," +
-            "        'textarea'," +
-            "        'input[type=\"text\"]'," +
-            "        '.prompt-input'," +
-            "        '[role=\"textbox\"]'," +
-            "        '.ProseMirror'," +
-            "        '.chat-input'," +
-            "        '.input-area'" +
-            "      ]; " +
-            "      " +
-            "      for (const selector of openCodeSelectors) {" +
-            "        try {" +
-            "          const element = document.querySelector(selector);" +
-            "          if (element && (element.tagName === 'TEXTAREA' || element.tagName === 'INPUT' || element.contentEditable === 'true')) {" +
-            "            promptInput = element;" +
-            "            console.log('[OpenCode] Found input using selector: ' + selector);" +
-            "            break;" +
-            "          }" +
-            "        } catch (e) {" +
-            "          console.log('[OpenCode] Selector failed: ' + selector + ', error: ' + e.message);" +
-            "        }" +
-            "      }" +
-            "    }" +
-            "    " +
-            "    if (!promptInput) {" +
-            "      // If input still not found, wait a bit and try again (in case page is still loading dynamic content)" +
-            "      result.error = 'OpenCode input field not found. Will try again after a short delay.';" +
-            "      result.step = 'input-not-found-initial';" +
-            "      console.warn('[OpenCode] ' + result.error);" +
-            "      " +
-            "      // Create a promise to handle the delayed attempt" +
-            "      return new Promise((resolve) => {" +
-            "        setTimeout(() => {" +
-            "          let retryPromptInput = null;" +
-            "          const selectors = ['.prompt-input textarea', '.chat-input textarea', 'textarea', 'div[contenteditable=\"true\"]', '[role=\"textbox\"]'];" +
-            "          for (const sel of selectors) {" +
-            "            const el = document.querySelector(sel);" +
-            "            if (el && (el.tagName === 'TEXTAREA' || el.tagName === 'INPUT' || el.contentEditable === 'true')) {" +
-            "              retryPromptInput = el;" +
-            "              console.log('[OpenCode] Found input after delay using: ' + sel);" +
-            "              break;" +
-            "            }" +
-            "          }" +
-            "          " +
-            "          if (retryPromptInput) {" +
-            "            // Now try to inject the file into this found input" +
-            "            result.step = 'focusing-input-after-delay';" +
-            "            retryPromptInput.focus();" +
-            "            " +
-            "            const dataTransfer = new DataTransfer();" +
-            "            const blob = dataURLtoBlob(dataUrl);" +
-            "            const file = new File([blob], '" + jsFilename + "', { type: '" + jsMimeType + "' });" +
-            "            dataTransfer.items.add(file);" +
-            "            " +
-            "            const pasteEvent = new ClipboardEvent('paste', {" +
-            "              clipboardData: dataTransfer," +
-            "              bubbles: true," +
-            "              cancelable: true" +
-            "            });" +
-            "            " +
-            "            retryPromptInput.dispatchEvent(pasteEvent);" +
-            "            " +
-            "            result.success = true;" +
-            "            result.step = 'completed-after-delay';" +
-            "            console.log('[OpenCode] Image injection successful after delay');" +
-            "          } else {" +
-            "            result.error = 'OpenCode input field still not found after delay.';" +
-            "            result.step = 'input-not-found-after-delay';" +
-            "            console.error('[OpenCode] ' + result.error);" +
-            "          }" +
-            "          resolve(JSON.stringify(result));" +
-            "        }, 1000);" +
-            "      }).then(res => res).catch(err => JSON.stringify({success: false, error: err.message, step: 'promise-error'}));" +
-            "    }" +
-            "    " +
-            "    console.log('[OpenCode] Found input field');" +
-            "    " +
-            "    // Step 8: Focus input field first (important for paste to work)" +
-            "    result.step = 'focusing-input';" +
-            "    promptInput.focus();" +
-            "    console.log('[OpenCode] Input field focused');" +
-            "    " +
-            "    // Step 9: Try multiple approaches to inject the file" +
-            "    result.step = 'injecting-via-paste';" +
-            "    " +
-            "    // Approach 1: Trigger paste event (for rich text editors and chat interfaces)" +
-            "    promptInput.dispatchEvent(pasteEvent);" +
-            "    console.log('[OpenCode] Paste event dispatched');" +
-            "    " +
-            "    // Approach 2: Try to find and use a hidden file input (common pattern in web apps)" +
-            "    const fileInput = document.querySelector('input[type=\"file\"][accept*=\"image\" i], input[type=\"file\"].hidden, input[type=\"file\"].visually-hidden, input[type=\"file\"].file-input, input[type=\"file\"][id*=\"upload\" i], input[type=\"file\"][name*=\"upload\" i], input[type=\"file\"].attachment-input');" +
-            "    if (fileInput) {" +
-            "      result.step = 'injecting-via-file-input';" +
-            "      console.log('[OpenCode] Found file input, attempting direct injection');" +
-            "      " +
-            "      // Create a DataTransfer object to hold the file" +
-            "      const dataTransfer = new DataTransfer();" +
-            "      const blob = dataURLtoBlob(dataUrl);" +
-            "      const file = new File([blob], '" + jsFilename + "', { type: '" + jsMimeType + "' });" +
-            "      dataTransfer.items.add(file);" +
-            "      " +
-            "      // Set the files property and dispatch change event" +
-            "      fileInput.files = dataTransfer.files;" +
-            "      const changeEvent = new Event('change', { bubbles: true });" +
-            "      fileInput.dispatchEvent(changeEvent);" +
-            "      console.log('[OpenCode] File input change event dispatched');" +
-            "      " +
-            "      // Also try input and click events for better compatibility" +
-            "      const inputEvent = new Event('input', { bubbles: true });" +
-            "      fileInput.dispatchEvent(inputEvent);" +
-            "      " +
-            "      const clickEvent = new Event('click', { bubbles: true });" +
-            "      fileInput.dispatchEvent(clickEvent);" +
-            "    } else {" +
-            "      console.log('[OpenCode] No file input found, relying on other methods');" +
-            "    }" +
-            "    " +
-            "    // Approach 3: Look for drag and drop areas" +
-            "    const dropZone = document.querySelector('[data-testid*=\"drop\"], .drop-zone, .file-drop, .upload-area, [class*=\"drag\" i], [class*=\"drop\" i], [class*=\"upload\" i], [class*=\"attachment\" i], [class*=\"image-upload\" i], [id*=\"upload\" i], [id*=\"drop\" i], [id*=\"attachment\" i]);" +
-            "    if (dropZone) {" +
-            "      result.step = 'injecting-via-dropzone';" +
-            "      console.log('[OpenCode] Found potential drop zone, attempting to trigger file drop');" +
-            "      " +
-            "      const blob = dataURLtoBlob(dataUrl);" +
-            "      const file = new File([blob], '" + jsFilename + "', { type: '" + jsMimeType + "' });" +
-            "      " +
-            "      // Create a fake drag and drop event" +
-            "      const dataTransfer = new DataTransfer();" +
-            "      dataTransfer.items.add(file);" +
-            "      " +
-            "      const dragEvent = new DragEvent('drop', { dataTransfer: dataTransfer, bubbles: true });" +
-            "      dropZone.dispatchEvent(dragEvent);" +
-            "      console.log('[OpenCode] Drop event dispatched to potential drop zone');" +
-            "      " +
-            "      // Also try a regular click event on the drop zone" +
-            "      const clickEvent = new Event('click', { bubbles: true });" +
-            "      dropZone.dispatchEvent(clickEvent);" +
-            "    } else {" +
-            "      console.log('[OpenCode] No drop zone found');" +
-            "    }" +
-            "    " +
-            "    // Approach 4: Look for specific OpenCode-like upload buttons" +
-            "    const uploadButton = document.querySelector('button[data-testid*=\"upload\" i], button[aria-label*=\"upload\" i], button[data-upload*=\"image\" i], .upload-btn, .attachment-btn, .image-upload-btn, [class*=\"upload\" i], [id*=\"upload\" i], .attachment-button');" +
-            "    if (uploadButton) {" +
-            "      result.step = 'injecting-via-upload-button';" +
-            "      console.log('[OpenCode] Found potential upload button, attempting to click');" +
-            "      " +
-            "      // Click the upload button to activate file input" +
-            "      uploadButton.click();" +
-            "      " +
-            "      // After clicking, wait a bit and try file input again" +
-            "      setTimeout(() => {" +
-            "        const newFileInput = document.querySelector('input[type=\"file\"][accept*=\"image\" i]');" +
-            "        if (newFileInput) {" +
-            "          const dataTransfer = new DataTransfer();" +
-            "          const blob = dataURLtoBlob(dataUrl);" +
-            "          const file = new File([blob], '" + jsFilename + "', { type: '" + jsMimeType + "' });" +
-            "          dataTransfer.items.add(file);" +
-            "          newFileInput.files = dataTransfer.files;" +
-            "          const changeEvent = new Event('change', { bubbles: true });" +
-            "          newFileInput.dispatchEvent(changeEvent);" +
-            "          console.log('[OpenCode] File input found after button click, dispatched change event');" +
-            "        }" +
-            "      }, 500);" +
-            "    } else {" +
-            "      console.log('[OpenCode] No upload button found');" +
-            "    }" +
-            "    " +
-            "    result.success = true;" +
-            "    result.step = 'completed';" +
-            "    console.log('[OpenCode] Image injection completed using multiple approaches');" +
-            "    return JSON.stringify(result);" +
-            "    " +
-            "  } catch (error) {" +
-            "    result.error = 'Exception: ' + error.toString() + '\\nStack: ' + (error.stack || 'no stack');" +
-            "    result.step = 'exception';" +
-            "    console.error('[OpenCode] Image injection failed:', error);" +
-            "    return JSON.stringify(result);" +
-            "  }" +
-            "})();";
-    }
-    
-    /**
-     * Escape string for use in JavaScript string literal
-     */
-    public String escapeForJavaScript(String input) {
-        if (input == null) return "";
-        
-        // Debug: log input characteristics
-        if (input.length() > 1000) {
-            Log.d(TAG, "escapeForJavaScript: input length=" + input.length());
-            Log.d(TAG, "escapeForJavaScript: first 50 chars=" + 
-                input.substring(0, Math.min(50, input.length())));
-            Log.d(TAG, "escapeForJavaScript: last 50 chars=" + 
-                input.substring(Math.max(0, input.length() - 50)));
-            
-            // Check for problematic characters
-            int backslashCount = 0, singleQuoteCount = 0, doubleQuoteCount = 0, newlineCount = 0;
-            for (int i = 0; i < Math.min(1000, input.length()); i++) {
-                char c = input.charAt(i);
-                if (c == '\\') backslashCount++;
-                else if (c == '\'') singleQuoteCount++;
-                else if (c == '"') doubleQuoteCount++;
-                else if (c == '\n') newlineCount++;
-            }
-            Log.d(TAG, "escapeForJavaScript: problematic chars in first 1000: " +
-                "\\=" + backslashCount + ", '=" + singleQuoteCount + ", \"=" + doubleQuoteCount + 
-                ", \\n=" + newlineCount);
-        }
-        
-        String result = input
-            .replace("\\", "\\\\")
-            .replace("'", "\\'")
-            .replace("\"", "\\\"")
-            .replace("\n", "\\n")
-            .replace("\r", "\\r")
-            .replace("\t", "\\t");
-            
-        // Debug: log result characteristics
-        if (input.length() > 1000) {
-            Log.d(TAG, "escapeForJavaScript: result length=" + result.length());
-            Log.d(TAG, "escapeForJavaScript: length increased by " + 
-                (result.length() - input.length()));
-        }
-        
-        return result;
-    }
-    
     public long getFileSize(Uri uri) {
         long size = 0;
         if ("content".equals(uri.getScheme())) {
@@ -1216,7 +854,8 @@ public class WebViewManager {
     }
     
     /**
-     * Inject image from URI directly using Base64 data and paste event simulation
+     * Inject image from URI: downscale/recompress it in the background, register the result
+     * with LocalAttachmentServer and let the page fetch the bytes and paste them into the prompt input
      */
     public void injectImageFromUri(Uri imageUri) {
         if (imageUri == null) {
@@ -1224,143 +863,76 @@ public class WebViewManager {
             return;
         }
         
-        Log.d(TAG, "injectImageFromUri called: " + imageUri);
-        
-        // Get file name and MIME type from URI
         String fileName = getFileNameFromUri(imageUri);
-        Log.d(TAG, "Retrieved fileName: " + fileName);
-        
         String mimeType = activity.getContentResolver().getType(imageUri);
-        Log.d(TAG, "Retrieved mimeType: " + mimeType);
-        
         if (mimeType == null) {
-            // Try to determine MIME type from file extension
-            if (fileName != null) {
-                if (fileName.toLowerCase().endsWith(".jpg") || fileName.toLowerCase().endsWith(".jpeg")) {
-                    mimeType = "image/jpeg";
-                } else if (fileName.toLowerCase().endsWith(".png")) {
-                    mimeType = "image/png";
-                } else if (fileName.toLowerCase().endsWith(".gif")) {
-                    mimeType = "image/gif";
-                } else if (fileName.toLowerCase().endsWith(".webp")) {
-                    mimeType = "image/webp";
-                } else {
-                    mimeType = "image/jpeg"; // Default to JPEG
-                }
-            } else {
-                mimeType = "image/jpeg"; // Default to JPEG
-            }
-            Log.d(TAG, "Set default mimeType: " + mimeType);
+            mimeType = guessImageMimeType(fileName);
         }
-        
-        // Ensure filename is not null
         if (fileName == null) {
-            fileName = "photo_" + System.currentTimeMillis() + "." + 
-                mimeType.replace("image/", "");
-            Log.d(TAG, "Generated default fileName: " + fileName);
+            fileName = "photo_" + System.currentTimeMillis() + "." + mimeType.replace("image/", "");
         }
         
-        Log.d(TAG, "Processing image: " + fileName + ", mime: " + mimeType);
+        if (webViewInjector == null || attachmentServer == null) {
+            Log.e(TAG, "WebView not configured, cannot attach image");
+            if (callback != null) {
+                callback.onAttachmentReady(false, fileName, "WebView未初始化");
+            }
+            return;
+        }
         
-        // Convert to Base64 in background thread to avoid blocking UI
-        final String finalFileName = fileName;  // Make final for lambda access
-        final String finalMimeType = mimeType;  // Make final for lambda access
+        imageProcessor.process(imageUri, mimeType, fileName, (processedFile, processedMime, processedName) -> {
+            String url = processedFile != null
+                    ? attachmentServer.register(processedFile, processedMime)
+                    : attachmentServer.register(imageUri, processedMime);
+            attachToPrompt(url, processedName, processedMime);
+        });
+    }
+    
+    private void attachToPrompt(String url, String fileName, String mimeType) {
+        Log.d(TAG, "Attaching " + fileName + " (" + mimeType + ") via " + url);
         
-        new Thread(() -> {
-            try {
-                // Read file content - handle both content:// and file:// URIs
-                byte[] fileBytes;
-                if ("file".equals(imageUri.getScheme())) {
-                    // Direct file access
-                    File file = new File(imageUri.getPath());
-                    if (!file.exists()) {
-                        Log.e(TAG, "File does not exist: " + file.getAbsolutePath());
-                        mainHandler.post(() -> {
-                            if (WebViewManager.this.callback != null) {
-                                WebViewManager.this.callback.onAttachmentReady(false, finalFileName, "File does not exist");
-                            }
-                        });
-                        return;
-                    }
-                    try (java.io.FileInputStream fis = new java.io.FileInputStream(file)) {
-                        java.io.ByteArrayOutputStream buffer = new java.io.ByteArrayOutputStream();
-                        int nRead;
-                        byte[] data = new byte[1024];
-                        while ((nRead = fis.read(data, 0, data.length)) != -1) {
-                            buffer.write(data, 0, nRead);
-                        }
-                        fileBytes = buffer.toByteArray();
-                    }
-                } else {
-                    // Content URI access (for FileProvider)
-                    try (java.io.InputStream inputStream = activity.getContentResolver().openInputStream(imageUri)) {
-                        if (inputStream == null) {
-                            Log.e(TAG, "Could not open input stream for URI: " + imageUri);
-                            return;
-                        }
-                        java.io.ByteArrayOutputStream buffer = new java.io.ByteArrayOutputStream();
-                        int nRead;
-                        byte[] data = new byte[1024];
-                        while ((nRead = inputStream.read(data, 0, data.length)) != -1) {
-                            buffer.write(data, 0, nRead);
-                        }
-                        fileBytes = buffer.toByteArray();
-                    }
+        JSONArray commands = new JSONArray();
+        commands.put(VoiceAssistJsBridge.attachCommand(url, fileName, mimeType));
+        webViewInjector.runCommands(commands, new WebViewTextInjector.InjectionCallback() {
+            @Override
+            public void onSuccess(String text) {
+                // Final result arrives asynchronously through AndroidVoiceAssist.onAttachmentReady
+                Log.d(TAG, "Attachment fetch started: " + fileName);
+            }
+            
+            @Override
+            public void onFailure(String error) {
+                Log.e(TAG, "Attachment injection failed: " + error);
+                if (callback != null) {
+                    callback.onAttachmentReady(false, fileName, error);
                 }
-                
-                // Convert to Base64
-                String base64Data = android.util.Base64.encodeToString(fileBytes, android.util.Base64.NO_WRAP);
-                Log.d(TAG, "Base64 conversion completed, length: " + base64Data.length());
-                
-                // Build JavaScript injection code that simulates paste with file data
-                String jsCode = buildImageInjectionJs(base64Data, finalFileName, finalMimeType);
-                
-                // Execute on main thread with a small delay to ensure WebView is ready
-                mainHandler.postDelayed(() -> {
-                    Log.d(TAG, "Executing image injection JavaScript");
-                    // Check if WebView is still loading
-                    if (webView.getProgress() < 100) {
-                        Log.w(TAG, "WebView still loading (" + webView.getProgress() + "%), injecting anyway");
-                    }
-                    
-                    webView.evaluateJavascript(jsCode, result -> {
-                        Log.d(TAG, "Image injection JS result: " + result);
-                        if (WebViewManager.this.callback != null) {
-                            boolean success = result != null && !result.equals("null") && !result.contains("false");
-                            String message = success ? "照片已添加到输入框" : "无法找到输入框或注入失败";
-                            
-                            // Parse the result to get more detailed information
-                            if (result != null && result.contains("success")) {
-                                try {
-                                    // Extract success status from the returned JSON
-                                    org.json.JSONObject jsonResult = new org.json.JSONObject(result.replace("null", "").trim());
-                                    boolean jsonSuccess = jsonResult.optBoolean("success", false);
-                                    String step = jsonResult.optString("step", "unknown");
-                                    String error = jsonResult.optString("error", "");
-                                    
-                                    if (!jsonSuccess) {
-                                        message = "注入失败，步骤: " + step + ", 错误: " + error;
-                                        Log.e(TAG, "Image injection failed at step: " + step + ", error: " + error);
-                                    } else {
-                                        Log.d(TAG, "Image injection successful at step: " + step);
-                                    }
-                                } catch (Exception e) {
-                                    Log.e(TAG, "Error parsing injection result JSON", e);
-                                }
-                            }
-                            
-                            WebViewManager.this.callback.onAttachmentReady(success, finalFileName, message);
-                        }
-                    });
-                }, 500); // Small delay to ensure WebView is ready
-            } catch (Exception e) {
-                Log.e(TAG, "Error processing image", e);
-                mainHandler.post(() -> {
-                    if (WebViewManager.this.callback != null) {
-                        WebViewManager.this.callback.onAttachmentReady(false, finalFileName, e.getMessage());
-                    }
-                });
+            }
+            
+            @Override
+            public void onRetry(int attempt, int maxRetries) {
+                Log.d(TAG, "Retrying attachment injection (" + attempt + "/" + maxRetries + ")");
             }
         });
     }
+    
+    public void release() {
+        if (imageProcessor != null) {
+            imageProcessor.release();
+        }
+        if (assetCache != null) {
+            assetCache.release();
+        }
+    }
+    
+    private static String guessImageMimeType(String fileName) {
+        String lower = fileName != null ? fileName.toLowerCase() : "";
+        if (lower.endsWith(".png")) {
+            return "image/png";
+        } else if (lower.endsWith(".gif")) {
+            return "image/gif";
+        } else if (lower.endsWith(".webp")) {
+            return "image/webp";
+        }
+        return "image/jpeg";
+    }
 }
\ No newline at end of file
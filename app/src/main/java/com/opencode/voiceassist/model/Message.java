@@ -1,19 +1,39 @@
 package com.opencode.voiceassist.model;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 public class Message {
     
     public static final int TYPE_USER = 1;
     public static final int TYPE_ASSISTANT = 2;
     public static final int TYPE_ERROR = 3;
     
+    private static final AtomicLong LOCAL_ID = new AtomicLong();
+    
+    private final String id;
+    private final String sessionId;
     private String content;
     private int type;
     private long timestamp;
     
     public Message(String content, int type) {
+        this("local_" + LOCAL_ID.incrementAndGet(), null, content, type, System.currentTimeMillis());
+    }
+    
+    public Message(String id, String sessionId, String content, int type, long timestamp) {
+        this.id = id;
+        this.sessionId = sessionId;
         this.content = content;
         this.type = type;
-        this.timestamp = System.currentTimeMillis();
+        this.timestamp = timestamp;
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public String getSessionId() {
+        return sessionId;
     }
     
     public String getContent() {
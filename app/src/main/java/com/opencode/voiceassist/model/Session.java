@@ -0,0 +1,50 @@
+package com.opencode.voiceassist.model;
+
+public class Session {
+    
+    private final String id;
+    private String title;
+    private String directory;
+    private long createdAt;
+    private long updatedAt;
+    
+    public Session(String id, String title, String directory, long createdAt, long updatedAt) {
+        this.id = id;
+        this.title = title;
+        this.directory = directory;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    public String getTitle() {
+        return title;
+    }
+    
+    public void setTitle(String title) {
+        this.title = title;
+    }
+    
+    public String getDirectory() {
+        return directory;
+    }
+    
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+    
+    public long getCreatedAt() {
+        return createdAt;
+    }
+    
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+    
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
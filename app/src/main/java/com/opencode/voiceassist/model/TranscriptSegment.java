@@ -0,0 +1,48 @@
+package com.opencode.voiceassist.model;
+
+import java.util.Locale;
+
+public class TranscriptSegment {
+
+    private final String text;
+    private final long startMs;
+    private final long endMs;
+    // Mean log-probability of the segment's text tokens (closer to 0 = more confident)
+    private final float avgLogProb;
+    // Probability that the window contains no speech at all
+    private final float noSpeechProb;
+
+    public TranscriptSegment(String text, long startMs, long endMs, float avgLogProb, float noSpeechProb) {
+        this.text = text;
+        this.startMs = startMs;
+        this.endMs = endMs;
+        this.avgLogProb = avgLogProb;
+        this.noSpeechProb = noSpeechProb;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public long getStartMs() {
+        return startMs;
+    }
+
+    public long getEndMs() {
+        return endMs;
+    }
+
+    public float getAvgLogProb() {
+        return avgLogProb;
+    }
+
+    public float getNoSpeechProb() {
+        return noSpeechProb;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "[%d-%dms logp=%.2f nsp=%.2f] %s",
+            startMs, endMs, avgLogProb, noSpeechProb, text);
+    }
+}
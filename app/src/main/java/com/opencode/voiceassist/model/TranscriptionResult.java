@@ -1,5 +1,7 @@
 package com.opencode.voiceassist.model;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 
 public class TranscriptionResult {
@@ -7,6 +9,8 @@ public class TranscriptionResult {
     private double audioLengthSeconds;
     private long processingTimeMs;
     private double realtimeFactor;
+    // Only filled by engines that report per-segment detail (local whisper); empty otherwise
+    private List<TranscriptSegment> segments = Collections.emptyList();
     
     public TranscriptionResult(String text, double audioLengthSeconds, long processingTimeMs, double realtimeFactor) {
         this.text = text;
@@ -15,6 +19,12 @@ public class TranscriptionResult {
         this.realtimeFactor = realtimeFactor;
     }
     
+    public TranscriptionResult(String text, double audioLengthSeconds, long processingTimeMs, double realtimeFactor,
+                               List<TranscriptSegment> segments) {
+        this(text, audioLengthSeconds, processingTimeMs, realtimeFactor);
+        setSegments(segments);
+    }
+    
     public String getText() {
         return text;
     }
@@ -47,6 +57,49 @@ public class TranscriptionResult {
         this.realtimeFactor = realtimeFactor;
     }
     
+    public List<TranscriptSegment> getSegments() {
+        return segments;
+    }
+    
+    public void setSegments(List<TranscriptSegment> segments) {
+        this.segments = segments != null ? Collections.unmodifiableList(segments) : Collections.emptyList();
+    }
+    
+    public boolean hasSegments() {
+        return !segments.isEmpty();
+    }
+    
+    /**
+     * 按段时长加权的平均 token 对数概率；没有分段或概率信息时返回 NaN
+     */
+    public double getAverageLogProb() {
+        if (segments.isEmpty()) {
+            return Double.NaN;
+        }
+        double weighted = 0;
+        long total = 0;
+        for (TranscriptSegment segment : segments) {
+            long duration = Math.max(1, segment.getEndMs() - segment.getStartMs());
+            weighted += segment.getAvgLogProb() * duration;
+            total += duration;
+        }
+        return weighted / total;
+    }
+    
+    /**
+     * 各段中最大的无语音概率；没有分段信息时返回 NaN
+     */
+    public double getMaxNoSpeechProb() {
+        if (segments.isEmpty()) {
+            return Double.NaN;
+        }
+        double max = 0;
+        for (TranscriptSegment segment : segments) {
+            max = Math.max(max, segment.getNoSpeechProb());
+        }
+        return max;
+    }
+    
     @Override
     public String toString() {
         return String.format(Locale.US, "Text: %s (Audio: %.2fs, Process: %dms, RTF: %.1fx)", 
@@ -6,21 +6,63 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.appcompat.widget.AppCompatTextView;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.opencode.voiceassist.R;
 import com.opencode.voiceassist.model.Message;
 
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
-public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageViewHolder> {
-    
-    private List<Message> messages;
-    
-    public MessageAdapter(List<Message> messages) {
-        this.messages = messages;
+/**
+ * 消息列表适配器
+ * - submitList 后在后台线程做 DiffUtil，只刷新变化的条目
+ * - Message 视为不可变：内容变化时提交新的 Message 对象（相同 id）
+ * - 流式回复只追加增量（StreamingTextRenderer），不做整段重绑
+ * - 长回复在后台预计算文本布局，避免绑定时在主线程测量
+ */
+public class MessageAdapter extends ListAdapter<Message, MessageAdapter.MessageViewHolder> {
+
+    // Replies shorter than this lay out fast enough inline
+    private static final int PRECOMPUTE_THRESHOLD = 500;
+
+    private static final DiffUtil.ItemCallback<Message> DIFF_CALLBACK = new DiffUtil.ItemCallback<Message>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Message oldItem, @NonNull Message newItem) {
+            return oldItem.getId().equals(newItem.getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Message oldItem, @NonNull Message newItem) {
+            return oldItem.getType() == newItem.getType()
+                    && oldItem.getContent().equals(newItem.getContent());
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull Message oldItem, @NonNull Message newItem) {
+            String oldContent = oldItem.getContent();
+            String newContent = newItem.getContent();
+            if (oldItem.getType() == newItem.getType() && newContent.startsWith(oldContent)) {
+                // Streamed growth: hand the bound view only the appended text
+                return newContent.substring(oldContent.length());
+            }
+            return null;
+        }
+    };
+
+    private static final Executor TEXT_LAYOUT_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    public MessageAdapter() {
+        super(DIFF_CALLBACK);
+        setHasStableIds(true);
     }
-    
+
     @NonNull
     @Override
     public MessageViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -37,29 +79,68 @@ public class MessageAdapter extends RecyclerView.Adapter<MessageAdapter.MessageV
         }
         return new MessageViewHolder(view);
     }
-    
+
     @Override
     public void onBindViewHolder(@NonNull MessageViewHolder holder, int position) {
-        Message message = messages.get(position);
-        holder.tvContent.setText(message.getContent());
+        Message message = getItem(position);
+        String content = message.getContent();
+        if (content.length() >= PRECOMPUTE_THRESHOLD && holder.tvContent instanceof AppCompatTextView) {
+            AppCompatTextView textView = (AppCompatTextView) holder.tvContent;
+            holder.renderer.detach();
+            textView.setTextFuture(PrecomputedTextCompat.getTextFuture(
+                    content, TextViewCompat.getTextMetricsParams(textView), TEXT_LAYOUT_EXECUTOR));
+        } else {
+            holder.renderer.setText(content);
+        }
     }
-    
+
     @Override
-    public int getItemCount() {
-        return messages.size();
+    public void onBindViewHolder(@NonNull MessageViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        for (Object payload : payloads) {
+            if (!(payload instanceof String) || !holder.renderer.append((String) payload)) {
+                // Keep a growing message on the editable path so later deltas stay incremental
+                holder.renderer.setText(getItem(position).getContent());
+                return;
+            }
+        }
     }
-    
+
+    @Override
+    public void onViewRecycled(@NonNull MessageViewHolder holder) {
+        // Drop queued deltas and span results so they cannot land on the row's next message
+        holder.renderer.detach();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        // 64-bit FNV-1a of the message id: stable without remembering every id ever shown
+        String id = String.valueOf(getItem(position).getId());
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // RecyclerView.NO_ID is -1
+        return hash == RecyclerView.NO_ID ? 0 : hash;
+    }
+
     @Override
     public int getItemViewType(int position) {
-        return messages.get(position).getType();
+        return getItem(position).getType();
     }
-    
+
     static class MessageViewHolder extends RecyclerView.ViewHolder {
         TextView tvContent;
-        
+        StreamingTextRenderer renderer;
+
         public MessageViewHolder(@NonNull View itemView) {
             super(itemView);
             tvContent = itemView.findViewById(R.id.tv_content);
+            renderer = new StreamingTextRenderer(tvContent);
         }
     }
 }
@@ -0,0 +1,125 @@
+package com.opencode.voiceassist.ui;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.opencode.voiceassist.manager.OpenCodeSessionStore;
+import com.opencode.voiceassist.model.Message;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 将本地会话存储绑定到消息列表
+ * - 先显示最近一页，滚动接近顶部时从存储分页加载更早的消息
+ * - 存储变化时只重新读取当前窗口，交给 MessageAdapter 做差异刷新
+ */
+public class MessageListController implements OpenCodeSessionStore.StoreListener {
+
+    private static final int PAGE_SIZE = 30;
+    // Start loading the next page this many rows before the top is reached
+    private static final int PREFETCH_DISTANCE = 5;
+
+    private final RecyclerView recyclerView;
+    private final LinearLayoutManager layoutManager;
+    private final MessageAdapter adapter = new MessageAdapter();
+    private final OpenCodeSessionStore store;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService loader = Executors.newSingleThreadExecutor();
+
+    private String sessionId;
+    private int windowSize = PAGE_SIZE;
+    private boolean loading = false;
+    private boolean hasOlder = true;
+
+    public MessageListController(RecyclerView recyclerView, OpenCodeSessionStore store) {
+        this.recyclerView = recyclerView;
+        this.store = store;
+
+        layoutManager = new LinearLayoutManager(recyclerView.getContext());
+        layoutManager.setStackFromEnd(true);
+        layoutManager.setInitialPrefetchItemCount(4);
+        recyclerView.setLayoutManager(layoutManager);
+        recyclerView.setHasFixedSize(true);
+        recyclerView.setItemViewCacheSize(10);
+        // Content changes are rebinds of the same row; skip the cross-fade on every streamed update
+        recyclerView.setItemAnimator(null);
+        recyclerView.setAdapter(adapter);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView view, int dx, int dy) {
+                if (dy < 0 && layoutManager.findFirstVisibleItemPosition() <= PREFETCH_DISTANCE) {
+                    loadOlder();
+                }
+            }
+        });
+        store.addListener(this);
+    }
+
+    public void showSession(String sessionId) {
+        if (sessionId.equals(this.sessionId)) {
+            reload(false);
+            return;
+        }
+        this.sessionId = sessionId;
+        windowSize = PAGE_SIZE;
+        hasOlder = true;
+        adapter.submitList(null);
+        reload(true);
+    }
+
+    public void release() {
+        store.removeListener(this);
+        loader.shutdown();
+    }
+
+    @Override
+    public void onSessionsChanged() {
+    }
+
+    @Override
+    public void onMessagesChanged(String changedSessionId) {
+        if (changedSessionId.equals(sessionId)) {
+            reload(false);
+        }
+    }
+
+    private void loadOlder() {
+        if (loading || !hasOlder || sessionId == null) {
+            return;
+        }
+        windowSize += PAGE_SIZE;
+        reload(false);
+    }
+
+    private void reload(boolean scrollToEnd) {
+        String targetSession = sessionId;
+        if (targetSession == null) {
+            return;
+        }
+        int requested = windowSize;
+        loading = true;
+        // Store reads may hit disk the first time a session is opened
+        loader.execute(() -> {
+            List<Message> window = store.getLatestMessages(targetSession, requested);
+            mainHandler.post(() -> {
+                if (!targetSession.equals(sessionId)) {
+                    return;
+                }
+                loading = false;
+                hasOlder = window.size() >= requested;
+                boolean atEnd = scrollToEnd || !recyclerView.canScrollVertically(1);
+                adapter.submitList(window, () -> {
+                    if (atEnd && adapter.getItemCount() > 0) {
+                        recyclerView.scrollToPosition(adapter.getItemCount() - 1);
+                    }
+                });
+            });
+        });
+    }
+}
@@ -0,0 +1,243 @@
+package com.opencode.voiceassist.ui;
+
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.Spanned;
+import android.text.style.BackgroundColorSpan;
+import android.text.style.StyleSpan;
+import android.text.style.TypefaceSpan;
+import android.view.Choreographer;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * 流式回复的增量渲染
+ * - 增量追加到 TextView 的 Editable 中，不重建整段文本
+ * - 同一帧内到达的多个增量合并，在 Choreographer 帧回调中一次写入
+ * - Markdown 样式（代码块、行内代码、粗体）只对新完成的行在后台线程计算，再回到主线程挂上 span
+ */
+public class StreamingTextRenderer {
+
+    private static final int CODE_BACKGROUND = 0x14000000;
+
+    private static final Executor MARKDOWN_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final TextView textView;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final StringBuilder pending = new StringBuilder();
+    private final Choreographer.FrameCallback flushCallback = frameTimeNanos -> flush();
+
+    private boolean frameScheduled = false;
+    private boolean attached = false;
+    // Bumped on every setText so span results for replaced text are dropped
+    private int generation = 0;
+
+    // Incremental markdown state; everything before parsedOffset already has its spans
+    private int parsedOffset = 0;
+    private boolean parsing = false;
+    private boolean inCodeBlock = false;
+    private int codeBlockStart = -1;
+
+    public StreamingTextRenderer(TextView textView) {
+        this.textView = textView;
+    }
+
+    /**
+     * 替换全部内容（完整绑定时调用）
+     */
+    public void setText(String content) {
+        cancelFrame();
+        pending.setLength(0);
+        generation++;
+        parsedOffset = 0;
+        parsing = false;
+        inCodeBlock = false;
+        codeBlockStart = -1;
+        textView.setText(content, TextView.BufferType.EDITABLE);
+        attached = true;
+        scheduleMarkdown();
+    }
+
+    /**
+     * 追加增量，下一帧统一写入
+     * @return false 表示当前 TextView 不是由本渲染器绑定的，调用方需要完整重绑
+     */
+    public boolean append(String delta) {
+        if (!attached || !(textView.getText() instanceof Editable)) {
+            return false;
+        }
+        pending.append(delta);
+        if (!frameScheduled) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(flushCallback);
+        }
+        return true;
+    }
+
+    /**
+     * TextView 被其他路径设置了文本（例如预计算布局）后调用
+     */
+    public void detach() {
+        cancelFrame();
+        pending.setLength(0);
+        generation++;
+        attached = false;
+    }
+
+    private void cancelFrame() {
+        if (frameScheduled) {
+            Choreographer.getInstance().removeFrameCallback(flushCallback);
+            frameScheduled = false;
+        }
+    }
+
+    private void flush() {
+        frameScheduled = false;
+        if (!attached || pending.length() == 0) {
+            return;
+        }
+        ((Editable) textView.getText()).append(pending);
+        pending.setLength(0);
+        scheduleMarkdown();
+    }
+
+    private void scheduleMarkdown() {
+        if (parsing) {
+            return;
+        }
+        CharSequence text = textView.getText();
+        int end = lastLineEnd(text, parsedOffset);
+        if (end <= parsedOffset) {
+            return;
+        }
+        parsing = true;
+        int taskGeneration = generation;
+        int start = parsedOffset;
+        String chunk = text.subSequence(start, end).toString();
+        boolean startInCode = inCodeBlock;
+        int startCodeBlock = codeBlockStart;
+
+        MARKDOWN_EXECUTOR.execute(() -> {
+            MarkdownResult result = parseLines(chunk, start, startInCode, startCodeBlock);
+            mainHandler.post(() -> {
+                if (taskGeneration != generation) {
+                    return;
+                }
+                applySpans(result.spans);
+                parsedOffset = start + chunk.length();
+                inCodeBlock = result.inCodeBlock;
+                codeBlockStart = result.codeBlockStart;
+                parsing = false;
+                // More complete lines may have arrived while this chunk was parsed
+                scheduleMarkdown();
+            });
+        });
+    }
+
+    private void applySpans(List<SpanRange> spans) {
+        CharSequence text = textView.getText();
+        if (!(text instanceof Editable)) {
+            return;
+        }
+        Editable editable = (Editable) text;
+        for (SpanRange range : spans) {
+            for (Object span : range.spans) {
+                editable.setSpan(span, range.start, range.end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            }
+        }
+    }
+
+    private static int lastLineEnd(CharSequence text, int from) {
+        for (int i = text.length() - 1; i >= from; i--) {
+            if (text.charAt(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * 逐行解析一段完整的行；offset 是该段在全文中的起始位置
+     */
+    private static MarkdownResult parseLines(String chunk, int offset, boolean inCodeBlock, int codeBlockStart) {
+        List<SpanRange> spans = new ArrayList<>();
+        int lineStart = 0;
+        while (lineStart < chunk.length()) {
+            int lineEnd = chunk.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = chunk.length();
+            }
+            String line = chunk.substring(lineStart, lineEnd);
+            int absoluteStart = offset + lineStart;
+            if (line.trim().startsWith("```")) {
+                if (inCodeBlock) {
+                    spans.add(new SpanRange(codeBlockStart, offset + lineEnd,
+                            new TypefaceSpan("monospace"), new BackgroundColorSpan(CODE_BACKGROUND)));
+                    inCodeBlock = false;
+                    codeBlockStart = -1;
+                } else {
+                    inCodeBlock = true;
+                    codeBlockStart = absoluteStart;
+                }
+            } else if (!inCodeBlock) {
+                parseInline(line, absoluteStart, spans);
+            }
+            lineStart = lineEnd + 1;
+        }
+        return new MarkdownResult(spans, inCodeBlock, codeBlockStart);
+    }
+
+    private static void parseInline(String line, int offset, List<SpanRange> spans) {
+        int i = 0;
+        while (i < line.length()) {
+            if (line.charAt(i) == '`') {
+                int close = line.indexOf('`', i + 1);
+                if (close < 0) {
+                    return;
+                }
+                spans.add(new SpanRange(offset + i, offset + close + 1,
+                        new TypefaceSpan("monospace"), new BackgroundColorSpan(CODE_BACKGROUND)));
+                i = close + 1;
+            } else if (line.startsWith("**", i)) {
+                int close = line.indexOf("**", i + 2);
+                if (close < 0) {
+                    return;
+                }
+                spans.add(new SpanRange(offset + i, offset + close + 2, new StyleSpan(Typeface.BOLD)));
+                i = close + 2;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static class SpanRange {
+        final int start;
+        final int end;
+        final Object[] spans;
+
+        SpanRange(int start, int end, Object... spans) {
+            this.start = start;
+            this.end = end;
+            this.spans = spans;
+        }
+    }
+
+    private static class MarkdownResult {
+        final List<SpanRange> spans;
+        final boolean inCodeBlock;
+        final int codeBlockStart;
+
+        MarkdownResult(List<SpanRange> spans, boolean inCodeBlock, int codeBlockStart) {
+            this.spans = spans;
+            this.inCodeBlock = inCodeBlock;
+            this.codeBlockStart = codeBlockStart;
+        }
+    }
+}
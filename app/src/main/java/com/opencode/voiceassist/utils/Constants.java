@@ -31,6 +31,10 @@ public class Constants {
     public static final String ASR_BACKEND_CLOUD_HTTP = "cloud_http";
     public static final String ASR_BACKEND_FUNASR_WS = "funasr_ws";
     public static final String DEFAULT_ASR_BACKEND = ASR_BACKEND_FUNASR_WS;
+    public static final String KEY_LOCAL_ASR_FIRST = "local_asr_first";
+    public static final boolean DEFAULT_LOCAL_ASR_FIRST = false;
+    public static final String KEY_SPECULATIVE_DECODING = "speculative_decoding";
+    public static final boolean DEFAULT_SPECULATIVE_DECODING = false;
     
     // Audio Processor Types
     public static final String AUDIO_PROCESSOR_DIRECT = "direct";
@@ -40,8 +44,32 @@ public class Constants {
     // WebView Settings
     public static final String KEY_AUTO_SEND = "auto_send";
     public static final boolean DEFAULT_AUTO_SEND = true;
+    public static final String KEY_DIRECT_SUBMIT = "direct_submit";
+    public static final boolean DEFAULT_DIRECT_SUBMIT = false;
+    public static final String KEY_VOICE_COMMANDS = "voice_commands";
+    public static final boolean DEFAULT_VOICE_COMMANDS = false;
+    public static final String KEY_CONTINUOUS_DICTATION = "continuous_dictation";
+    public static final boolean DEFAULT_CONTINUOUS_DICTATION = false;
+    public static final String KEY_WARM_CAPTURE = "warm_capture";
+    public static final boolean DEFAULT_WARM_CAPTURE = false;
     
     // Hardware Noise Suppression
     public static final String KEY_HARDWARE_NS = "hardware_ns";
     public static final boolean DEFAULT_HARDWARE_NS = true;
+    
+    // Recording Archive Storage
+    public static final String KEY_RECORDING_COMPRESS = "recording_compress";
+    public static final boolean DEFAULT_RECORDING_COMPRESS = true;
+    public static final String KEY_RECORDING_MAX_AGE_DAYS = "recording_max_age_days";
+    public static final int DEFAULT_RECORDING_MAX_AGE_DAYS = 7;
+    public static final String KEY_RECORDING_MAX_SIZE_MB = "recording_max_size_mb";
+    public static final int DEFAULT_RECORDING_MAX_SIZE_MB = 200;
+    public static final String KEY_RECORDING_MAX_COUNT = "recording_max_count";
+    public static final int DEFAULT_RECORDING_MAX_COUNT = 500;
+    
+    // Image Attachments
+    public static final String KEY_IMAGE_MAX_DIMENSION = "image_max_dimension";
+    public static final int DEFAULT_IMAGE_MAX_DIMENSION = 2048;
+    public static final String KEY_IMAGE_QUALITY = "image_quality";
+    public static final int DEFAULT_IMAGE_QUALITY = 85;
 }
\ No newline at end of file
@@ -4,12 +4,10 @@ import android.content.Context;
 import android.os.Environment;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class FileManager {
     
@@ -17,57 +15,68 @@ public class FileManager {
     
     private Context context;
     private File tempWavFile;
+    private File sessionDir;
+    private final AtomicInteger sessionCounter = new AtomicInteger();
     private File recordingsDir;
+    private RecordingStorageManager storageManager;
     
     public FileManager(Context context) {
         this.context = context;
         this.tempWavFile = new File(context.getCacheDir(), "temp_recording.wav");
+        this.sessionDir = new File(context.getCacheDir(), "recording_sessions");
         this.recordingsDir = new File(context.getExternalFilesDir(Environment.DIRECTORY_MUSIC), "recordings");
         if (!recordingsDir.exists()) {
             recordingsDir.mkdirs();
         }
+        this.storageManager = new RecordingStorageManager(context, recordingsDir);
     }
     
     public File getTempWavFile() {
         return tempWavFile;
     }
     
+    /**
+     * 每次录音一个独立的临时文件，上一次录音还在收尾/识别时可以直接开始下一次
+     */
+    public File createSessionWavFile() {
+        if (!sessionDir.exists()) {
+            sessionDir.mkdirs();
+        }
+        return new File(sessionDir, "session_" + sessionCounter.incrementAndGet() + ".wav");
+    }
+    
     public void deleteTempWavFile() {
         if (tempWavFile.exists()) {
             tempWavFile.delete();
         }
+        File[] leftovers = sessionDir.listFiles();
+        if (leftovers != null) {
+            for (File file : leftovers) {
+                file.delete();
+            }
+        }
     }
     
     public File saveRecordingCopy(boolean withNoiseSuppression) {
-        if (!tempWavFile.exists()) {
-            android.util.Log.w(TAG, "Temp WAV file does not exist");
+        return saveRecordingCopy(tempWavFile, withNoiseSuppression);
+    }
+    
+    public File saveRecordingCopy(File wavFile, boolean withNoiseSuppression) {
+        if (!wavFile.exists()) {
+            android.util.Log.w(TAG, "WAV file does not exist: " + wavFile.getName());
             return null;
         }
         
-        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+        // Milliseconds keep back-to-back recordings from overwriting each other
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.getDefault()).format(new Date());
         String suffix = withNoiseSuppression ? "_NS_on" : "_NS_off";
         String filename = "recording_" + timestamp + suffix + ".wav";
-        File destFile = new File(recordingsDir, filename);
-        
-        try {
-            copyFile(tempWavFile, destFile);
-            android.util.Log.d(TAG, "Saved recording copy to: " + destFile.getAbsolutePath());
-            return destFile;
-        } catch (IOException e) {
-            android.util.Log.e(TAG, "Failed to save recording copy: " + e.getMessage());
-            return null;
-        }
+        // Moves the temp file instead of copying it; compression and cleanup run in background
+        return storageManager.archive(wavFile, filename);
     }
     
-    private void copyFile(File src, File dst) throws IOException {
-        try (FileInputStream fis = new FileInputStream(src);
-             FileOutputStream fos = new FileOutputStream(dst)) {
-            byte[] buffer = new byte[4096];
-            int len;
-            while ((len = fis.read(buffer)) > 0) {
-                fos.write(buffer, 0, len);
-            }
-        }
+    public void release() {
+        storageManager.release();
     }
     
     public File getRecordingsDir() {
@@ -0,0 +1,237 @@
+package com.opencode.voiceassist.utils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.AssetFileDescriptor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 图片附件预处理
+ * - 先只解码尺寸，用 inSampleSize 按 2 的幂下采样解码，避免把 12MP 原图完整载入内存
+ * - 按 EXIF 方向旋转，缩放到最长边不超过设置值
+ * - 重新编码为 WebP(API 30+) 或 JPEG，写入 cacheDir/attachments，由 LocalAttachmentServer 流式提供给页面
+ */
+public class ImageAttachmentProcessor {
+    private static final String TAG = "ImageAttachmentProcessor";
+
+    private static final long STALE_FILE_AGE_MS = 60 * 60 * 1000;
+
+    public interface Callback {
+        /**
+         * 处理完成（主线程）。处理失败或无需处理时 file 为 null，调用方应直接使用原始 Uri
+         */
+        void onProcessed(File file, String mimeType, String fileName);
+    }
+
+    private final ContentResolver contentResolver;
+    private final SharedPreferences prefs;
+    private final File outputDir;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, "ImageAttachment");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ImageAttachmentProcessor(Context context) {
+        this.contentResolver = context.getContentResolver();
+        this.prefs = context.getSharedPreferences("settings", Context.MODE_PRIVATE);
+        this.outputDir = new File(context.getCacheDir(), "attachments");
+        if (!outputDir.exists()) {
+            outputDir.mkdirs();
+        }
+        executor.execute(this::deleteStaleFiles);
+    }
+
+    public void process(Uri imageUri, String mimeType, String fileName, Callback callback) {
+        executor.execute(() -> {
+            File result = null;
+            String resultMime = mimeType;
+            String resultName = fileName;
+            long startTime = System.currentTimeMillis();
+            try {
+                if (shouldProcess(mimeType)) {
+                    boolean useWebp = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R;
+                    String extension = useWebp ? ".webp" : ".jpg";
+                    resultMime = useWebp ? "image/webp" : "image/jpeg";
+                    resultName = replaceExtension(fileName, extension);
+                    result = downscale(imageUri, useWebp, extension);
+                    if (result != null) {
+                        Log.d(TAG, "Processed " + fileName + " -> " + resultName + " (" +
+                                result.length() + " bytes, " + (System.currentTimeMillis() - startTime) + "ms)");
+                    }
+                }
+            } catch (IOException | RuntimeException | OutOfMemoryError e) {
+                Log.e(TAG, "Image processing failed, sending original", e);
+                result = null;
+            }
+
+            File finalResult = result;
+            String finalMime = finalResult != null ? resultMime : mimeType;
+            String finalName = finalResult != null ? resultName : fileName;
+            mainHandler.post(() -> callback.onProcessed(finalResult, finalMime, finalName));
+        });
+    }
+
+    public void release() {
+        executor.shutdown();
+    }
+
+    private static boolean shouldProcess(String mimeType) {
+        // GIFs may be animated; re-encoding would drop the frames
+        return mimeType != null && mimeType.startsWith("image/") && !"image/gif".equals(mimeType);
+    }
+
+    private File downscale(Uri imageUri, boolean useWebp, String extension) throws IOException {
+        int maxDimension = prefs.getInt(Constants.KEY_IMAGE_MAX_DIMENSION, Constants.DEFAULT_IMAGE_MAX_DIMENSION);
+        int quality = prefs.getInt(Constants.KEY_IMAGE_QUALITY, Constants.DEFAULT_IMAGE_QUALITY);
+
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = open(imageUri)) {
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("Not a decodable image: " + imageUri);
+        }
+
+        int rotation = readRotation(imageUri);
+        long originalSize = querySize(imageUri);
+        int longestSide = Math.max(bounds.outWidth, bounds.outHeight);
+        if (longestSide <= maxDimension && rotation == 0 && originalSize > 0 &&
+                originalSize < maxDimension * (long) maxDimension / 8) {
+            // Already small and upright; re-encoding would only cost quality
+            return null;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = calculateInSampleSize(longestSide, maxDimension);
+        Bitmap bitmap;
+        try (InputStream in = open(imageUri)) {
+            bitmap = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (bitmap == null) {
+            throw new IOException("Failed to decode image: " + imageUri);
+        }
+
+        try {
+            bitmap = scaleAndRotate(bitmap, maxDimension, rotation);
+            File outFile = new File(outputDir, "img_" + System.currentTimeMillis() + extension);
+            Bitmap.CompressFormat format = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R && useWebp
+                    ? Bitmap.CompressFormat.WEBP_LOSSY
+                    : Bitmap.CompressFormat.JPEG;
+            try (FileOutputStream fos = new FileOutputStream(outFile)) {
+                if (!bitmap.compress(format, quality, fos)) {
+                    throw new IOException("Bitmap.compress failed");
+                }
+            } catch (IOException e) {
+                outFile.delete();
+                throw e;
+            }
+            return outFile;
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    static int calculateInSampleSize(int longestSide, int maxDimension) {
+        int sampleSize = 1;
+        // Keep the decoded image at least maxDimension so the final scale step stays a downscale
+        while (longestSide / (sampleSize * 2) >= maxDimension) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static Bitmap scaleAndRotate(Bitmap source, int maxDimension, int rotation) {
+        int longestSide = Math.max(source.getWidth(), source.getHeight());
+        float scale = longestSide > maxDimension ? (float) maxDimension / longestSide : 1f;
+        if (scale == 1f && rotation == 0) {
+            return source;
+        }
+        Matrix matrix = new Matrix();
+        matrix.postScale(scale, scale);
+        matrix.postRotate(rotation);
+        Bitmap result = Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), matrix, true);
+        if (result != source) {
+            source.recycle();
+        }
+        return result;
+    }
+
+    private int readRotation(Uri imageUri) {
+        try (InputStream in = open(imageUri)) {
+            ExifInterface exif = new ExifInterface(in);
+            switch (exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    return 270;
+                default:
+                    return 0;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read EXIF orientation", e);
+            return 0;
+        }
+    }
+
+    private long querySize(Uri imageUri) {
+        if ("file".equals(imageUri.getScheme())) {
+            return new File(imageUri.getPath()).length();
+        }
+        try (AssetFileDescriptor afd = contentResolver.openAssetFileDescriptor(imageUri, "r")) {
+            return afd != null ? afd.getLength() : -1;
+        } catch (IOException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private InputStream open(Uri imageUri) throws IOException {
+        InputStream in = contentResolver.openInputStream(imageUri);
+        if (in == null) {
+            throw new IOException("Could not open input stream for URI: " + imageUri);
+        }
+        return in;
+    }
+
+    private static String replaceExtension(String fileName, String extension) {
+        int dot = fileName.lastIndexOf('.');
+        return (dot > 0 ? fileName.substring(0, dot) : fileName) + extension;
+    }
+
+    private void deleteStaleFiles() {
+        File[] files = outputDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (now - file.lastModified() > STALE_FILE_AGE_MS) {
+                file.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.opencode.voiceassist.utils;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 通过 shouldInterceptRequest 在页面同源路径下提供附件二进制数据
+ * 页面直接 fetch(/__voiceassist/attachment/<token>) 获取 Blob，无需 Base64 分块经 evaluateJavascript 传输
+ */
+public class LocalAttachmentServer {
+    private static final String TAG = "LocalAttachmentServer";
+
+    public static final String PATH_PREFIX = "/__voiceassist/attachment/";
+    private static final long ENTRY_TTL_MS = 2 * 60 * 1000;
+
+    private final Context context;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private static class Entry {
+        final Uri uri;
+        final File file;
+        final String mimeType;
+        final long createdAt = System.currentTimeMillis();
+
+        Entry(Uri uri, File file, String mimeType) {
+            this.uri = uri;
+            this.file = file;
+            this.mimeType = mimeType;
+        }
+    }
+
+    public LocalAttachmentServer(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * 注册一个待传输的内容 URI（content:// 或 file://），返回页面可访问的相对路径
+     */
+    public String register(Uri uri, String mimeType) {
+        if ("file".equals(uri.getScheme())) {
+            return register(new File(uri.getPath()), mimeType);
+        }
+        return put(new Entry(uri, null, mimeType));
+    }
+
+    public String register(File file, String mimeType) {
+        return put(new Entry(null, file, mimeType));
+    }
+
+    private String put(Entry entry) {
+        purgeExpired();
+        String token = UUID.randomUUID().toString();
+        entries.put(token, entry);
+        return PATH_PREFIX + token;
+    }
+
+    /**
+     * 在 WebViewClient.shouldInterceptRequest 中调用；非附件请求返回 null
+     */
+    public WebResourceResponse intercept(WebResourceRequest request) {
+        String path = request.getUrl().getPath();
+        if (path == null || !path.startsWith(PATH_PREFIX)) {
+            return null;
+        }
+
+        // One-shot: each registered attachment is served exactly once
+        Entry entry = entries.remove(path.substring(PATH_PREFIX.length()));
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Cache-Control", "no-store");
+        if (entry == null) {
+            Log.w(TAG, "Unknown or expired attachment token: " + path);
+            return new WebResourceResponse("text/plain", "utf-8", 404, "Not Found", headers, null);
+        }
+
+        try {
+            InputStream stream = entry.file != null
+                    ? new FileInputStream(entry.file)
+                    : context.getContentResolver().openInputStream(entry.uri);
+            if (stream == null) {
+                throw new IOException("Could not open stream for " + entry.uri);
+            }
+            long length = entry.file != null ? entry.file.length() : -1;
+            if (length >= 0) {
+                headers.put("Content-Length", String.valueOf(length));
+            }
+            Log.d(TAG, "Serving attachment " + path + " (" + entry.mimeType + ", " + length + " bytes)");
+            return new WebResourceResponse(entry.mimeType, null, 200, "OK", headers, stream);
+        } catch (IOException | SecurityException e) {
+            Log.e(TAG, "Failed to open attachment", e);
+            return new WebResourceResponse("text/plain", "utf-8", 500, "Internal Error", headers, null);
+        }
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().getValue().createdAt > ENTRY_TTL_MS) {
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.opencode.voiceassist.utils;
+
+import android.net.Uri;
+import android.util.Base64;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 解析 OpenCode Web UI 当前路由：/{base64url(项目目录)}/session/{sessionID}
+ */
+public class OpenCodeRoute {
+    public final String sessionId;
+    public final String directory;
+
+    private OpenCodeRoute(String sessionId, String directory) {
+        this.sessionId = sessionId;
+        this.directory = directory;
+    }
+
+    /**
+     * @return 页面不在某个会话中时返回 null
+     */
+    public static OpenCodeRoute parse(String url) {
+        if (url == null) {
+            return null;
+        }
+        List<String> segments = Uri.parse(url).getPathSegments();
+        int index = segments.indexOf("session");
+        if (index < 0 || index + 1 >= segments.size()) {
+            return null;
+        }
+        String sessionId = segments.get(index + 1);
+        if (sessionId.isEmpty()) {
+            return null;
+        }
+        String directory = index > 0 ? decodeDirectory(segments.get(index - 1)) : null;
+        return new OpenCodeRoute(sessionId, directory);
+    }
+
+    private static String decodeDirectory(String segment) {
+        try {
+            byte[] decoded = Base64.decode(segment, Base64.URL_SAFE | Base64.NO_WRAP | Base64.NO_PADDING);
+            String directory = new String(decoded, StandardCharsets.UTF_8);
+            // Only trust values that look like an absolute path (POSIX or Windows drive)
+            if (directory.startsWith("/") || directory.matches("^[A-Za-z]:[\\\\/].*")) {
+                return directory;
+            }
+        } catch (IllegalArgumentException ignored) {
+        }
+        return null;
+    }
+}
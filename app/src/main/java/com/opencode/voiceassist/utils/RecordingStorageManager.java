@@ -0,0 +1,264 @@
+package com.opencode.voiceassist.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 录音归档存储管理
+ * - 归档时优先 rename，跨文件系统时使用 FileChannel.transferTo，不做逐字节拷贝
+ * - 后台将 WAV 压缩为 Opus(OGG, API 29+) 或 AAC(M4A)，压缩成功后删除原 WAV
+ * - 按保存天数、总大小、文件数量执行清理，超限时先删除最早的录音（应用内不会回放归档录音，按修改时间排序）
+ */
+public class RecordingStorageManager {
+    private static final String TAG = "RecordingStorageManager";
+
+    private static final int WAV_HEADER_SIZE = 44;
+    private static final long CODEC_TIMEOUT_US = 10000;
+
+    private final File recordingsDir;
+    private final SharedPreferences prefs;
+    private final ExecutorService executor;
+
+    public RecordingStorageManager(Context context, File recordingsDir) {
+        this.recordingsDir = recordingsDir;
+        this.prefs = context.getSharedPreferences("settings", Context.MODE_PRIVATE);
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, "RecordingStorage");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(this::enforceQuota);
+    }
+
+    /**
+     * 将录音文件移动到归档目录，并在后台压缩和清理
+     * @return 归档后的 WAV 文件（压缩完成后会被替换为压缩文件）
+     */
+    public File archive(File wavFile, String filename) {
+        File destFile = new File(recordingsDir, filename);
+        try {
+            moveFile(wavFile, destFile);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to archive recording: " + e.getMessage());
+            return null;
+        }
+        Log.d(TAG, "Archived recording: " + destFile.getAbsolutePath());
+
+        executor.execute(() -> {
+            if (prefs.getBoolean(Constants.KEY_RECORDING_COMPRESS, Constants.DEFAULT_RECORDING_COMPRESS)) {
+                compress(destFile);
+            }
+            enforceQuota();
+        });
+        return destFile;
+    }
+
+    public void release() {
+        executor.shutdown();
+    }
+
+    private void moveFile(File src, File dst) throws IOException {
+        if (src.renameTo(dst)) {
+            return;
+        }
+        // Cache dir and external files dir usually live on different mounts
+        try (FileInputStream fis = new FileInputStream(src);
+             FileOutputStream fos = new FileOutputStream(dst)) {
+            FileChannel in = fis.getChannel();
+            FileChannel out = fos.getChannel();
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+        }
+        if (!src.delete()) {
+            Log.w(TAG, "Failed to delete source after copy: " + src.getAbsolutePath());
+        }
+    }
+
+    private void compress(File wavFile) {
+        boolean useOpus = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q;
+        String mime = useOpus ? MediaFormat.MIMETYPE_AUDIO_OPUS : MediaFormat.MIMETYPE_AUDIO_AAC;
+        String extension = useOpus ? ".ogg" : ".m4a";
+        String baseName = wavFile.getName().replaceAll("\\.wav$", "");
+        File outFile = new File(recordingsDir, baseName + extension);
+
+        long startTime = System.currentTimeMillis();
+        try {
+            encode(wavFile, outFile, mime, useOpus);
+            long originalSize = wavFile.length();
+            outFile.setLastModified(wavFile.lastModified());
+            if (!wavFile.delete()) {
+                Log.w(TAG, "Failed to delete WAV after compression: " + wavFile.getName());
+            }
+            Log.d(TAG, "Compressed " + wavFile.getName() + " -> " + outFile.getName() +
+                    " (" + originalSize + " -> " + outFile.length() + " bytes, " +
+                    (System.currentTimeMillis() - startTime) + "ms)");
+        } catch (Exception e) {
+            Log.e(TAG, "Compression failed, keeping WAV: " + wavFile.getName(), e);
+            outFile.delete();
+        }
+    }
+
+    private void encode(File wavFile, File outFile, String mime, boolean useOpus) throws IOException {
+        MediaFormat format = MediaFormat.createAudioFormat(mime, Constants.AUDIO_SAMPLE_RATE, Constants.AUDIO_CHANNELS);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, useOpus ? 24000 : 32000);
+        if (!useOpus) {
+            format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+        }
+
+        int muxerFormat = useOpus ? MediaMuxer.OutputFormat.MUXER_OUTPUT_OGG
+                : MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4;
+
+        MediaCodec codec = MediaCodec.createEncoderByType(mime);
+        MediaMuxer muxer = null;
+        try (FileInputStream fis = new FileInputStream(wavFile)) {
+            codec.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+            codec.start();
+            muxer = new MediaMuxer(outFile.getAbsolutePath(), muxerFormat);
+
+            if (fis.skip(WAV_HEADER_SIZE) != WAV_HEADER_SIZE) {
+                throw new IOException("WAV file too small");
+            }
+
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            byte[] readBuffer = new byte[8192];
+            long totalPcmBytes = 0;
+            boolean inputDone = false;
+            boolean outputDone = false;
+            int trackIndex = -1;
+            boolean muxerStarted = false;
+
+            while (!outputDone) {
+                if (!inputDone) {
+                    int inIndex = codec.dequeueInputBuffer(CODEC_TIMEOUT_US);
+                    if (inIndex >= 0) {
+                        ByteBuffer inBuffer = codec.getInputBuffer(inIndex);
+                        inBuffer.clear();
+                        int toRead = Math.min(readBuffer.length, inBuffer.remaining());
+                        int read = fis.read(readBuffer, 0, toRead);
+                        long ptsUs = totalPcmBytes * 1000000L / (Constants.AUDIO_SAMPLE_RATE * 2L);
+                        if (read <= 0) {
+                            codec.queueInputBuffer(inIndex, 0, 0, ptsUs, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            inBuffer.put(readBuffer, 0, read);
+                            codec.queueInputBuffer(inIndex, 0, read, ptsUs, 0);
+                            totalPcmBytes += read;
+                        }
+                    }
+                }
+
+                int outIndex = codec.dequeueOutputBuffer(info, CODEC_TIMEOUT_US);
+                if (outIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    trackIndex = muxer.addTrack(codec.getOutputFormat());
+                    muxer.start();
+                    muxerStarted = true;
+                } else if (outIndex >= 0) {
+                    ByteBuffer outBuffer = codec.getOutputBuffer(outIndex);
+                    boolean isConfig = (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+                    if (!isConfig && info.size > 0 && muxerStarted) {
+                        outBuffer.position(info.offset);
+                        outBuffer.limit(info.offset + info.size);
+                        muxer.writeSampleData(trackIndex, outBuffer, info);
+                    }
+                    codec.releaseOutputBuffer(outIndex, false);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                        outputDone = true;
+                    }
+                }
+            }
+
+            if (muxerStarted) {
+                muxer.stop();
+            }
+        } finally {
+            try {
+                codec.stop();
+            } catch (Exception ignored) {
+            }
+            codec.release();
+            if (muxer != null) {
+                try {
+                    muxer.release();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+
+    private void enforceQuota() {
+        File[] files = recordingsDir.listFiles(File::isFile);
+        if (files == null || files.length == 0) {
+            return;
+        }
+
+        long maxAgeMs = prefs.getInt(Constants.KEY_RECORDING_MAX_AGE_DAYS,
+                Constants.DEFAULT_RECORDING_MAX_AGE_DAYS) * 24L * 60 * 60 * 1000;
+        long maxBytes = prefs.getInt(Constants.KEY_RECORDING_MAX_SIZE_MB,
+                Constants.DEFAULT_RECORDING_MAX_SIZE_MB) * 1024L * 1024L;
+        int maxCount = prefs.getInt(Constants.KEY_RECORDING_MAX_COUNT, Constants.DEFAULT_RECORDING_MAX_COUNT);
+
+        long now = System.currentTimeMillis();
+        List<File> remaining = new ArrayList<>();
+        int deleted = 0;
+        for (File file : files) {
+            if (maxAgeMs > 0 && now - file.lastModified() > maxAgeMs) {
+                if (file.delete()) {
+                    deleted++;
+                }
+            } else {
+                remaining.add(file);
+            }
+        }
+
+        // Oldest recording first
+        File[] sorted = remaining.toArray(new File[0]);
+        Arrays.sort(sorted, Comparator.comparingLong(File::lastModified));
+        long totalBytes = 0;
+        for (File file : sorted) {
+            totalBytes += file.length();
+        }
+        int count = sorted.length;
+        for (File file : sorted) {
+            if (totalBytes <= maxBytes && count <= maxCount) {
+                break;
+            }
+            long size = file.length();
+            if (file.delete()) {
+                totalBytes -= size;
+                count--;
+                deleted++;
+            }
+        }
+
+        if (deleted > 0) {
+            Log.d(TAG, "Recording quota enforced: deleted " + deleted + " files, remaining " +
+                    count + " files / " + totalBytes + " bytes");
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.opencode.voiceassist.utils;
+
+import android.util.Log;
+import android.webkit.WebView;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * WebView JS 桥接
+ * 每次页面加载只安装一次带版本号的 window.__voiceAssist，
+ * 之后每次操作只发送一个紧凑的 JSON 命令批次（注入 + 聚焦 + 发送），一次 evaluateJavascript 往返
+ * 附件不经过 JS 字符串传输：attach 命令让页面从 LocalAttachmentServer 的同源地址 fetch 二进制 Blob
+ */
+public class VoiceAssistJsBridge {
+    private static final String TAG = "VoiceAssistJsBridge";
+
+    public static final int API_VERSION = 3;
+
+    public static final String OP_INJECT = "inject";
+    public static final String OP_INSERT = "insert";
+    public static final String OP_FOCUS = "focus";
+    public static final String OP_SEND = "send";
+    public static final String OP_CLEAR = "clear";
+    public static final String OP_ATTACH = "attach";
+
+    public interface ResultCallback {
+        void onResult(JSONObject result);
+    }
+
+    private static final String INSTALL_SCRIPT =
+        "window.__voiceAssist={v:" + API_VERSION + "," +
+        "input:function(){return document.querySelector('[data-component=\"prompt-input\"]');}," +
+        "fill:function(el,text,append){" +
+        "if(!append)el.innerHTML='';" +
+        "var lines=text.split('\\n');" +
+        "for(var i=0;i<lines.length;i++){" +
+        "if(lines[i])el.appendChild(document.createTextNode(lines[i]));" +
+        "if(i<lines.length-1)el.appendChild(document.createElement('br'));" +
+        "}" +
+        "el.dispatchEvent(new Event('input',{bubbles:true}));" +
+        "el.dispatchEvent(new Event('change',{bubbles:true}));" +
+        "}," +
+        // Space between dictated segments unless either side is CJK, whitespace or closing punctuation
+        "sep:function(prev,next){" +
+        "if(!prev||!next)return '';" +
+        "var a=prev.charAt(prev.length-1),b=next.charAt(0);" +
+        "var cjk=/[\\u2e80-\\u9fff\\uac00-\\ud7af\\uf900-\\ufaff\\uff00-\\uffef]/;" +
+        "if(/\\s/.test(a)||/\\s/.test(b)||cjk.test(a)||cjk.test(b)||/[.,!?;:)\\]}]/.test(b))return '';" +
+        "return ' ';" +
+        "}," +
+        "attach:function(el,url,name,type){" +
+        "var cb=window.AndroidVoiceAssist;" +
+        "function done(ok,msg){if(cb)cb.onAttachmentReady(ok,name,msg);}" +
+        "fetch(url).then(function(r){if(!r.ok)throw new Error('HTTP '+r.status);return r.blob();})" +
+        ".then(function(blob){" +
+        "if(typeof window.addImageAttachmentFromAndroid==='function'&&type.indexOf('image/')===0){" +
+        "var fr=new FileReader();" +
+        "fr.onload=function(){window.addImageAttachmentFromAndroid(String(fr.result).split(',')[1],name,type);done(true,'ok');};" +
+        "fr.onerror=function(){done(false,'read failed');};" +
+        "fr.readAsDataURL(blob);return;}" +
+        "var dt=new DataTransfer();" +
+        "dt.items.add(new File([blob],name,{type:type}));" +
+        "el.focus();" +
+        "el.dispatchEvent(new ClipboardEvent('paste',{clipboardData:dt,bubbles:true,cancelable:true}));" +
+        "done(true,'ok');" +
+        "}).catch(function(e){console.error('VoiceAssist attach error:',e);done(false,String(e.message));});" +
+        "}," +
+        "run:function(cmds){" +
+        "var el=this.input();" +
+        "if(!el)return{ok:false,error:'no-input',done:0};" +
+        "for(var i=0;i<cmds.length;i++){" +
+        "var c=cmds[i];" +
+        "try{" +
+        "if(c.op==='inject')this.fill(el,c.text,false);" +
+        "else if(c.op==='insert')this.fill(el,(c.sep?this.sep(el.textContent,c.text):'')+c.text,true);" +
+        "else if(c.op==='clear')this.fill(el,'',false);" +
+        "else if(c.op==='focus')el.focus();" +
+        "else if(c.op==='attach')this.attach(el,c.url,c.name,c.type);" +
+        "else if(c.op==='send')el.dispatchEvent(new KeyboardEvent('keydown',{key:'Enter',code:'Enter',keyCode:13,which:13,bubbles:true,cancelable:true}));" +
+        "if(c.focus)el.focus();" +
+        "}catch(e){console.error('VoiceAssist '+c.op+' error:',e);return{ok:false,error:String(e.message),done:i};}" +
+        "}" +
+        "return{ok:true,done:cmds.length};" +
+        "}" +
+        "};";
+
+    private final WebView webView;
+
+    public VoiceAssistJsBridge(WebView webView) {
+        this.webView = webView;
+    }
+
+    /**
+     * 安装 JS API，在每次页面加载完成后调用
+     */
+    public void install() {
+        webView.evaluateJavascript("(function(){" + INSTALL_SCRIPT + "return " + API_VERSION + ";})();",
+            result -> Log.d(TAG, "JS API installed, version: " + result));
+    }
+
+    public static JSONObject command(String op) {
+        JSONObject command = new JSONObject();
+        try {
+            command.put("op", op);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        return command;
+    }
+
+    public static JSONObject command(String op, String text, boolean focus) {
+        JSONObject command = command(op);
+        try {
+            command.put("text", text);
+            command.put("focus", focus);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        return command;
+    }
+
+    /**
+     * 追加命令；separate 为 true 时页面按输入框末尾字符决定是否补一个空格（中日韩文字不加）
+     */
+    public static JSONObject insertCommand(String text, boolean separate) {
+        JSONObject command = command(OP_INSERT, text, false);
+        try {
+            command.put("sep", separate);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        return command;
+    }
+
+    /**
+     * 附件命令：url 为 LocalAttachmentServer.register 返回的同源路径，结果通过 onAttachmentReady 异步回调
+     */
+    public static JSONObject attachCommand(String url, String name, String mimeType) {
+        JSONObject command = command(OP_ATTACH);
+        try {
+            command.put("url", url);
+            command.put("name", name);
+            command.put("type", mimeType);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        return command;
+    }
+
+    /**
+     * 执行一个命令批次。若页面已重新加载导致 API 丢失，则补装后重发一次
+     */
+    public void run(JSONArray commands, ResultCallback callback) {
+        String batch = commands.toString();
+        String js = "(function(){" +
+            "var a=window.__voiceAssist;" +
+            "if(!a||a.v!==" + API_VERSION + ")return{ok:false,error:'no-api'};" +
+            "return a.run(" + batch + ");" +
+            "})();";
+
+        webView.evaluateJavascript(js, result -> {
+            JSONObject parsed = parseResult(result);
+            if ("no-api".equals(parsed.optString("error"))) {
+                Log.d(TAG, "JS API missing, reinstalling with batch");
+                String retryJs = "(function(){" + INSTALL_SCRIPT +
+                    "return window.__voiceAssist.run(" + batch + ");})();";
+                webView.evaluateJavascript(retryJs, retryResult -> {
+                    if (callback != null) {
+                        callback.onResult(parseResult(retryResult));
+                    }
+                });
+                return;
+            }
+            if (callback != null) {
+                callback.onResult(parsed);
+            }
+        });
+    }
+
+    private static JSONObject parseResult(String result) {
+        if (result != null && !"null".equals(result)) {
+            try {
+                return new JSONObject(result);
+            } catch (JSONException e) {
+                Log.w(TAG, "Unexpected bridge result: " + result);
+            }
+        }
+        JSONObject failure = new JSONObject();
+        try {
+            failure.put("ok", false);
+            failure.put("error", "no-result");
+        } catch (JSONException ignored) {
+        }
+        return failure;
+    }
+}
@@ -3,11 +3,9 @@ package com.opencode.voiceassist.utils;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
-import android.webkit.ValueCallback;
 import android.webkit.WebView;
 
-import org.json.JSONException;
-import org.json.JSONObject;
+import org.json.JSONArray;
 
 /**
  * WebView 文本注入管理器 - 简化版
@@ -24,6 +22,7 @@ public class WebViewTextInjector {
     
     private final WebView webView;
     private final Handler mainHandler;
+    private final VoiceAssistJsBridge bridge;
     
     private static final int MAX_RETRIES = 3;
     private static final int RETRY_DELAY_MS = 500;
@@ -31,141 +30,87 @@ public class WebViewTextInjector {
     public WebViewTextInjector(WebView webView) {
         this.webView = webView;
         this.mainHandler = new Handler(Looper.getMainLooper());
+        this.bridge = new VoiceAssistJsBridge(webView);
     }
     
     public void injectText(String text, InjectionCallback callback) {
-        injectWithRetry(text, true, 0, callback);
+        injectText(text, true, false, callback);
     }
     
     public void injectText(String text, boolean setFocus, InjectionCallback callback) {
-        injectWithRetry(text, setFocus, 0, callback);
+        injectText(text, setFocus, false, callback);
     }
     
-    private void injectWithRetry(String text, boolean setFocus, int attempt, InjectionCallback callback) {
+    /**
+     * 注入文本，并可在同一个命令批次中触发发送
+     */
+    public void injectText(String text, boolean setFocus, boolean send, InjectionCallback callback) {
+        JSONArray commands = new JSONArray();
+        commands.put(VoiceAssistJsBridge.command(VoiceAssistJsBridge.OP_INJECT, text, setFocus));
+        if (send) {
+            commands.put(VoiceAssistJsBridge.command(VoiceAssistJsBridge.OP_SEND));
+        }
+        runWithRetry(commands, text, 0, callback);
+    }
+    
+    /**
+     * 执行任意命令批次（如语音指令），输入框未就绪时按相同策略重试
+     */
+    public void runCommands(JSONArray commands, InjectionCallback callback) {
+        runWithRetry(commands, null, 0, callback);
+    }
+    
+    private void runWithRetry(JSONArray commands, String text, int attempt, InjectionCallback callback) {
         if (attempt > 0 && callback != null) {
             callback.onRetry(attempt, MAX_RETRIES);
         }
         
-        performInjection(text, setFocus, success -> {
-            if (success) {
-                Log.i(TAG, "Text injected successfully");
+        bridge.run(commands, result -> {
+            if (result.optBoolean("ok", false)) {
+                Log.i(TAG, "Command batch executed: " + commands.length() + " commands");
                 if (callback != null) {
                     callback.onSuccess(text);
                 }
+            } else if (result.optInt("done", 0) > 0) {
+                // Part of the batch already ran; replaying it would duplicate side effects
+                Log.e(TAG, "Command batch failed midway: " + result);
+                if (callback != null) {
+                    callback.onFailure("执行失败: " + result.optString("error"));
+                }
+            } else if (attempt < MAX_RETRIES) {
+                Log.w(TAG, "Injection failed (" + result.optString("error") + "), retrying... (attempt " +
+                        (attempt + 1) + "/" + MAX_RETRIES + ")");
+                mainHandler.postDelayed(() -> runWithRetry(commands, text, attempt + 1, callback), RETRY_DELAY_MS);
             } else {
-                if (attempt < MAX_RETRIES) {
-                    Log.w(TAG, "Injection failed, retrying... (attempt " + (attempt + 1) + "/" + MAX_RETRIES + ")");
-                    mainHandler.postDelayed(() -> injectWithRetry(text, setFocus, attempt + 1, callback), RETRY_DELAY_MS);
-                } else {
-                    Log.e(TAG, "Injection failed after max retries");
-                    if (callback != null) {
-                        callback.onFailure("注入失败");
-                    }
+                Log.e(TAG, "Injection failed after max retries");
+                if (callback != null) {
+                    callback.onFailure("注入失败");
                 }
             }
         });
     }
     
-    private void performInjection(String text, boolean setFocus, InjectionResultCallback callback) {
-        // 使用 JSON 安全地转义文本
-        String jsonText = JSONObject.quote(text);
-        
-        // 简化版 JavaScript，避免复杂语法
-        String jsCode = "(function(){" +
-            "try{" +
-            "var input=document.querySelector('[data-component=\"prompt-input\"]');" +
-            "if(!input)return false;" +
-            "input.innerHTML='';" +
-            "var text=" + jsonText + ";" +
-            "var lines=text.split('\\n');" +
-            "for(var i=0;i<lines.length;i++){" +
-            "if(lines[i])input.appendChild(document.createTextNode(lines[i]));" +
-            "if(i<lines.length-1)input.appendChild(document.createElement('br'));" +
-            "}" +
-            "input.dispatchEvent(new Event('input',{bubbles:true}));" +
-            "input.dispatchEvent(new Event('change',{bubbles:true}));" +
-            (setFocus ? "input.focus();" : "") +
-            "return true;" +
-            "}catch(e){" +
-            "console.error('Injection error:',e);" +
-            "return false;" +
-            "}" +
-            "})();";
-        
-        webView.evaluateJavascript(jsCode, result -> {
-            boolean success = "true".equals(result);
-            callback.onResult(success);
-        });
-    }
-    
     /**
-     * 预注入 JavaScript 函数到页面
+     * 预注入 JavaScript API 到页面（每次页面加载一次）
      */
     public void injectHelperFunctions() {
-        // 简化的帮助函数
-        String jsCode = "(function(){" +
-            "window.perfectTextInjection=function(text){" +
-            "try{" +
-            "var input=document.querySelector('[data-component=\"prompt-input\"]');" +
-            "if(!input)return false;" +
-            "input.innerHTML='';" +
-            "var lines=text.split('\\n');" +
-            "for(var i=0;i<lines.length;i++){" +
-            "if(lines[i])input.appendChild(document.createTextNode(lines[i]));" +
-            "if(i<lines.length-1)input.appendChild(document.createElement('br'));" +
-            "}" +
-            "input.dispatchEvent(new Event('input',{bubbles:true}));" +
-            "input.dispatchEvent(new Event('change',{bubbles:true}));" +
-            "input.focus();" +
-            "return true;" +
-            "}catch(e){" +
-            "console.error('Injection error:',e);" +
-            "return false;" +
-            "}" +
-            "};" +
-            "console.log('WebViewTextInjector: Helper functions injected');" +
-            "})();";
-        
-        webView.evaluateJavascript(jsCode, null);
+        bridge.install();
     }
     
     /**
      * 触发发送操作（模拟回车键）
      */
     public void triggerSend(SendResultCallback callback) {
-        String jsCode = "(function(){" +
-            "try{" +
-            "var input=document.querySelector('[data-component=\"prompt-input\"]');" +
-            "if(!input)return false;" +
-            "var event=new KeyboardEvent('keydown',{" +
-            "key:'Enter'," +
-            "code:'Enter'," +
-            "keyCode:13," +
-            "which:13," +
-            "bubbles:true," +
-            "cancelable:true" +
-            "});" +
-            "input.dispatchEvent(event);" +
-            "return true;" +
-            "}catch(e){" +
-            "console.error('Send trigger error:',e);" +
-            "return false;" +
-            "}" +
-            "})();";
-        
-        webView.evaluateJavascript(jsCode, result -> {
-            boolean success = "true".equals(result);
+        JSONArray commands = new JSONArray();
+        commands.put(VoiceAssistJsBridge.command(VoiceAssistJsBridge.OP_SEND));
+        bridge.run(commands, result -> {
             if (callback != null) {
-                callback.onResult(success);
+                callback.onResult(result.optBoolean("ok", false));
             }
         });
     }
     
-    private interface InjectionResultCallback {
-        void onResult(boolean success);
-    }
-    
     public interface SendResultCallback {
         void onResult(boolean success);
     }
-}
+}
\ No newline at end of file
@@ -0,0 +1,102 @@
+package com.whispercppdemo.whisper;
+
+import android.os.Build;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * ARM feature bits relevant to the whisper library variants.
+ *
+ * Reads AT_HWCAP from /proc/self/auxv (what getauxval() returns natively);
+ * falls back to the "Features" line of /proc/cpuinfo when auxv is unreadable.
+ */
+public class CpuFeatures {
+    private static final String LOG_TAG = "WhisperCpuConfig";
+
+    private static final long AT_HWCAP = 16;
+
+    // arch/arm64/include/uapi/asm/hwcap.h
+    private static final long HWCAP_FPHP = 1L << 9;
+    private static final long HWCAP_ASIMDHP = 1L << 10;
+    // arch/arm/include/uapi/asm/hwcap.h
+    private static final long HWCAP_ARM_VFPv4 = 1L << 16;
+
+    public final boolean fp16;
+    public final boolean vfpv4;
+
+    private CpuFeatures(boolean fp16, boolean vfpv4) {
+        this.fp16 = fp16;
+        this.vfpv4 = vfpv4;
+    }
+
+    public static CpuFeatures detect() {
+        Long hwcap = readHwcap();
+        if (hwcap != null) {
+            if (Utils.isArmEabiV8a()) {
+                return new CpuFeatures((hwcap & HWCAP_FPHP) != 0 && (hwcap & HWCAP_ASIMDHP) != 0, false);
+            }
+            if (Utils.isArmEabiV7a()) {
+                return new CpuFeatures(false, (hwcap & HWCAP_ARM_VFPv4) != 0);
+            }
+            return new CpuFeatures(false, false);
+        }
+
+        String cpuInfo = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O ? Utils.cpuInfo() : null;
+        String features = cpuInfo != null ? featuresLine(cpuInfo) : "";
+        return new CpuFeatures(
+                Utils.isArmEabiV8a() && hasFlag(features, "fphp") && hasFlag(features, "asimdhp"),
+                Utils.isArmEabiV7a() && hasFlag(features, "vfpv4"));
+    }
+
+    /**
+     * @return AT_HWCAP, or null when /proc/self/auxv cannot be read
+     */
+    private static Long readHwcap() {
+        boolean is64Bit = android.os.Process.is64Bit();
+        int wordSize = is64Bit ? 8 : 4;
+        byte[] raw = new byte[4096];
+        int length = 0;
+        try (FileInputStream in = new FileInputStream("/proc/self/auxv")) {
+            int read;
+            while (length < raw.length && (read = in.read(raw, length, raw.length - length)) > 0) {
+                length += read;
+            }
+        } catch (IOException | SecurityException e) {
+            Log.d(LOG_TAG, "Couldn't read /proc/self/auxv", e);
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(raw, 0, length).order(ByteOrder.nativeOrder());
+        while (buffer.remaining() >= 2 * wordSize) {
+            long type = is64Bit ? buffer.getLong() : buffer.getInt() & 0xffffffffL;
+            long value = is64Bit ? buffer.getLong() : buffer.getInt() & 0xffffffffL;
+            if (type == 0) {
+                break;
+            } else if (type == AT_HWCAP) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private static String featuresLine(String cpuInfo) {
+        for (String line : cpuInfo.split("\n")) {
+            if (line.startsWith("Features")) {
+                return " " + line.substring(line.indexOf(':') + 1).trim() + " ";
+            }
+        }
+        return "";
+    }
+
+    private static boolean hasFlag(String features, String flag) {
+        return features.contains(" " + flag + " ");
+    }
+
+    @Override
+    public String toString() {
+        return "fp16=" + fp16 + ", vfpv4=" + vfpv4;
+    }
+}
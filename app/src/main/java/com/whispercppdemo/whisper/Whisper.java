@@ -5,6 +5,8 @@ import android.util.Log;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import com.opencode.voiceassist.model.TranscriptionResult;
 
@@ -12,12 +14,17 @@ public class Whisper {
     
     private static final String TAG = "Whisper";
     private WhisperContext whisperContext;
+    private volatile WhisperStatePool statePool;
+    private WhisperContext draftContext;
+    private int draftTokens;
     private String modelPath;
     private boolean useGpu;
+    private String language;
     
-    private Whisper(String modelPath, boolean useGpu) {
+    private Whisper(String modelPath, boolean useGpu, String language) {
         this.modelPath = modelPath;
         this.useGpu = useGpu;
+        this.language = language;
     }
     
     public TranscriptionResult transcribe(String audioPath) {
@@ -26,12 +33,35 @@ public class Whisper {
             return null;
         }
         
+        float[] audioData;
         try {
             Log.d(TAG, "Starting transcription for: " + audioPath);
-            float[] audioData = WaveEncoder.decodeWaveFile(new File(audioPath));
+            audioData = WaveEncoder.decodeWaveFile(new File(audioPath));
             Log.d(TAG, "Audio data decoded, length: " + audioData.length + " samples");
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to decode " + audioPath, e);
+            return null;
+        }
+        return transcribe(audioData);
+    }
+    
+    /**
+     * @param audioData 16kHz mono samples in [-1, 1]
+     */
+    public TranscriptionResult transcribe(float[] audioData) {
+        if (whisperContext == null) {
+            Log.e(TAG, "Whisper context not initialized");
+            return null;
+        }
+        
+        try {
             // Whisper expects 16kHz mono float samples, WaveEncoder already normalizes to [-1,1]
-            TranscriptionResult result = whisperContext.transcribeData(audioData);
+            WhisperDecodeParams params = WhisperDecodeParams.forDuration(audioData.length / 16000.0, language);
+            WhisperStatePool pool = statePool;
+            // Pool states decode without a draft; speculation goes through the main context
+            TranscriptionResult result = pool != null && !whisperContext.hasDraftContext()
+                    ? pool.submit(audioData, params).get()
+                    : whisperContext.transcribeData(audioData, params);
             if (result != null) {
                 Log.d(TAG, "Transcription completed, text length: " + result.getText().length());
                 Log.d(TAG, "Performance: audio=" + String.format("%.2f", result.getAudioLengthSeconds()) + "s, " +
@@ -41,6 +71,16 @@ public class Whisper {
                 Log.d(TAG, "Transcription completed, result is null");
             }
             return result;
+        } catch (CancellationException e) {
+            Log.d(TAG, "Transcription cancelled");
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException) {
+                Log.d(TAG, "Transcription cancelled");
+            } else {
+                Log.e(TAG, "Transcription failed", e);
+            }
+            return null;
         } catch (Exception e) {
             Log.e(TAG, "Transcription failed", e);
             e.printStackTrace();
@@ -48,6 +88,137 @@ public class Whisper {
         }
     }
     
+    /**
+     * Lets up to {@code size} transcribe() calls decode at once on separate whisper states
+     * that share this model's weights.
+     *
+     * @return the number of parallel decodes actually available (1 when the native library
+     *         has no state API)
+     */
+    public synchronized int enableStatePool(int size) {
+        if (whisperContext == null) {
+            return 1;
+        }
+        if (statePool == null) {
+            statePool = WhisperStatePool.create(whisperContext, size);
+        }
+        return statePool != null ? statePool.getSize() : 1;
+    }
+    
+    /**
+     * Loads a small model of the same family (e.g. tiny.en for base.en) to draft tokens for
+     * this one. Output stays identical to decoding with this model alone; only the cost per
+     * token drops when the draft guesses well.
+     *
+     * @param draftTokens tokens drafted per verification step
+     * @return false when the library has no speculative decode
+     *         ({@link WhisperLib.Feature#SPECULATIVE}) or the draft model cannot be loaded;
+     *         nothing is loaded in either case
+     */
+    public synchronized boolean setDraftModel(String draftModelPath, int draftTokens) {
+        if (whisperContext == null) {
+            return false;
+        }
+        if (!WhisperLib.hasFeature(WhisperLib.Feature.SPECULATIVE)) {
+            Log.w(TAG, "Native library has no speculative decode, not loading draft model");
+            return false;
+        }
+        clearDraftModel();
+        WhisperContext draft = null;
+        try {
+            draft = WhisperContext.createContextFromFile(draftModelPath, useGpu);
+            whisperContext.setDraftContext(draft, draftTokens);
+            draftContext = draft;
+            this.draftTokens = draftTokens;
+            Log.i(TAG, "Draft model attached: " + draftModelPath);
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to load draft model " + draftModelPath, e);
+            if (draft != null) {
+                // Not attached, so nothing else holds it
+                try {
+                    draft.release();
+                } catch (Exception releaseError) {
+                    Log.e(TAG, "Failed to release draft model", releaseError);
+                }
+            }
+            return false;
+        }
+    }
+    
+    public synchronized void clearDraftModel() {
+        if (draftContext == null) {
+            return;
+        }
+        try {
+            if (whisperContext != null) {
+                whisperContext.setDraftContext(null, 0);
+            }
+            draftContext.release();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to release draft model", e);
+        }
+        draftContext = null;
+    }
+    
+    public boolean hasDraftModel() {
+        WhisperContext context = whisperContext;
+        return context != null && context.hasDraftContext();
+    }
+    
+    /**
+     * Decodes the same clip without and then with the draft model, for comparing real-time factors
+     *
+     * @return {plain, speculative}, or null without a draft model or when a decode fails
+     */
+    public synchronized TranscriptionResult[] benchmarkSpeculative(float[] audioData) {
+        if (!hasDraftModel()) {
+            return null;
+        }
+        WhisperDecodeParams params = WhisperDecodeParams.forDuration(audioData.length / 16000.0, language);
+        try {
+            TranscriptionResult plain;
+            try {
+                whisperContext.setDraftContext(null, 0);
+                plain = whisperContext.transcribeData(audioData, params);
+            } finally {
+                whisperContext.setDraftContext(draftContext, draftTokens);
+            }
+            TranscriptionResult speculative = whisperContext.transcribeData(audioData, params);
+            Log.d(TAG, "Speculative benchmark: plain RTF=" + String.format("%.2f", plain.getRealtimeFactor())
+                    + ", speculative RTF=" + String.format("%.2f", speculative.getRealtimeFactor())
+                    + ", acceptance=" + whisperContext.getLastDraftAcceptance());
+            return new TranscriptionResult[]{plain, speculative};
+        } catch (Exception e) {
+            Log.e(TAG, "Speculative benchmark failed", e);
+            return null;
+        }
+    }
+    
+    /**
+     * @see WhisperContext#getLastDraftAcceptance()
+     */
+    public float getLastDraftAcceptance() {
+        WhisperContext context = whisperContext;
+        return context != null ? context.getLastDraftAcceptance() : Float.NaN;
+    }
+    
+    /**
+     * Cancels the in-flight transcription; the pending transcribe() call returns null at once.
+     * The native decode itself only stops early when the library supports abort
+     * (see {@link WhisperContext#cancel()})
+     */
+    public void cancel() {
+        WhisperStatePool pool = statePool;
+        if (pool != null) {
+            pool.cancelAll();
+        }
+        WhisperContext context = whisperContext;
+        if (context != null) {
+            context.cancel();
+        }
+    }
+    
     public static Builder builder() {
         return new Builder();
     }
@@ -55,6 +226,7 @@ public class Whisper {
     public static class Builder {
         private String modelPath;
         private boolean useGpu = false;
+        private String language;
         
         public Builder setModelPath(String modelPath) {
             this.modelPath = modelPath;
@@ -66,8 +238,20 @@ public class Whisper {
             return this;
         }
         
+        /**
+         * Defaults to "en" for English-only (*.en) models and "auto" otherwise
+         */
+        public Builder setLanguage(String language) {
+            this.language = language;
+            return this;
+        }
+        
         public Whisper build() {
-            Whisper whisper = new Whisper(modelPath, useGpu);
+            String lang = language;
+            if (lang == null) {
+                lang = modelPath != null && modelPath.contains(".en.") ? "en" : "auto";
+            }
+            Whisper whisper = new Whisper(modelPath, useGpu, lang);
             // Initialize WhisperContext here (load model)
             try {
                 whisper.whisperContext = WhisperContext.createContextFromFile(modelPath, useGpu);
@@ -80,7 +264,13 @@ public class Whisper {
         }
     }
     
-    public void release() {
+    public synchronized void release() {
+        if (statePool != null) {
+            // States reference the context's model, so they go first
+            statePool.release();
+            statePool = null;
+        }
+        clearDraftModel();
         if (whisperContext != null) {
             try {
                 whisperContext.release();
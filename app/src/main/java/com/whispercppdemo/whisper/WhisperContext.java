@@ -7,13 +7,20 @@ import android.util.Log;
 import androidx.annotation.RequiresApi;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
+import com.opencode.voiceassist.model.TranscriptSegment;
 import com.opencode.voiceassist.model.TranscriptionResult;
 
 public class WhisperContext {
@@ -22,20 +29,48 @@ public class WhisperContext {
     private long ptr;
     private final ExecutorService executorService;
 
+    // Optional small model that drafts tokens for this one (speculative decoding)
+    private volatile WhisperContext draftContext;
+    private volatile int draftTokens;
+    private volatile float lastDraftAcceptance = Float.NaN;
+
+    // Guards the native abort flag against a cancel() racing the start of the next decode
+    private final Object abortLock = new Object();
+    private boolean decodeRunning = false;
+    // Bumped by cancel(); tasks submitted before it skip or discard their result
+    private volatile int generation = 0;
+    private final Set<Future<TranscriptionResult>> inFlight = new HashSet<>();
+
     private WhisperContext(long ptr) {
         this.ptr = ptr;
         this.executorService = Executors.newSingleThreadExecutor();
     }
 
     public TranscriptionResult transcribeData(float[] data) throws ExecutionException, InterruptedException {
-        try {
-            return executorService.submit(new Callable<TranscriptionResult>() {
+        return transcribeData(data, null);
+    }
+
+    /**
+     * @param params decode parameters; null runs whisper's defaults over the full 30s window
+     */
+    public TranscriptionResult transcribeData(float[] data, WhisperDecodeParams params) throws ExecutionException, InterruptedException {
+        final int taskGeneration = generation;
+        Future<TranscriptionResult> future;
+        synchronized (inFlight) {
+            future = executorService.submit(new Callable<TranscriptionResult>() {
                 @RequiresApi(api = Build.VERSION_CODES.O)
                 @Override
                 public TranscriptionResult call() throws Exception {
                     if (ptr == 0L) {
                         throw new IllegalStateException();
                     }
+                    synchronized (abortLock) {
+                        if (taskGeneration != generation) {
+                            throw new CancellationException("Cancelled before decode started");
+                        }
+                        setNativeAbort(false);
+                        decodeRunning = true;
+                    }
                     // Use optimal thread count based on device CPU configuration
                     int numThreads = WhisperCpuConfig.getPreferredThreadCount();
                     Log.d(LOG_TAG, "Selecting " + numThreads + " threads (optimal for device)");
@@ -44,29 +79,159 @@ public class WhisperContext {
                           audioSeconds + " seconds)");
                     
                     long startTime = System.currentTimeMillis();
-                    WhisperLib.fullTranscribe(ptr, numThreads, data);
+                    try {
+                        WhisperLib.beforeDecode();
+                        runFull(numThreads, data, params);
+                        WhisperLib.afterDecode();
+                    } finally {
+                        synchronized (abortLock) {
+                            decodeRunning = false;
+                        }
+                    }
                     long endTime = System.currentTimeMillis();
+                    if (taskGeneration != generation) {
+                        Log.d(LOG_TAG, "Decode aborted after " + (endTime - startTime) + " ms");
+                        throw new CancellationException("Transcription cancelled");
+                    }
                     
-                    int textCount = WhisperLib.getTextSegmentCount(ptr);
+                    List<TranscriptSegment> segments = readSegments();
                     long transcriptionTime = endTime - startTime;
                     double realtimeFactor = transcriptionTime / (audioSeconds * 1000.0);
-                    Log.d(LOG_TAG, "Transcription complete, segments: " + textCount);
+                    Log.d(LOG_TAG, "Transcription complete, segments: " + segments.size());
                     Log.d(LOG_TAG, "Transcription time: " + transcriptionTime + " ms (" + 
                           (transcriptionTime / 1000.0) + " seconds)");
                     Log.d(LOG_TAG, "Realtime factor: " + String.format("%.1f", realtimeFactor) + "x (lower is faster)");
                     StringBuilder result = new StringBuilder();
-                    for (int i = 0; i < textCount; i++) {
-                        String segment = WhisperLib.getTextSegment(ptr, i);
-                        result.append(segment);
-                        Log.d(LOG_TAG, "Segment " + i + ": " + segment);
+                    for (TranscriptSegment segment : segments) {
+                        result.append(segment.getText());
                     }
-                    return new TranscriptionResult(result.toString(), audioSeconds, transcriptionTime, realtimeFactor);
+                    return new TranscriptionResult(result.toString(), audioSeconds, transcriptionTime, realtimeFactor, segments);
                 }
-            }).get(300, TimeUnit.SECONDS); // 300 second (5 minute) timeout for very slow devices
+            });
+            inFlight.add(future);
+        }
+        try {
+            return future.get(300, TimeUnit.SECONDS); // 300 second (5 minute) timeout for very slow devices
         } catch (TimeoutException e) {
             Log.e(LOG_TAG, "Transcription timeout after 300 seconds", e);
+            cancel();
             throw new RuntimeException("Transcription timeout", e);
+        } finally {
+            synchronized (inFlight) {
+                inFlight.remove(future);
+            }
+        }
+    }
+
+    /**
+     * Drops queued decodes; waiting transcribeData calls throw CancellationException right away.
+     * The running decode is aborted (whisper.cpp abort_callback, within one graph step) only
+     * with a library that lists {@link WhisperLib.Feature#ABORT}; otherwise it runs to the end
+     * on the decode thread and its result is discarded.
+     */
+    public void cancel() {
+        synchronized (abortLock) {
+            generation++;
+            if (decodeRunning) {
+                setNativeAbort(true);
+            }
+        }
+        synchronized (inFlight) {
+            // Releases waiters right away even when the library cannot abort natively
+            for (Future<TranscriptionResult> future : inFlight) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * One JNI call for all segments; falls back to per-segment text calls (no timing or
+     * probabilities) on libraries without {@link WhisperLib.Feature#FULL_RESULT}.
+     */
+    private List<TranscriptSegment> readSegments() {
+        if (WhisperLib.hasFeature(WhisperLib.Feature.FULL_RESULT)) {
+            return toSegments(WhisperLib.getFullResult(ptr));
+        }
+        int textCount = WhisperLib.getTextSegmentCount(ptr);
+        List<TranscriptSegment> segments = new ArrayList<>(textCount);
+        for (int i = 0; i < textCount; i++) {
+            segments.add(new TranscriptSegment(WhisperLib.getTextSegment(ptr, i), 0, 0, Float.NaN, Float.NaN));
+        }
+        return segments;
+    }
+
+    /**
+     * Unpacks the getFullResult / getStateFullResult layout
+     */
+    static List<TranscriptSegment> toSegments(Object[] raw) {
+        String[] texts = (String[]) raw[0];
+        long[] times = (long[]) raw[1];
+        float[] probs = (float[]) raw[2];
+        List<TranscriptSegment> segments = new ArrayList<>(texts.length);
+        for (int i = 0; i < texts.length; i++) {
+            segments.add(new TranscriptSegment(texts[i], times[2 * i] * 10, times[2 * i + 1] * 10,
+                    probs[2 * i], probs[2 * i + 1]));
+        }
+        return segments;
+    }
+
+    long getPtr() {
+        return ptr;
+    }
+
+    /**
+     * Decodes through {@code draft} speculatively from now on; null turns it off. Runs on the
+     * decode thread, so once this returns no decode still uses the previous draft and it can
+     * be released.
+     */
+    public void setDraftContext(WhisperContext draft, int draftTokens) throws ExecutionException, InterruptedException {
+        executorService.submit(() -> {
+            this.draftTokens = Math.max(1, draftTokens);
+            this.draftContext = draft;
+        }).get();
+    }
+
+    public boolean hasDraftContext() {
+        return draftContext != null;
+    }
+
+    /**
+     * Fraction of drafted tokens the main model accepted in the last speculative decode;
+     * NaN when the last decode did not speculate
+     */
+    public float getLastDraftAcceptance() {
+        return lastDraftAcceptance;
+    }
+
+    private void setNativeAbort(boolean abort) {
+        if (WhisperLib.hasFeature(WhisperLib.Feature.ABORT)) {
+            WhisperLib.setAbort(ptr, abort);
+        }
+    }
+
+    private void runFull(int numThreads, float[] data, WhisperDecodeParams params) {
+        lastDraftAcceptance = Float.NaN;
+        WhisperContext draft = draftContext;
+        // Verification keeps the main model's argmax, which only holds for greedy decoding
+        if (draft != null && draft.ptr != 0L
+                && (params == null || params.getStrategy() == WhisperDecodeParams.STRATEGY_GREEDY)) {
+            WhisperDecodeParams p = params != null ? params : WhisperDecodeParams.builder().build();
+            int[] stats = WhisperLib.fullTranscribeSpeculative(ptr, draft.ptr, numThreads, data,
+                    p.getAudioCtx(), p.getLanguage(), p.isNoTimestamps(), p.isSingleSegment(), draftTokens);
+            if (stats != null && stats.length >= 2 && stats[0] > 0) {
+                lastDraftAcceptance = stats[1] / (float) stats[0];
+                Log.d(LOG_TAG, "Speculative decode: " + stats[1] + "/" + stats[0] + " drafted tokens accepted");
+            }
+            return;
+        }
+        if (params != null && WhisperLib.hasFeature(WhisperLib.Feature.DECODE_PARAMS)) {
+            Log.d(LOG_TAG, "Decode params: " + params);
+            WhisperLib.fullTranscribeWithParams(ptr, numThreads, data,
+                    params.getAudioCtx(), params.getStrategy(), params.getBeamSize(), params.getLanguage(),
+                    params.isNoTimestamps(), params.isSingleSegment());
+            return;
         }
+        WhisperLib.fullTranscribe(ptr, numThreads, data);
     }
 
     @RequiresApi(api = Build.VERSION_CODES.O)
@@ -81,6 +246,7 @@ public class WhisperContext {
 
     @RequiresApi(api = Build.VERSION_CODES.O)
     public void release() throws ExecutionException, InterruptedException {
+        cancel();
         executorService.submit(() -> {
             if (ptr != 0L) {
                 WhisperLib.freeContext(ptr);
@@ -8,6 +8,20 @@ import androidx.annotation.RequiresApi;
 public class WhisperCpuConfig {
     private static final String TAG = "WhisperCpuConfig";
     
+    // Upper bound set by the app's thermal/battery scheduler; 0 = no limit
+    private static volatile int threadCap = 0;
+    
+    /**
+     * Caps getPreferredThreadCount() (e.g. under thermal pressure); 0 removes the cap
+     */
+    public static void setThreadCap(int cap) {
+        threadCap = cap;
+    }
+    
+    public static int getThreadCap() {
+        return threadCap;
+    }
+    
     @RequiresApi(api = Build.VERSION_CODES.N)
     public static int getPreferredThreadCount() {
         // Try to get optimal thread count for Whisper transcription
@@ -62,6 +76,12 @@ public class WhisperCpuConfig {
                 Log.d(TAG, "通用策略: 推荐线程数: " + recommendedThreads);
             }
             
+            int cap = threadCap;
+            if (cap > 0 && recommendedThreads > cap) {
+                recommendedThreads = cap;
+                Log.d(TAG, "调度限制线程数: " + cap);
+            }
+            
             Log.d(TAG, "最终线程数: " + recommendedThreads);
             return recommendedThreads;
             
@@ -69,7 +89,8 @@ public class WhisperCpuConfig {
             Log.d(TAG, "Error getting CPU info, using fallback", e);
             // Fallback: use 4 threads (reasonable for most devices)
             Log.d(TAG, "Fallback returning 4 threads");
-            return 4;
+            int cap = threadCap;
+            return cap > 0 ? Math.min(4, cap) : 4;
         }
     }
 }
\ No newline at end of file
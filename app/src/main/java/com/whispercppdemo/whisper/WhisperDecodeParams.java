@@ -0,0 +1,157 @@
+package com.whispercppdemo.whisper;
+
+/**
+ * Decode parameters passed to whisper_full through WhisperLib.fullTranscribeWithParams.
+ *
+ * The encoder normally runs over the full 30s window (1500 audio frames) no matter how
+ * long the clip is; audioCtx limits it to the frames that actually contain audio, which
+ * makes short utterances several times cheaper. Use {@link #forDuration} to pick values
+ * from the clip length, or the builder to set them explicitly.
+ *
+ * Only the Java side exists in this tree: the parameters reach whisper.cpp only with a
+ * library that lists {@link WhisperLib.Feature#DECODE_PARAMS}. Others decode with
+ * whisper's defaults over the full window.
+ */
+public class WhisperDecodeParams {
+
+    public static final int STRATEGY_GREEDY = 0;
+    public static final int STRATEGY_BEAM_SEARCH = 1;
+
+    // Encoder frames per second of audio (1500 frames cover the 30s window)
+    private static final int FRAMES_PER_SECOND = 50;
+    private static final int FULL_AUDIO_CTX = 1500;
+    // Truncating the encoder harder than this noticeably hurts accuracy
+    private static final int MIN_AUDIO_CTX = 256;
+    private static final int AUDIO_CTX_MARGIN = 64;
+    private static final int AUDIO_CTX_ALIGN = 64;
+    // Clips up to this length are decoded as one segment without timestamps
+    private static final double SHORT_CLIP_SECONDS = 10.0;
+
+    private final int audioCtx;
+    private final int strategy;
+    private final int beamSize;
+    private final String language;
+    private final boolean noTimestamps;
+    private final boolean singleSegment;
+
+    private WhisperDecodeParams(Builder builder) {
+        this.audioCtx = builder.audioCtx;
+        this.strategy = builder.strategy;
+        this.beamSize = builder.beamSize;
+        this.language = builder.language;
+        this.noTimestamps = builder.noTimestamps;
+        this.singleSegment = builder.singleSegment;
+    }
+
+    /**
+     * Chooses parameters from the utterance length: short clips get a truncated encoder,
+     * a single segment and no timestamps; longer ones keep the full window.
+     */
+    public static WhisperDecodeParams forDuration(double audioSeconds, String language) {
+        Builder builder = builder().setLanguage(language);
+        if (audioSeconds <= SHORT_CLIP_SECONDS) {
+            builder.setAudioCtx(audioCtxFor(audioSeconds))
+                    .setNoTimestamps(true)
+                    .setSingleSegment(true);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Encoder frames needed for the clip, plus a margin, aligned and clamped to [MIN, 1500].
+     * Returns 0 (whisper's "use the full window") when truncation would not help.
+     */
+    static int audioCtxFor(double audioSeconds) {
+        int frames = (int) Math.ceil(audioSeconds * FRAMES_PER_SECOND) + AUDIO_CTX_MARGIN;
+        frames = (frames + AUDIO_CTX_ALIGN - 1) / AUDIO_CTX_ALIGN * AUDIO_CTX_ALIGN;
+        frames = Math.max(frames, MIN_AUDIO_CTX);
+        return frames >= FULL_AUDIO_CTX ? 0 : frames;
+    }
+
+    public int getAudioCtx() {
+        return audioCtx;
+    }
+
+    public int getStrategy() {
+        return strategy;
+    }
+
+    public int getBeamSize() {
+        return beamSize;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public boolean isNoTimestamps() {
+        return noTimestamps;
+    }
+
+    public boolean isSingleSegment() {
+        return singleSegment;
+    }
+
+    @Override
+    public String toString() {
+        return "audioCtx=" + audioCtx
+                + ", strategy=" + (strategy == STRATEGY_BEAM_SEARCH ? "beam(" + beamSize + ")" : "greedy")
+                + ", language=" + language
+                + ", noTimestamps=" + noTimestamps
+                + ", singleSegment=" + singleSegment;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+        private int audioCtx = 0;
+        private int strategy = STRATEGY_GREEDY;
+        private int beamSize = 5;
+        private String language = "en";
+        private boolean noTimestamps = false;
+        private boolean singleSegment = false;
+
+        /**
+         * @param audioCtx encoder frames (0 = full 30s window)
+         */
+        public Builder setAudioCtx(int audioCtx) {
+            this.audioCtx = audioCtx;
+            return this;
+        }
+
+        public Builder setGreedy() {
+            this.strategy = STRATEGY_GREEDY;
+            return this;
+        }
+
+        public Builder setBeamSearch(int beamSize) {
+            this.strategy = STRATEGY_BEAM_SEARCH;
+            this.beamSize = beamSize;
+            return this;
+        }
+
+        /**
+         * @param language ISO code, or "auto" for multilingual models
+         */
+        public Builder setLanguage(String language) {
+            this.language = language;
+            return this;
+        }
+
+        public Builder setNoTimestamps(boolean noTimestamps) {
+            this.noTimestamps = noTimestamps;
+            return this;
+        }
+
+        public Builder setSingleSegment(boolean singleSegment) {
+            this.singleSegment = singleSegment;
+            return this;
+        }
+
+        public WhisperDecodeParams build() {
+            return new WhisperDecodeParams(this);
+        }
+    }
+}
@@ -1,75 +1,273 @@
 package com.whispercppdemo.whisper;
 
+import android.content.Context;
 import android.content.res.AssetManager;
 import android.os.Build;
 import android.util.Log;
 
-import androidx.annotation.RequiresApi;
-
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
 
 public class WhisperLib {
     private static final String LOG_TAG = "LibWhisper";
-    private static boolean libraryLoaded = false;
+    private static final String DECISION_FILE = "whisper_variant.properties";
+
+    private static volatile boolean libraryLoaded = false;
+    private static volatile String loadedVariant = null;
     private static UnsatisfiedLinkError loadError = null;
 
-    static {
+    // Variant that has passed the self-test but not yet finished a real decode on this device
+    private static volatile String unverifiedVariant = null;
+    private static boolean firstDecodeMarked = false;
+    private static File decisionFile;
+    private static Properties decision;
+
+    /**
+     * Optional JNI entry points beyond the stock whisper.android bindings. A library that
+     * implements any of them also exports getFeatures() listing their names; the prebuilt
+     * libraries shipped so far export neither, so callers keep to the stock calls.
+     */
+    public enum Feature {
+        // getFullResult / getStateFullResult: timings and probabilities in one call
+        FULL_RESULT("full_result"),
+        // fullTranscribeWithParams: audio_ctx, strategy, language, single segment
+        DECODE_PARAMS("decode_params"),
+        // setAbort: whisper.cpp abort_callback, so cancel() stops a running decode
+        ABORT("abort"),
+        // initState / freeState / fullTranscribeWithState / getStateFullResult / setStateAbort
+        STATES("states"),
+        // fullTranscribeSpeculative: a small model drafts tokens for the main one
+        SPECULATIVE("speculative");
+
+        final String nativeName;
+
+        Feature(String nativeName) {
+            this.nativeName = nativeName;
+        }
+    }
+
+    private static volatile Set<String> features;
+
+    /**
+     * Library variants, most specialised first. A variant is only tried when the CPU has
+     * every feature it was compiled for; missing .so files are skipped.
+     */
+    private enum Variant {
+        V8_FP16("whisper_v8fp16_va"),
+        VFPV4("whisper_vfpv4"),
+        BASE("whisper");
+
+        final String libName;
+
+        Variant(String libName) {
+            this.libName = libName;
+        }
+
+        boolean supportedBy(CpuFeatures cpu) {
+            switch (this) {
+                case V8_FP16:
+                    return cpu.fp16;
+                case VFPV4:
+                    return cpu.vfpv4;
+                default:
+                    return true;
+            }
+        }
+    }
+
+    /**
+     * Loads the best native variant for this CPU. Blocking (library load + self-test), so call
+     * it from a background thread; later calls return the cached outcome immediately.
+     *
+     * The chosen variant is remembered per build fingerprint. A variant whose self-test or
+     * first decode was started but never finished (e.g. the process died on an illegal
+     * instruction) is skipped on the next launch. The self-test only reaches ggml's backend
+     * init, so the first decode is what exercises the variant's matmul kernels.
+     */
+    public static synchronized boolean load(Context context) {
+        if (libraryLoaded || loadError != null) {
+            return libraryLoaded;
+        }
         Log.d(LOG_TAG, "Primary ABI: " + Build.SUPPORTED_ABIS[0]);
-        Log.d(LOG_TAG, "Supported ABIs: " + java.util.Arrays.toString(Build.SUPPORTED_ABIS));
-        boolean loadVfpv4 = false;
-        boolean loadV8fp16 = false;
-        if (Utils.isArmEabiV7a()) {
-            String cpuInfo = Utils.cpuInfo();
-            if (cpuInfo != null) {
-                Log.d(LOG_TAG, "CPU info: " + cpuInfo);
-                if (cpuInfo.contains("vfpv4")) {
-                    Log.d(LOG_TAG, "CPU supports vfpv4");
-                    loadVfpv4 = true;
-                }
+        CpuFeatures cpu = CpuFeatures.detect();
+        Log.d(LOG_TAG, "CPU features: " + cpu);
+
+        decisionFile = new File(context.getFilesDir(), DECISION_FILE);
+        decision = readDecision(decisionFile);
+        String fingerprint = Build.FINGERPRINT + "|" + cpu;
+        if (!fingerprint.equals(decision.getProperty("fingerprint"))) {
+            decision.clear();
+            decision.setProperty("fingerprint", fingerprint);
+        }
+        String crashed = decision.getProperty("pending");
+        if (crashed != null) {
+            Log.w(LOG_TAG, "Variant " + crashed + " did not survive its self-test last time, skipping it");
+            decision.setProperty("bad." + crashed, "true");
+            decision.remove("pending");
+            if (crashed.equals(decision.getProperty("variant"))) {
+                decision.remove("variant");
+            }
+            writeDecision(decisionFile, decision);
+        }
+
+        String cached = decision.getProperty("variant");
+        if (cached != null && tryLoad(cached)) {
+            loadedVariant = cached;
+            libraryLoaded = true;
+            if (!decision.containsKey("verified." + cached)) {
+                unverifiedVariant = cached;
             }
-        } else if (Utils.isArmEabiV8a()) {
-            String cpuInfo = Utils.cpuInfo();
-            if (cpuInfo != null) {
-                Log.d(LOG_TAG, "CPU info: " + cpuInfo);
-                if (cpuInfo.contains("fphp")) {
-                    Log.d(LOG_TAG, "CPU supports fp16 arithmetic");
-                    loadV8fp16 = true;
-                }
+            Log.d(LOG_TAG, "Loaded cached variant " + cached);
+            return true;
+        }
+
+        for (Variant variant : Variant.values()) {
+            if (!variant.supportedBy(cpu) || decision.containsKey("bad." + variant.libName)) {
+                continue;
             }
+            if (!tryLoad(variant.libName)) {
+                continue;
+            }
+            decision.setProperty("pending", variant.libName);
+            writeDecision(decisionFile, decision);
+            boolean passed = selfTest();
+            decision.remove("pending");
+            if (!passed) {
+                // A loaded library can't be unloaded and JNI keeps resolving to it, so no
+                // other variant can take over in this process; the next launch skips this one
+                decision.setProperty("bad." + variant.libName, "true");
+                writeDecision(decisionFile, decision);
+                break;
+            }
+            decision.setProperty("variant", variant.libName);
+            writeDecision(decisionFile, decision);
+            loadedVariant = variant.libName;
+            unverifiedVariant = variant.libName;
+            libraryLoaded = true;
+            Log.d(LOG_TAG, "Selected variant " + variant.libName);
+            return true;
+        }
+
+        Log.e(LOG_TAG, "All whisper library variants failed to load");
+        // Don't throw - let the app continue without native library
+        loadError = new UnsatisfiedLinkError("All whisper library variants failed to load");
+        return false;
+    }
+
+    private static boolean tryLoad(String libName) {
+        try {
+            Log.d(LOG_TAG, "Attempting to load library: " + libName);
+            System.loadLibrary(libName);
+            return true;
+        } catch (UnsatisfiedLinkError e) {
+            Log.d(LOG_TAG, "Library " + libName + " not loadable: " + e.getMessage());
+            return false;
         }
+    }
 
+    /**
+     * Cheap native call that runs ggml's CPU backend init with the variant's feature set
+     */
+    private static boolean selfTest() {
         try {
-            // Try loading all possible library variants in order
-            String[] libraryVariants = {"whisper", "whisper_v8fp16_va", "whisper_vfpv4"};
-            boolean loaded = false;
-            
-            for (String libName : libraryVariants) {
-                try {
-                    Log.d(LOG_TAG, "Attempting to load library: " + libName);
-                    System.loadLibrary(libName);
-                    Log.d(LOG_TAG, "Successfully loaded library: " + libName);
-                    libraryLoaded = true;
-                    loaded = true;
-                    break;
-                } catch (UnsatisfiedLinkError e) {
-                    Log.e(LOG_TAG, "Failed to load library " + libName + ": " + e.getMessage(), e);
-                    // Continue to next variant
-                }
+            long start = System.currentTimeMillis();
+            String info = getSystemInfo();
+            Log.d(LOG_TAG, "Self-test passed in " + (System.currentTimeMillis() - start) + "ms: " + info);
+            return true;
+        } catch (Throwable t) {
+            Log.e(LOG_TAG, "Self-test failed", t);
+            return false;
+        }
+    }
+
+    /**
+     * Called before every decode; until one decode has completed with the loaded variant, a
+     * pending marker is kept on disk so a crash in the real kernels rules the variant out
+     */
+    static void beforeDecode() {
+        if (unverifiedVariant == null) {
+            return;
+        }
+        synchronized (WhisperLib.class) {
+            if (unverifiedVariant != null && !firstDecodeMarked) {
+                decision.setProperty("pending", unverifiedVariant);
+                writeDecision(decisionFile, decision);
+                firstDecodeMarked = true;
+            }
+        }
+    }
+
+    /**
+     * Called after a decode returned; the loaded variant is trusted from now on
+     */
+    static void afterDecode() {
+        if (unverifiedVariant == null) {
+            return;
+        }
+        synchronized (WhisperLib.class) {
+            if (unverifiedVariant != null) {
+                decision.remove("pending");
+                decision.setProperty("verified." + unverifiedVariant, "true");
+                writeDecision(decisionFile, decision);
+                Log.d(LOG_TAG, "Variant " + unverifiedVariant + " verified by its first decode");
+                unverifiedVariant = null;
             }
-            
-            if (!loaded) {
-                // If no variant loaded successfully, try the base name again with full path
-                Log.e(LOG_TAG, "All library variants failed to load");
-                loadError = new UnsatisfiedLinkError("All whisper library variants failed to load");
-                // Don't throw - let the app continue without native library
+        }
+    }
+
+    private static Properties readDecision(File file) {
+        Properties properties = new Properties();
+        if (file.exists()) {
+            try (FileInputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Couldn't read " + file.getName(), e);
+            }
+        }
+        return properties;
+    }
+
+    private static void writeDecision(File file, Properties properties) {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            properties.store(out, null);
+            // Must reach disk before the self-test or first decode in case it takes the process down
+            out.getFD().sync();
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't write " + file.getName(), e);
+        }
+    }
+
+    /**
+     * False until the library is loaded, and for every feature the loaded library does not list
+     */
+    public static boolean hasFeature(Feature feature) {
+        if (!libraryLoaded) {
+            return false;
+        }
+        Set<String> available = features;
+        if (available == null) {
+            try {
+                String[] names = getFeatures();
+                available = names != null ? new HashSet<>(Arrays.asList(names)) : Collections.<String>emptySet();
+            } catch (UnsatisfiedLinkError e) {
+                available = Collections.emptySet();
             }
-        } catch (Exception e) {
-            Log.e(LOG_TAG, "Unexpected error loading native library", e);
-            loadError = new UnsatisfiedLinkError("Failed to load library: " + e.getMessage());
-            // Don't throw - let the app continue without native library
+            Log.d(LOG_TAG, "Native features: " + available);
+            features = available;
         }
-        
-        Log.d(LOG_TAG, "Library loading completed. libraryLoaded=" + libraryLoaded);
+        return available.contains(feature.nativeName);
+    }
+
+    public static String getLoadedVariant() {
+        return loadedVariant;
     }
     
     public static boolean isLibraryLoaded() {
@@ -91,6 +289,54 @@ public class WhisperLib {
     public static native long initContext(String modelPath);
     public static native void freeContext(long contextPtr);
     public static native void fullTranscribe(long contextPtr, int numThreads, float[] audioData);
+    /**
+     * {@link Feature#DECODE_PARAMS}. whisper_full with explicit decode parameters (see
+     * WhisperDecodeParams); without it callers fall back to fullTranscribe.
+     */
+    public static native void fullTranscribeWithParams(long contextPtr, int numThreads, float[] audioData,
+                                                       int audioCtx, int strategy, int beamSize, String language,
+                                                       boolean noTimestamps, boolean singleSegment);
+    /**
+     * {@link Feature#ABORT}. Sets the flag polled by whisper.cpp's abort_callback; a running fullTranscribe* returns
+     * early once it is set. Decodes do not clear it themselves, the caller resets it before each one.
+     */
+    public static native void setAbort(long contextPtr, boolean abort);
+    /**
+     * Names of the optional entry points this library implements (see {@link Feature})
+     */
+    private static native String[] getFeatures();
+    /**
+     * {@link Feature#FULL_RESULT}. All segments of the last decode in one crossing:
+     * [0] String[] texts, [1] long[] t0/t1 pairs (centiseconds, interleaved),
+     * [2] float[] avg token log-prob / no-speech prob pairs (interleaved).
+     */
+    public static native Object[] getFullResult(long contextPtr);
+    /**
+     * {@link Feature#STATES}. Model/state split (whisper_init_state): extra decode states share the context's weights.
+     * Each state runs one decode at a time; different states may decode concurrently.
+     */
+    public static native long initState(long contextPtr);
+    public static native void freeState(long statePtr);
+    public static native void fullTranscribeWithState(long contextPtr, long statePtr, int numThreads, float[] audioData,
+                                                      int audioCtx, int strategy, int beamSize, String language,
+                                                      boolean noTimestamps, boolean singleSegment);
+    /**
+     * Same layout as getFullResult, read from a state
+     */
+    public static native Object[] getStateFullResult(long contextPtr, long statePtr);
+    public static native void setStateAbort(long statePtr, boolean abort);
+    /**
+     * {@link Feature#SPECULATIVE}. Greedy whisper_full on contextPtr with draftContextPtr proposing up to draftTokens tokens
+     * per step. The main decoder verifies each draft in one batched pass and keeps the longest
+     * prefix it agrees with, so the text matches a plain greedy decode of the main model.
+     * Both models must share a vocabulary (e.g. tiny.en drafting for base.en). The result is
+     * read from contextPtr as usual.
+     *
+     * @return {drafted, accepted} token counts of this decode
+     */
+    public static native int[] fullTranscribeSpeculative(long contextPtr, long draftContextPtr, int numThreads,
+                                                         float[] audioData, int audioCtx, String language,
+                                                         boolean noTimestamps, boolean singleSegment, int draftTokens);
     public static native int getTextSegmentCount(long contextPtr);
     public static native String getTextSegment(long contextPtr, int index);
     public static native String getSystemInfo();
@@ -0,0 +1,208 @@
+package com.whispercppdemo.whisper;
+
+import android.util.Log;
+
+import com.opencode.voiceassist.model.TranscriptSegment;
+import com.opencode.voiceassist.model.TranscriptionResult;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Several whisper decode states over one loaded model, so clips can be decoded in parallel
+ * without loading the weights again (whisper_init_state).
+ *
+ * Work goes through a bounded queue to a fixed set of worker threads, one per state; the
+ * CPU thread budget is split between the states. Needs a library that lists
+ * {@link WhisperLib.Feature#STATES}; without one {@link #create} returns null and callers
+ * decode on the context itself, one clip at a time.
+ */
+public class WhisperStatePool {
+    private static final String LOG_TAG = "LibWhisper";
+
+    private static final int QUEUE_CAPACITY = 16;
+    private static final int MAX_STATES = 4;
+
+    private final WhisperContext context;
+    private final BlockingQueue<Long> freeStates = new LinkedBlockingQueue<>();
+    private final ThreadPoolExecutor executor;
+    private final int size;
+
+    // Same cancel protocol as WhisperContext: bump the generation, abort only running decodes
+    private final Object abortLock = new Object();
+    private final Set<Long> busyStates = new HashSet<>();
+    private volatile int generation = 0;
+    // Set by release(); states still decoding at that point are freed by their worker
+    private boolean released = false;
+
+    private WhisperStatePool(WhisperContext context, int size) {
+        this.context = context;
+        this.size = size;
+        this.executor = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY));
+    }
+
+    /**
+     * Two streams on 8+ core devices, where one decode cannot keep every core busy; one otherwise
+     */
+    public static int recommendedSize() {
+        return Runtime.getRuntime().availableProcessors() >= 8 ? 2 : 1;
+    }
+
+    /**
+     * @return null when the library has no state API or no state could be created
+     */
+    public static WhisperStatePool create(WhisperContext context, int requestedSize) {
+        if (!WhisperLib.hasFeature(WhisperLib.Feature.STATES)) {
+            Log.d(LOG_TAG, "Native library has no state API, decoding on the context only");
+            return null;
+        }
+        int wanted = Math.max(1, Math.min(MAX_STATES, requestedSize));
+        long[] created = new long[wanted];
+        int count = 0;
+        for (; count < wanted; count++) {
+            created[count] = WhisperLib.initState(context.getPtr());
+            if (created[count] == 0L) {
+                break;
+            }
+        }
+        if (count == 0) {
+            Log.w(LOG_TAG, "whisper_init_state failed, decoding on the context only");
+            return null;
+        }
+        WhisperStatePool pool = new WhisperStatePool(context, count);
+        for (int i = 0; i < count; i++) {
+            pool.freeStates.add(created[i]);
+        }
+        Log.d(LOG_TAG, "Whisper state pool: " + count + " states (requested " + wanted + ")");
+        return pool;
+    }
+
+    /**
+     * Number of clips that can be decoded at the same time
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @throws RejectedExecutionException when QUEUE_CAPACITY clips are already waiting
+     */
+    public Future<TranscriptionResult> submit(float[] data, WhisperDecodeParams params) {
+        final int taskGeneration = generation;
+        return executor.submit(() -> decode(data, params, taskGeneration));
+    }
+
+    private TranscriptionResult decode(float[] data, WhisperDecodeParams params, int taskGeneration) throws InterruptedException {
+        if (taskGeneration != generation) {
+            // Also keeps queued work from waiting on states release() has already freed
+            throw new CancellationException("Cancelled before decode started");
+        }
+        // One worker per state, so a free state is always there when a worker gets here
+        long state = freeStates.take();
+        try {
+            synchronized (abortLock) {
+                if (taskGeneration != generation) {
+                    throw new CancellationException("Cancelled before decode started");
+                }
+                setStateAbort(state, false);
+                busyStates.add(state);
+            }
+            WhisperDecodeParams p = params != null ? params : WhisperDecodeParams.builder().build();
+            int numThreads = Math.max(1, WhisperCpuConfig.getPreferredThreadCount() / size);
+            double audioSeconds = data.length / 16000.0;
+
+            long startTime = System.currentTimeMillis();
+            try {
+                WhisperLib.beforeDecode();
+                WhisperLib.fullTranscribeWithState(context.getPtr(), state, numThreads, data,
+                        p.getAudioCtx(), p.getStrategy(), p.getBeamSize(), p.getLanguage(),
+                        p.isNoTimestamps(), p.isSingleSegment());
+                WhisperLib.afterDecode();
+            } finally {
+                synchronized (abortLock) {
+                    busyStates.remove(state);
+                }
+            }
+            long transcriptionTime = System.currentTimeMillis() - startTime;
+            if (taskGeneration != generation) {
+                throw new CancellationException("Transcription cancelled");
+            }
+
+            List<TranscriptSegment> segments = WhisperContext.toSegments(
+                    WhisperLib.getStateFullResult(context.getPtr(), state));
+            StringBuilder text = new StringBuilder();
+            for (TranscriptSegment segment : segments) {
+                text.append(segment.getText());
+            }
+            double realtimeFactor = transcriptionTime / (audioSeconds * 1000.0);
+            Log.d(LOG_TAG, "State decode: " + String.format("%.2f", audioSeconds) + "s audio in "
+                    + transcriptionTime + "ms on " + numThreads + " threads");
+            return new TranscriptionResult(text.toString(), audioSeconds, transcriptionTime, realtimeFactor, segments);
+        } finally {
+            synchronized (abortLock) {
+                if (released) {
+                    WhisperLib.freeState(state);
+                } else {
+                    freeStates.offer(state);
+                }
+            }
+        }
+    }
+
+    private static void setStateAbort(long state, boolean abort) {
+        // Libraries that cannot abort a context decode cannot abort a state decode either
+        if (WhisperLib.hasFeature(WhisperLib.Feature.ABORT)) {
+            WhisperLib.setStateAbort(state, abort);
+        }
+    }
+
+    /**
+     * Aborts running decodes and drops queued ones
+     */
+    public void cancelAll() {
+        synchronized (abortLock) {
+            generation++;
+            for (long state : busyStates) {
+                setStateAbort(state, true);
+            }
+        }
+    }
+
+    /**
+     * Waits for the workers to return, then frees the states; the context itself is released
+     * by its owner afterwards, so no decode may still be using it. If the wait is interrupted,
+     * a state whose decode is still running is freed by its worker when the decode returns.
+     */
+    public void release() {
+        cancelAll();
+        executor.shutdown();
+        try {
+            // Aborted decodes return within one graph step; without ABORT they run to the end
+            while (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                Log.w(LOG_TAG, "Waiting for state decodes to finish before freeing the pool");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (abortLock) {
+            released = true;
+            Long state;
+            while ((state = freeStates.poll()) != null) {
+                WhisperLib.freeState(state);
+            }
+            if (!busyStates.isEmpty()) {
+                Log.w(LOG_TAG, busyStates.size() + " state decodes still running at release");
+            }
+        }
+    }
+}
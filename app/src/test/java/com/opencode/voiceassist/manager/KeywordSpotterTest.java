@@ -0,0 +1,70 @@
+package com.opencode.voiceassist.manager;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class KeywordSpotterTest {
+
+    @Test
+    public void parseCommandIgnoresCaseSpacesAndPunctuation() {
+        assertEquals(KeywordSpotter.Command.SEND, KeywordSpotter.parseCommand("发送"));
+        assertEquals(KeywordSpotter.Command.SEND, KeywordSpotter.parseCommand(" 发送。"));
+        assertEquals(KeywordSpotter.Command.SEND, KeywordSpotter.parseCommand("Send!"));
+        assertEquals(KeywordSpotter.Command.CANCEL, KeywordSpotter.parseCommand("取消！"));
+        assertEquals(KeywordSpotter.Command.CANCEL, KeywordSpotter.parseCommand(" CANCEL. "));
+        assertEquals(KeywordSpotter.Command.NEW_LINE, KeywordSpotter.parseCommand("换 行，"));
+        assertEquals(KeywordSpotter.Command.NEW_LINE, KeywordSpotter.parseCommand("New line?"));
+    }
+
+    @Test
+    public void parseCommandRejectsOtherText() {
+        assertNull(KeywordSpotter.parseCommand(null));
+        assertNull(KeywordSpotter.parseCommand(""));
+        assertNull(KeywordSpotter.parseCommand("。"));
+        assertNull(KeywordSpotter.parseCommand("发送消息"));
+        assertNull(KeywordSpotter.parseCommand("please send"));
+    }
+
+    @Test
+    public void dtwOfIdenticalSequencesIsZero() {
+        float[][] a = randomFeatures(new Random(1), 40);
+        assertEquals(0f, KeywordSpotter.dtw(a, a), 0f);
+    }
+
+    @Test
+    public void dtwIsSymmetric() {
+        Random random = new Random(2);
+        for (int i = 0; i < 20; i++) {
+            float[][] a = randomFeatures(random, 20 + random.nextInt(40));
+            float[][] b = randomFeatures(random, 20 + random.nextInt(40));
+            assertEquals(KeywordSpotter.dtw(a, b), KeywordSpotter.dtw(b, a), 1e-4f);
+        }
+    }
+
+    @Test
+    public void dtwToleratesTimeStretching() {
+        Random random = new Random(3);
+        float[][] word = randomFeatures(random, 30);
+        // Same word spoken at half speed: every frame held twice
+        float[][] slow = new float[word.length * 2][];
+        for (int i = 0; i < slow.length; i++) {
+            slow[i] = word[i / 2];
+        }
+        float[][] other = randomFeatures(random, 60);
+        assertEquals(0f, KeywordSpotter.dtw(word, slow), 0f);
+        assertTrue(KeywordSpotter.dtw(word, other) > 0f);
+    }
+
+    private static float[][] randomFeatures(Random random, int frames) {
+        float[][] features = new float[frames][12];
+        for (float[] frame : features) {
+            for (int k = 0; k < frame.length; k++) {
+                frame[k] = (float) random.nextGaussian();
+            }
+        }
+        return features;
+    }
+}
@@ -0,0 +1,59 @@
+package com.opencode.voiceassist.manager;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.*;
+
+public class TranscriptCacheTest {
+
+    // 20ms at 16kHz, 16-bit mono
+    private static final int FRAME_BYTES = 640;
+
+    @Test
+    public void silenceHasNoFingerprint() {
+        assertNull(TranscriptCache.fingerprint("local", new byte[0]));
+        assertNull(TranscriptCache.fingerprint("local", frames(0, 50)));
+        // Below the RMS threshold still counts as silence
+        assertNull(TranscriptCache.fingerprint("local", frames(200, 50)));
+    }
+
+    @Test
+    public void leadingAndTrailingSilenceIsIgnored() {
+        byte[] speech = frames(2000, 20);
+        String key = TranscriptCache.fingerprint("local", speech);
+        assertNotNull(key);
+        assertEquals(key, TranscriptCache.fingerprint("local", concat(frames(0, 10), speech, frames(0, 5))));
+        assertEquals(key, TranscriptCache.fingerprint("local", concat(frames(0, 3), speech)));
+    }
+
+    @Test
+    public void namespaceAndContentChangeTheKey() {
+        byte[] speech = frames(2000, 20);
+        String key = TranscriptCache.fingerprint("local", speech);
+        assertNotEquals(key, TranscriptCache.fingerprint("cloud", speech));
+        assertNotEquals(key, TranscriptCache.fingerprint("local", frames(3000, 20)));
+    }
+
+    /**
+     * Square wave frames; amplitude 0 is digital silence
+     */
+    private static byte[] frames(int amplitude, int count) {
+        byte[] data = new byte[FRAME_BYTES * count];
+        for (int i = 0; i < data.length / 2; i++) {
+            short sample = (short) ((i / 8) % 2 == 0 ? amplitude : -amplitude);
+            data[2 * i] = (byte) (sample & 0xff);
+            data[2 * i + 1] = (byte) ((sample >> 8) & 0xff);
+        }
+        return data;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
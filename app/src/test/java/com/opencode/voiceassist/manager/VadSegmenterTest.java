@@ -0,0 +1,120 @@
+package com.opencode.voiceassist.manager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class VadSegmenterTest {
+
+    // 30ms at 16kHz, 16-bit mono
+    private static final int FRAME_BYTES = 960;
+    private static final int PRE_ROLL_FRAMES = 10;
+    private static final int HANGOVER_FRAMES = 23;
+
+    private final List<byte[]> segments = new ArrayList<>();
+    private VadSegmenter segmenter;
+
+    @Before
+    public void setUp() {
+        segments.clear();
+        segmenter = new VadSegmenter(segments::add);
+    }
+
+    @Test
+    public void silenceProducesNoSegment() {
+        segmenter.processAudio(frames(0, 100));
+        segmenter.flush();
+        assertTrue(segments.isEmpty());
+    }
+
+    @Test
+    public void segmentEndsAfterHangover() {
+        segmenter.processAudio(frames(0, 20));
+        segmenter.processAudio(frames(2000, 20));
+        segmenter.processAudio(frames(0, HANGOVER_FRAMES - 1));
+        assertTrue("segment closed before the hangover ran out", segments.isEmpty());
+
+        segmenter.processAudio(frames(0, 1));
+        assertEquals(1, segments.size());
+        // Pre-roll (ending with the first speech frame) + the remaining speech + the hangover
+        int expectedFrames = PRE_ROLL_FRAMES + 19 + HANGOVER_FRAMES;
+        assertEquals(expectedFrames * FRAME_BYTES, segments.get(0).length);
+    }
+
+    @Test
+    public void pauseShorterThanHangoverKeepsOneSegment() {
+        segmenter.processAudio(frames(0, 20));
+        segmenter.processAudio(frames(2000, 20));
+        segmenter.processAudio(frames(0, HANGOVER_FRAMES - 5));
+        segmenter.processAudio(frames(2000, 20));
+        segmenter.processAudio(frames(0, 40));
+        assertEquals(1, segments.size());
+    }
+
+    @Test
+    public void shortBlipIsDropped() {
+        segmenter.processAudio(frames(0, 20));
+        segmenter.processAudio(frames(2000, 5));
+        segmenter.processAudio(frames(0, 40));
+        assertTrue(segments.isEmpty());
+    }
+
+    @Test
+    public void longSpeechIsSplit() {
+        segmenter.processAudio(frames(0, 20));
+        segmenter.processAudio(frames(2000, 600));
+        assertEquals(1, segments.size());
+        assertEquals(500 * FRAME_BYTES, segments.get(0).length);
+    }
+
+    @Test
+    public void flushEmitsSegmentInProgress() {
+        segmenter.processAudio(frames(0, 20));
+        segmenter.processAudio(frames(2000, 15));
+        assertTrue(segments.isEmpty());
+
+        segmenter.flush();
+        assertEquals(1, segments.size());
+        assertEquals((PRE_ROLL_FRAMES + 14) * FRAME_BYTES, segments.get(0).length);
+    }
+
+    @Test
+    public void framesSplitAcrossBuffersAreReassembled() {
+        byte[] audio = concat(frames(0, 20), frames(2000, 20), frames(0, 30));
+        // Odd chunk size so frame boundaries never line up with buffer boundaries
+        for (int offset = 0; offset < audio.length; offset += 333) {
+            int length = Math.min(333, audio.length - offset);
+            byte[] chunk = new byte[length];
+            System.arraycopy(audio, offset, chunk, 0, length);
+            segmenter.processAudio(chunk);
+        }
+        assertEquals(1, segments.size());
+        assertEquals((PRE_ROLL_FRAMES + 19 + HANGOVER_FRAMES) * FRAME_BYTES, segments.get(0).length);
+    }
+
+    /**
+     * Square wave frames; amplitude 0 is digital silence
+     */
+    private static byte[] frames(int amplitude, int count) {
+        byte[] data = new byte[FRAME_BYTES * count];
+        for (int i = 0; i < data.length / 2; i++) {
+            short sample = (short) ((i / 8) % 2 == 0 ? amplitude : -amplitude);
+            data[2 * i] = (byte) (sample & 0xff);
+            data[2 * i + 1] = (byte) ((sample >> 8) & 0xff);
+        }
+        return data;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,47 @@
+package com.opencode.voiceassist.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TranscriptionResultTest {
+
+    @Test
+    public void noSegmentsGiveNaN() {
+        TranscriptionResult result = new TranscriptionResult("hello", 1.0, 100, 0.1);
+        assertTrue(Double.isNaN(result.getAverageLogProb()));
+        assertTrue(Double.isNaN(result.getMaxNoSpeechProb()));
+    }
+
+    @Test
+    public void logProbIsWeightedByDuration() {
+        TranscriptionResult result = new TranscriptionResult("hello world", 4.0, 100, 0.1, Arrays.asList(
+                new TranscriptSegment(" hello", 0, 1000, -0.2f, 0.1f),
+                new TranscriptSegment(" world", 1000, 4000, -1.0f, 0.3f)));
+        assertEquals((-0.2 * 1000 - 1.0 * 3000) / 4000, result.getAverageLogProb(), 1e-6);
+        assertEquals(0.3, result.getMaxNoSpeechProb(), 1e-6);
+    }
+
+    @Test
+    public void segmentsWithoutTimingStillCount() {
+        // Text-only fallback segments have t0 == t1; each weighs in as 1ms
+        TranscriptionResult result = new TranscriptionResult("a b", 1.0, 100, 0.1, Arrays.asList(
+                new TranscriptSegment(" a", 0, 0, -0.4f, 0.0f),
+                new TranscriptSegment(" b", 0, 0, -0.8f, 0.0f)));
+        assertEquals(-0.6, result.getAverageLogProb(), 1e-6);
+    }
+
+    @Test
+    public void missingProbabilitiesPropagateAsNaN() {
+        TranscriptionResult result = new TranscriptionResult("a b", 2.0, 100, 0.1, Arrays.asList(
+                new TranscriptSegment(" a", 0, 1000, -0.1f, 0.1f),
+                new TranscriptSegment(" b", 1000, 2000, Float.NaN, Float.NaN)));
+        // A confidence gate must not pass a result it has no probabilities for
+        assertTrue(Double.isNaN(result.getAverageLogProb()));
+        assertTrue(Double.isNaN(result.getMaxNoSpeechProb()));
+        assertFalse(result.getAverageLogProb() >= -0.5);
+        assertFalse(result.getMaxNoSpeechProb() <= 0.6);
+    }
+}
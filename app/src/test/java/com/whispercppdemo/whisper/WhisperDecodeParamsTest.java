@@ -0,0 +1,61 @@
+package com.whispercppdemo.whisper;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WhisperDecodeParamsTest {
+
+    @Test
+    public void shortClipsClampToMinimum() {
+        assertEquals(256, WhisperDecodeParams.audioCtxFor(0.1));
+        assertEquals(256, WhisperDecodeParams.audioCtxFor(1.0));
+        // ceil(3.84 * 50) + 64 = 256 exactly
+        assertEquals(256, WhisperDecodeParams.audioCtxFor(3.84));
+    }
+
+    @Test
+    public void framesAreRoundedUpToAlignment() {
+        // ceil(193) + 64 = 257 -> next multiple of 64
+        assertEquals(320, WhisperDecodeParams.audioCtxFor(3.86));
+        assertEquals(320, WhisperDecodeParams.audioCtxFor(5.0));
+        // ceil(250.5) = 251, + 64 = 315
+        assertEquals(320, WhisperDecodeParams.audioCtxFor(5.01));
+        assertEquals(1088, WhisperDecodeParams.audioCtxFor(20.0));
+    }
+
+    @Test
+    public void fullWindowWhenTruncationDoesNotHelp() {
+        // 1436 + 64 = 1500 -> aligned past the 1500-frame window
+        assertEquals(0, WhisperDecodeParams.audioCtxFor(28.72));
+        assertEquals(0, WhisperDecodeParams.audioCtxFor(30.0));
+        assertEquals(1472, WhisperDecodeParams.audioCtxFor(28.0));
+    }
+
+    @Test
+    public void alignedAndCoversTheClip() {
+        for (int centis = 1; centis <= 3000; centis++) {
+            double seconds = centis / 100.0;
+            int ctx = WhisperDecodeParams.audioCtxFor(seconds);
+            if (ctx == 0) {
+                continue;
+            }
+            assertEquals("unaligned for " + seconds + "s", 0, ctx % 64);
+            assertTrue("too small for " + seconds + "s", ctx >= Math.ceil(seconds * 50) + 64);
+            assertTrue(ctx >= 256 && ctx < 1500);
+        }
+    }
+
+    @Test
+    public void forDurationOnlyTruncatesShortClips() {
+        WhisperDecodeParams shortClip = WhisperDecodeParams.forDuration(5.0, "en");
+        assertEquals(320, shortClip.getAudioCtx());
+        assertTrue(shortClip.isSingleSegment());
+        assertTrue(shortClip.isNoTimestamps());
+
+        WhisperDecodeParams longClip = WhisperDecodeParams.forDuration(12.0, "en");
+        assertEquals(0, longClip.getAudioCtx());
+        assertFalse(longClip.isSingleSegment());
+        assertFalse(longClip.isNoTimestamps());
+    }
+}